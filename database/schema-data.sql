@@ -11,15 +11,80 @@ create table log_entry_type (
 
 create table log_entry (
 	log_entry_id int primary key auto_increment,
+    -- the owner; every query is scoped to one user
+    user_id int not null,
     logged_on datetime not null,
     log_entry_type_id int not null,
     description varchar(100) not null,
     calories int not null,
+    -- bumped on every update, for ETags
+    version int not null default 1,
     constraint fk_log_entry_log_entry_type_id
+        foreign key (log_entry_type_id)
+        references log_entry_type(log_entry_type_id),
+    -- a user's per-day views, date-range filters and pages are index range scans over that user's rows only
+    index idx_log_entry_user_id_logged_on (user_id, logged_on),
+    index idx_log_entry_user_id_log_entry_type_id_logged_on (user_id, log_entry_type_id, logged_on),
+    index idx_log_entry_user_id_log_entry_id (user_id, log_entry_id)
+);
+
+-- per day/type rollup maintained by the repository in the same transaction as log_entry writes
+create table daily_calorie_total (
+    user_id int not null,
+    logged_date date not null,
+    log_entry_type_id int not null,
+    total_calories int not null,
+    entry_count int not null,
+    constraint pk_daily_calorie_total
+        primary key (user_id, logged_date, log_entry_type_id),
+    constraint fk_daily_calorie_total_log_entry_type_id
         foreign key (log_entry_type_id)
         references log_entry_type(log_entry_type_id)
 );
 
+-- hands out every log_entry id, in blocks to the write-behind writer and one at a time to everything else,
+-- each in a short transaction of its own, so an insert that rolls back leaves a gap
+create table log_entry_sequence (
+    next_id int not null
+);
+
+-- bumped in the same transaction as every log_entry write, for ETags on list and summary responses;
+-- a user without a row is at version 1
+create table log_entry_collection_version (
+    user_id int primary key,
+    version bigint not null
+);
+
+-- 7, 30 and 365-day totals up to as_of, and the same number of days before that for trends; log_entry_type_id 0 is
+-- every type together. The report job applies calorie_report_change to them, and reading them moves them on to today
+create table calorie_report (
+    user_id int not null,
+    period_days int not null,
+    log_entry_type_id int not null,
+    as_of date not null,
+    total_calories int not null,
+    logged_days int not null,
+    previous_total_calories int not null,
+    previous_logged_days int not null,
+    constraint pk_calorie_report
+        primary key (user_id, period_days, log_entry_type_id),
+    index idx_calorie_report_as_of (as_of)
+);
+
+-- every change to daily_calorie_total the report job hasn't applied to calorie_report yet, written in the same
+-- transaction as the change when log-entry.reports.enabled is true. The job deletes exactly the rows it applied,
+-- so a write that commits late is simply picked up by the next run. Rebuilding daily_calorie_total clears this and
+-- calorie_report and queues one empty change per user, so the job builds their reports again from the new totals.
+create table calorie_report_change (
+    calorie_report_change_id bigint primary key auto_increment,
+    user_id int not null,
+    logged_date date not null,
+    log_entry_type_id int not null,
+    calories int not null,
+    entry_count int not null,
+    index idx_calorie_report_change_user_id (user_id)
+);
+
 insert into log_entry_type (log_entry_type_id, type)
 	values
 	(1, 'Breakfast'),
@@ -28,8 +93,17 @@ insert into log_entry_type (log_entry_type_id, type)
 	(4, 'Snack'),
 	(5, 'Second Breakfast');
 
-insert into log_entry (logged_on, log_entry_type_id, description, calories)
+insert into log_entry (user_id, logged_on, log_entry_type_id, description, calories)
     values
-    ('2020-01-01 9:00', 1, 'Scrambled eggs', 210),
-    ('2020-01-01 12:00', 2, 'Tuna fish salad', 500),
-    ('2020-01-01 18:00', 3, 'Steak', 1000);
+    (1, '2020-01-01 9:00', 1, 'Scrambled eggs', 210),
+    (1, '2020-01-01 12:00', 2, 'Tuna fish salad', 500),
+    (1, '2020-01-01 18:00', 3, 'Steak', 1000);
+
+insert into daily_calorie_total (user_id, logged_date, log_entry_type_id, total_calories, entry_count)
+    select user_id, date(logged_on), log_entry_type_id, sum(calories), count(*)
+    from log_entry
+    group by user_id, date(logged_on), log_entry_type_id;
+
+insert into log_entry_sequence (next_id) values (1);
+
+insert into log_entry_collection_version (user_id, version) values (1, 1);
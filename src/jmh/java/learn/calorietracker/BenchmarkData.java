@@ -0,0 +1,60 @@
+package learn.calorietracker;
+
+import learn.calorietracker.data.UserContext;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds repeatable data sets for the benchmarks.
+ */
+public class BenchmarkData {
+    private static final String[] DESCRIPTIONS = {
+            "Scrambled eggs", "Tuna fish salad", "Steak", "Toast", "Apple", "Burrito", "Oatmeal", "Pad thai"
+    };
+    private static final LocalDateTime START = LocalDateTime.of(2015, 1, 1, 7, 0);
+    private static final int INSERT_BATCH_SIZE = 10_000;
+
+    public static List<LogEntry> makeEntries(int count) {
+        List<LogEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(makeEntry(i + 1, i));
+        }
+        return entries;
+    }
+
+    /**
+     * An in-memory H2 database in MySQL mode holding rows log entries, so no MySQL server is needed.
+     */
+    public static EmbeddedDatabase makeDatabase(String name, int rows) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName(name + ";MODE=MySQL")
+                .addScript("benchmark-schema.sql")
+                .build();
+
+        JdbcTemplate template = new JdbcTemplate(database);
+        final String sql = "insert into log_entry (user_id, logged_on, log_entry_type_id, description, calories) values (?, ?, ?, ?, ?);";
+        for (int start = 0; start < rows; start += INSERT_BATCH_SIZE) {
+            List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+            for (int i = start; i < Math.min(rows, start + INSERT_BATCH_SIZE); i++) {
+                LogEntry entry = makeEntry(0, i);
+                batch.add(new Object[]{UserContext.DEFAULT_USER_ID, entry.getLoggedOn(), entry.getType().getValue(), entry.getDescription(), entry.getCalories()});
+            }
+            template.batchUpdate(sql, batch);
+        }
+        return database;
+    }
+
+    private static LogEntry makeEntry(int id, int index) {
+        LogEntryType type = LogEntryType.values()[index % LogEntryType.values().length];
+        return new LogEntry(id, START.plusMinutes(index * 90L), type, DESCRIPTIONS[index % DESCRIPTIONS.length], 100 + index % 900);
+    }
+}
@@ -0,0 +1,81 @@
+package learn.calorietracker.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import learn.calorietracker.BenchmarkData;
+import learn.calorietracker.models.LogEntry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing List&lt;LogEntry&gt; the way GET /log does, with the same Jackson setup Spring Boot uses,
+ * through bean introspection and through LogEntrySerializer, and one entry at a time the way GET /log/stream does.
+ * serializeListCbor is the same list as CBOR, for clients that send Accept: application/cbor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LogEntryJsonBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int rows;
+
+    ObjectMapper jsonMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    ObjectMapper directMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .modulesToInstall(new SimpleModule()
+                    .addSerializer(new LogEntrySerializer())
+                    .addSerializer(new LogEntryResultSerializer()))
+            .build();
+    ObjectMapper cborMapper = Jackson2ObjectMapperBuilder.json()
+            .factory(new CBORFactory())
+            .modulesToInstall(new SimpleModule()
+                    .addSerializer(new LogEntrySerializer())
+                    .addSerializer(new LogEntryResultSerializer()))
+            .build();
+    ObjectWriter entryWriter = directMapper.writerFor(LogEntry.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    List<LogEntry> entries;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        entries = BenchmarkData.makeEntries(rows);
+    }
+
+    @Benchmark
+    public void serializeList() throws IOException {
+        jsonMapper.writeValue(OutputStream.nullOutputStream(), entries);
+    }
+
+    @Benchmark
+    public void serializeListDirect() throws IOException {
+        directMapper.writeValue(OutputStream.nullOutputStream(), entries);
+    }
+
+    @Benchmark
+    public void serializeListCbor() throws IOException {
+        cborMapper.writeValue(OutputStream.nullOutputStream(), entries);
+    }
+
+    @Benchmark
+    public void serializeSequence() throws IOException {
+        try (SequenceWriter writer = entryWriter.writeValuesAsArray(OutputStream.nullOutputStream())) {
+            for (LogEntry entry : entries) {
+                writer.write(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package learn.calorietracker.controllers;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load against a running app: each client sends GET /log/page with a random cursor,
+ * waits for the response and sends the next one. Run it once against the default platform-thread mode
+ * and once with log-entry.virtual-threads.enabled=true, with the same client count, and compare.
+ *
+ * mvn -P benchmark compile exec:java -Dexec.mainClass=learn.calorietracker.controllers.LogEntryLoadTest \
+ *     -Dexec.args="http://localhost:8080 1000 60 10"
+ *
+ * Arguments: base URL, clients, measured seconds, warm-up seconds.
+ */
+public class LogEntryLoadTest {
+
+    private static final int MAX_CURSOR = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        System.out.printf("%d clients against %s, %d s warm-up%n", clients, baseUrl, warmupSeconds);
+        run(client, baseUrl, clients, warmupSeconds);
+        System.out.printf("measuring for %d s%n", seconds);
+        Result result = run(client, baseUrl, clients, seconds);
+
+        Histogram latency = result.latencyMicros;
+        System.out.printf("requests %d (%.0f/s), errors %d%n",
+                latency.getTotalCount(), latency.getTotalCount() / (double) seconds, result.errors.get());
+        System.out.printf("latency ms: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(90) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0, latency.getValueAtPercentile(99.9) / 1000.0,
+                latency.getMaxValue() / 1000.0);
+    }
+
+    private static Result run(HttpClient client, String baseUrl, int clients, int seconds) throws InterruptedException {
+        Result result = new Result();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    send(client, baseUrl, result);
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return result;
+    }
+
+    private static void send(HttpClient client, String baseUrl, Result result) {
+        int cursor = ThreadLocalRandom.current().nextInt(MAX_CURSOR);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/log/page?limit=20&cursor=" + cursor))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long start = System.nanoTime();
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+                result.errors.incrementAndGet();
+            }
+        } catch (IOException ex) {
+            result.errors.incrementAndGet();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        result.latencyMicros.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    private static class Result {
+        private final Histogram latencyMicros = new ConcurrentHistogram(3);
+        private final AtomicLong errors = new AtomicLong();
+    }
+}
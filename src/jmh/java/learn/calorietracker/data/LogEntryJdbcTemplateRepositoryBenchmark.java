@@ -0,0 +1,50 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.BenchmarkData;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row mapping cost of LogEntryJdbcTemplateRepository against an embedded H2 database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LogEntryJdbcTemplateRepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int rows;
+
+    EmbeddedDatabase database;
+    LogEntryJdbcTemplateRepository repository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        database = BenchmarkData.makeDatabase("repository-benchmark", rows);
+        repository = new LogEntryJdbcTemplateRepository(new JdbcTemplate(database));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public List<LogEntry> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public List<LogEntry> findByType() {
+        return repository.findByType(LogEntryType.LUNCH);
+    }
+}
@@ -0,0 +1,79 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.BenchmarkData;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping every row of a result set, with nothing kept, so the result is the mapper plus the driver.
+ * Divide the score and the profiler's gc.alloc.rate.norm by rows for the cost of one row.
+ * byName is how rows were mapped before LogEntryMapper: every column looked up by name on every row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LogEntryMapperBenchmark {
+
+    private static final String SQL = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version "
+            + "from log_entry order by log_entry_id;";
+    private static final String SQL_WITHOUT_DESCRIPTION = "select log_entry_id, user_id, logged_on, log_entry_type_id, calories, version "
+            + "from log_entry order by log_entry_id;";
+
+    private static final RowMapper<LogEntry> BY_NAME = (resultSet, rowNum) -> {
+        LogEntry entry = new LogEntry();
+        entry.setId(resultSet.getInt("log_entry_id"));
+        entry.setUserId(resultSet.getInt("user_id"));
+        entry.setLoggedOn(resultSet.getObject("logged_on", LocalDateTime.class));
+        entry.setType(LogEntryType.findByValue(resultSet.getInt("log_entry_type_id")));
+        entry.setDescription(resultSet.getString("description"));
+        entry.setCalories(resultSet.getInt("calories"));
+        entry.setVersion(resultSet.getInt("version"));
+        return entry;
+    };
+
+    @Param({"1000000"})
+    int rows;
+
+    EmbeddedDatabase database;
+    JdbcTemplate template;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        database = BenchmarkData.makeDatabase("mapper-benchmark", rows);
+        template = new JdbcTemplate(database);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public void byName(Blackhole blackhole) {
+        template.query(SQL, (RowCallbackHandler) resultSet -> blackhole.consume(BY_NAME.mapRow(resultSet, 0)));
+    }
+
+    @Benchmark
+    public void byIndex(Blackhole blackhole) {
+        LogEntryMapper mapper = new LogEntryMapper();
+        template.query(SQL, (RowCallbackHandler) resultSet -> blackhole.consume(mapper.mapRow(resultSet, 0)));
+    }
+
+    @Benchmark
+    public void withoutDescription(Blackhole blackhole) {
+        LogEntryMapper mapper = LogEntryMapper.withoutDescription();
+        template.query(SQL_WITHOUT_DESCRIPTION, (RowCallbackHandler) resultSet -> blackhole.consume(mapper.mapRow(resultSet, 0)));
+    }
+}
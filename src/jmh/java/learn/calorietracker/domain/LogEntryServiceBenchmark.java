@@ -0,0 +1,35 @@
+package learn.calorietracker.domain;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogEntryServiceBenchmark {
+
+    // validate doesn't touch the repository
+    LogEntryService service = new LogEntryService(null, Optional.empty(), new SimpleMeterRegistry());
+
+    LogEntry validEntry = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 9, 0), LogEntryType.BREAKFAST, "Scrambled eggs", 210);
+    LogEntry invalidEntry = new LogEntry(0, null, LogEntryType.BREAKFAST, "", 5000);
+
+    @Benchmark
+    public LogEntryResult validateValid() {
+        return service.validate(validEntry, true);
+    }
+
+    @Benchmark
+    public LogEntryResult validateInvalid() {
+        return service.validate(invalidEntry, true);
+    }
+}
@@ -0,0 +1,23 @@
+package learn.calorietracker.models;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogEntryTypeBenchmark {
+
+    // one lookup of every value, the mix a result set produces
+    @Benchmark
+    public void findByValue(Blackhole blackhole) {
+        for (int value = 1; value <= 5; value++) {
+            blackhole.consume(LogEntryType.findByValue(value));
+        }
+    }
+}
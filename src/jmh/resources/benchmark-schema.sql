@@ -0,0 +1,31 @@
+-- H2 (MySQL mode) version of the log_entry tables in database/schema-data.sql, for benchmarks only
+
+create table log_entry_type (
+    log_entry_type_id int primary key auto_increment,
+    type varchar(100) not null unique
+);
+
+create table log_entry (
+    log_entry_id int primary key auto_increment,
+    user_id int not null,
+    logged_on datetime not null,
+    log_entry_type_id int not null,
+    description varchar(100) not null,
+    calories int not null,
+    version int not null default 1,
+    constraint fk_log_entry_log_entry_type_id
+        foreign key (log_entry_type_id)
+        references log_entry_type(log_entry_type_id)
+);
+
+create index idx_log_entry_user_id_logged_on on log_entry (user_id, logged_on);
+create index idx_log_entry_user_id_log_entry_type_id_logged_on on log_entry (user_id, log_entry_type_id, logged_on);
+create index idx_log_entry_user_id_log_entry_id on log_entry (user_id, log_entry_id);
+
+insert into log_entry_type (log_entry_type_id, type)
+    values
+    (1, 'Breakfast'),
+    (2, 'Lunch'),
+    (3, 'Dinner'),
+    (4, 'Snack'),
+    (5, 'Second Breakfast');
@@ -0,0 +1,38 @@
+package learn.calorietracker;
+
+import learn.calorietracker.domain.LogEntryCsvImporter;
+import learn.calorietracker.domain.LogEntryImportReport;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Bulk imports a log entry CSV file without starting the web server.
+ * Usage: ImportApp [path], where path defaults to dataFilePath in data.properties.
+ */
+public class ImportApp {
+    public static void main(String[] args) throws IOException {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.config.name=application,data")
+                .run(args);
+
+        String dataFilePath = args.length > 0 ? args[0] : context.getEnvironment().getRequiredProperty("dataFilePath");
+        LogEntryCsvImporter importer = context.getBean(LogEntryCsvImporter.class);
+
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(dataFilePath), StandardCharsets.UTF_8)) {
+            LogEntryImportReport report = importer.importCsv(reader);
+            System.out.println(report);
+            report.getRejectedLines().forEach(System.out::println);
+        }
+
+        System.exit(SpringApplication.exit(context));
+    }
+}
@@ -0,0 +1,127 @@
+package learn.calorietracker;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import learn.calorietracker.data.ConnectionLimitingDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs each request, and the streaming responses handed off to the MVC task executor, on its own virtual thread
+ * when log-entry.virtual-threads.enabled is true. JdbcTemplate calls run on the calling thread, so they end up
+ * on virtual threads too. Every connection pool, including each shard and replica pool, then gets its own
+ * ConnectionLimitingDataSource sized to that pool.
+ * <p>
+ * Needs Java 21 or later at runtime. The build targets Java 11, so virtual threads are looked up reflectively, and
+ * the tests only run the virtual thread path on a 21+ JDK; on older ones they check that startup fails cleanly.
+ * <p>
+ * Before Java 24 a virtual thread that blocks inside a synchronized block pins its carrier thread, and there are only
+ * as many carriers as cores. Tomcat 9's NIO connector, HikariCP 3.4 and MySQL Connector/J 8.0 all do some of their
+ * socket I/O or pool bookkeeping under synchronized, so a slow query or a slow client can hold a carrier, and with
+ * enough of them at once throughput drops to what the cores can carry rather than rising. Run with
+ * -Djdk.tracePinnedThreads=short to see where it happens; measure against platform threads (README, Load test)
+ * before turning this on.
+ */
+@Configuration
+@ConditionalOnProperty(name = "log-entry.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public ExecutorService virtualThreadExecutor() {
+        return newVirtualThreadPerTaskExecutor("request-");
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    // used by Spring MVC for StreamingResponseBody; replaces Boot's pooled applicationTaskExecutor
+    @Bean(name = "applicationTaskExecutor")
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+
+    // static so the post processor doesn't drag this configuration into early initialization
+    @Bean
+    public static ConnectionLimitingPostProcessor connectionLimitingDataSourcePostProcessor(
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maxConnections,
+            @Value("${log-entry.virtual-threads.connection-timeout:5s}") Duration connectionTimeout) {
+        return new ConnectionLimitingPostProcessor(maxConnections, connectionTimeout);
+    }
+
+    // one pair of gauges per pool, tagged with the pool's name
+    @Bean
+    public MeterBinder connectionLimitMetrics(ConnectionLimitingPostProcessor postProcessor) {
+        return registry -> {
+            for (ConnectionLimitingDataSource limited : postProcessor.getLimiters()) {
+                Gauge.builder("log_entry.connections.waiting", limited, ConnectionLimitingDataSource::getQueuedThreads)
+                        .tag("pool", limited.getName())
+                        .register(registry);
+                Gauge.builder("log_entry.connections.available", limited, ConnectionLimitingDataSource::getAvailableConnections)
+                        .tag("pool", limited.getName())
+                        .register(registry);
+            }
+        };
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory() and Executors.newThreadPerTaskExecutor, both Java 21
+    static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("log-entry.virtual-threads.enabled needs Java 21 or later, this is "
+                    + Runtime.version(), ex);
+        }
+    }
+
+    // ahead of the other DataSource post processors, so the limiters end up right in front of the pools
+    static class ConnectionLimitingPostProcessor implements BeanPostProcessor, Ordered {
+        private final int defaultMaxConnections;
+        private final Duration connectionTimeout;
+        private final List<ConnectionLimitingDataSource> limiters = new CopyOnWriteArrayList<>();
+
+        ConnectionLimitingPostProcessor(int defaultMaxConnections, Duration connectionTimeout) {
+            this.defaultMaxConnections = defaultMaxConnections;
+            this.connectionTimeout = connectionTimeout;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource) {
+                return ConnectionLimitingDataSource.limitEachPool((DataSource) bean, defaultMaxConnections,
+                        connectionTimeout, limiters::add);
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+
+        List<ConnectionLimitingDataSource> getLimiters() {
+            return limiters;
+        }
+    }
+}
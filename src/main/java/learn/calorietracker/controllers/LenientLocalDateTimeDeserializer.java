@@ -0,0 +1,37 @@
+package learn.calorietracker.controllers;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import learn.calorietracker.domain.LogEntryService;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Accepts the legacy loggedOn formats older clients still send, as well as ISO date-times,
+ * and epoch milliseconds in UTC, which is how CBOR and Smile clients send them.
+ */
+@JsonComponent
+public class LenientLocalDateTimeDeserializer extends JsonDeserializer<LocalDateTime> {
+
+    @Override
+    public LocalDateTime deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.hasToken(JsonToken.VALUE_NUMBER_INT)) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(parser.getLongValue()), ZoneOffset.UTC);
+        }
+        String value = parser.getValueAsString();
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return LogEntryService.parseLoggedOn(value);
+        } catch (IllegalArgumentException ex) {
+            throw context.weirdStringException(value, LocalDateTime.class, ex.getMessage());
+        }
+    }
+}
@@ -1,39 +1,211 @@
 package learn.calorietracker.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import learn.calorietracker.data.UserContext;
+import learn.calorietracker.domain.LogEntryCsvImporter;
+import learn.calorietracker.domain.LogEntryImportReport;
 import learn.calorietracker.domain.LogEntryResult;
 import learn.calorietracker.domain.LogEntryService;
+import learn.calorietracker.domain.ResultType;
+import learn.calorietracker.models.CalorieReport;
+import learn.calorietracker.models.DailyCalorieSummary;
 import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryPage;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationStrategy;
+import org.springframework.web.accept.HeaderContentNegotiationStrategy;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/log")
 public class LogEntryController {
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType APPLICATION_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+    private static final DateTimeFormatter CSV_LOGGED_ON_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private final LogEntryService service;
+    private final LogEntryCsvImporter importer;
+    private final ObjectMapper jsonMapper;
+    private final ObjectWriter entryWriter;
+    // what GET /log/stream can write, JSON first so it's what */* gets
+    private final Map<MediaType, ObjectWriter> streamWriters = new LinkedHashMap<>();
+    private final ContentNegotiationStrategy acceptHeader = new HeaderContentNegotiationStrategy();
 
-    public LogEntryController(LogEntryService service) {
+    public LogEntryController(LogEntryService service, LogEntryCsvImporter importer, ObjectMapper jsonMapper,
+                              MappingJackson2CborHttpMessageConverter cborConverter,
+                              MappingJackson2SmileHttpMessageConverter smileConverter) {
         this.service = service;
+        this.importer = importer;
+        this.jsonMapper = jsonMapper;
+        this.entryWriter = entryWriter(jsonMapper);
+        streamWriters.put(MediaType.APPLICATION_JSON, entryWriter);
+        streamWriters.put(MediaType.APPLICATION_CBOR, entryWriter(cborConverter.getObjectMapper()));
+        streamWriters.put(APPLICATION_SMILE, entryWriter(smileConverter.getObjectMapper()));
     }
 
     @GetMapping
-    public List<LogEntry> findAll() {
-        return service.findAll();
+    public ResponseEntity<List<LogEntry>> findAll(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) LogEntryType type,
+            NativeWebRequest request) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        if (request.checkNotModified(collectionEtag(request))) {
+            return null;
+        }
+
+        if (from == null && to == null) {
+            List<LogEntry> entries = type == null ? service.findAll() : service.findByType(type);
+            return new ResponseEntity<>(entries, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(service.findByDateRange(from, to, type), HttpStatus.OK);
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<LogEntryPage> findPage(@RequestParam(defaultValue = "0") int cursor,
+                                                 @RequestParam(defaultValue = "100") int limit,
+                                                 NativeWebRequest request) {
+        if (cursor < 0 || limit <= 0) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        if (request.checkNotModified(collectionEtag(request))) {
+            return null;
+        }
+        return new ResponseEntity<>(service.findPage(cursor, limit), HttpStatus.OK);
+    }
+
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> stream(NativeWebRequest request) throws HttpMediaTypeNotAcceptableException {
+        MediaType mediaType = representation(request);
+        if (mediaType == null) {
+            throw new HttpMediaTypeNotAcceptableException(new ArrayList<>(streamWriters.keySet()));
+        }
+        return stream(mediaType, streamWriters.get(mediaType));
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+
+        StreamingResponseBody body;
+        MediaType mediaType;
+        switch (format.toLowerCase()) {
+            case "csv":
+                body = outputStream -> exportCsv(from, to, outputStream);
+                mediaType = TEXT_CSV;
+                break;
+            case "ndjson":
+                body = outputStream -> exportNdjson(from, to, outputStream);
+                mediaType = APPLICATION_NDJSON;
+                break;
+            default:
+                return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=log-entries." + format.toLowerCase())
+                .body(forCurrentUser(body));
+    }
+
+    @GetMapping("/summary/daily")
+    public ResponseEntity<List<DailyCalorieSummary>> findDailySummaries(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            NativeWebRequest request) {
+        // defaults to the last 7 days
+        if (to == null) {
+            to = LocalDate.now();
+        }
+        if (from == null) {
+            from = to.minusDays(6);
+        }
+        if (from.isAfter(to)) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        // the default range moves with the date, so the ETag has to name the range as well
+        if (request.checkNotModified(etag(request, service.findCollectionVersion() + "-" + from + "-" + to))) {
+            return null;
+        }
+        return new ResponseEntity<>(service.findDailySummaries(from, to), HttpStatus.OK);
+    }
+
+    // read from the tables CalorieReportJob keeps, so it doesn't matter how many entries there are
+    @GetMapping("/reports")
+    public ResponseEntity<List<CalorieReport>> findReports() {
+        List<CalorieReport> reports = service.findReports();
+        if (reports == null) {
+            // log-entry.reports.enabled is false
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .body(reports);
     }
 
     @GetMapping("/{logEntryId}")
-    public ResponseEntity findById(@PathVariable int logEntryId) {
+    public ResponseEntity findById(@PathVariable int logEntryId, NativeWebRequest request) {
         if (logEntryId <= 0) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
 
+        // only the version is read to answer If-None-Match; without the header that would just be an extra query
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            int version = service.findVersionById(logEntryId);
+            if (version == 0) {
+                return new ResponseEntity(null, HttpStatus.NOT_FOUND);
+            }
+            if (request.checkNotModified(etag(request, String.valueOf(version)))) {
+                return null;
+            }
+        }
+
         LogEntry entry = service.findById(logEntryId);
         if (entry == null) {
             return new ResponseEntity(null, HttpStatus.NOT_FOUND);
         }
-        return new ResponseEntity<>(entry, HttpStatus.OK);
+        // the entry may have changed since the version was read
+        return ResponseEntity.ok().eTag(etag(request, String.valueOf(entry.getVersion()))).body(entry);
     }
 
     @PostMapping
@@ -46,11 +218,48 @@ public class LogEntryController {
         return new ResponseEntity<>(result, HttpStatus.CREATED);
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<List<LogEntryResult>> addAll(@RequestBody List<LogEntry> entries) {
+        List<LogEntryResult> results = service.createAll(entries);
+        if (results.isEmpty() || !results.stream().allMatch(LogEntryResult::isSuccessful)) {
+            return new ResponseEntity<>(results, HttpStatus.BAD_REQUEST);
+        }
+
+        return new ResponseEntity<>(results, HttpStatus.CREATED);
+    }
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<LogEntryImportReport> importCsv(Reader body) throws IOException {
+        // the request body is read as a stream, so the upload is never held in memory
+        return new ResponseEntity<>(importer.importCsv(body), HttpStatus.OK);
+    }
+
     @PutMapping("/{logEntryId}")
-    public ResponseEntity<LogEntryResult> update(@PathVariable int logEntryId, @RequestBody LogEntry entry) {
+    public ResponseEntity<LogEntryResult> update(@PathVariable int logEntryId, @RequestBody LogEntry entry,
+                                                 @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         entry.setId(logEntryId);
+        // the version comes in the body or as the ETag from GET /log/{id}; If-Match: * is the only way to overwrite
+        // whatever is stored, so a client that forgot both can't lose someone else's change by accident
+        if (entry.getVersion() == 0) {
+            if (ifMatch == null) {
+                LogEntryResult result = new LogEntryResult();
+                result.addMessage("send the version you read, as the version field or If-Match, "
+                        + "or If-Match: * to overwrite whatever is stored");
+                return new ResponseEntity<>(result, HttpStatus.PRECONDITION_REQUIRED);
+            }
+            int version = versionFromEtag(ifMatch);
+            if (version < 0) {
+                LogEntryResult result = new LogEntryResult();
+                result.addMessage("If-Match doesn't name a version of this log entry", ResultType.CONFLICT);
+                return new ResponseEntity<>(result, HttpStatus.PRECONDITION_FAILED);
+            }
+            entry.setVersion(version);
+        }
         LogEntryResult result = service.update(entry);
 
+        if (result.getType() == ResultType.CONFLICT) {
+            return new ResponseEntity<>(result, HttpStatus.CONFLICT);
+        }
         if(!result.isSuccessful()) {
             return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST);
         }
@@ -65,4 +274,168 @@ public class LogEntryController {
         }
         return new ResponseEntity<>(HttpStatus.NOT_FOUND);
     }
+
+    // the write-behind queue is full; the client should back off and try again
+    @ExceptionHandler(TransientDataAccessResourceException.class)
+    public ResponseEntity<Void> handleBusy() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity<>(headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // the columnar and file repositories only serve the default user; asking them for another is the client's mistake
+    @ExceptionHandler(InvalidDataAccessApiUsageException.class)
+    public ResponseEntity<Void> handleUnservedUser() {
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(MediaType mediaType, ObjectWriter entryWriter) {
+        // rows are written as they come off the result set, so memory use doesn't grow with the table
+        StreamingResponseBody body = outputStream -> {
+            try (SequenceWriter writer = entryWriter.writeValuesAsArray(outputStream)) {
+                service.streamAll(entry -> {
+                    try {
+                        writer.write(entry);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .body(forCurrentUser(body));
+    }
+
+    // resolves the LogEntry serializer once per response instead of once per entry, and leaves flushing to the buffer
+    private static ObjectWriter entryWriter(ObjectMapper mapper) {
+        return mapper.writerFor(LogEntry.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // streaming bodies are written on a task executor thread, which has to work for the user who made the request
+    private static StreamingResponseBody forCurrentUser(StreamingResponseBody body) {
+        int userId = UserContext.getUserId();
+        return outputStream -> {
+            UserContext.setUserId(userId);
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                UserContext.clear();
+            }
+        };
+    }
+
+    // read before the entries, so a write in between leaves the ETag older than the body, never newer
+    private String collectionEtag(NativeWebRequest request) {
+        return etag(request, String.valueOf(service.findCollectionVersion()));
+    }
+
+    // the JSON, CBOR and Smile bodies of one version differ, so each gets its own ETag, and caches are told that
+    // the body depends on Accept; set on the servlet response so a 304 carries it too
+    private String etag(NativeWebRequest request, String version) {
+        HttpServletResponse response = request.getNativeResponse(HttpServletResponse.class);
+        if (response != null && !response.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT)) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        MediaType mediaType = representation(request);
+        return weakEtag(version + "-" + (mediaType == null ? MediaType.APPLICATION_JSON : mediaType).getSubtype());
+    }
+
+    // which of JSON, CBOR and Smile the Accept header picks, JSON first so it's what */* gets; null for none of them
+    private MediaType representation(NativeWebRequest request) {
+        try {
+            for (MediaType acceptable : acceptHeader.resolveMediaTypes(request)) {
+                for (MediaType mediaType : streamWriters.keySet()) {
+                    if (acceptable.isCompatibleWith(mediaType)) {
+                        return mediaType;
+                    }
+                }
+            }
+        } catch (HttpMediaTypeNotAcceptableException ex) {
+            // an Accept header that can't be parsed
+        }
+        return null;
+    }
+
+    // W/"3-json", W/"3-cbor" or W/"3-x-jackson-smile", with or without the W/ and the media type; 0 for *, which matches
+    // whatever version is stored, and -1 for anything else, since no stored version can match an ETag we never handed out
+    private int versionFromEtag(String etag) {
+        String version = etag.trim();
+        if (version.equals("*")) {
+            return 0;
+        }
+        if (version.startsWith("W/")) {
+            version = version.substring(2);
+        }
+        if (version.length() > 2 && version.startsWith("\"") && version.endsWith("\"")) {
+            version = version.substring(1, version.length() - 1);
+            int dash = version.indexOf('-');
+            if (dash >= 0) {
+                String subtype = version.substring(dash + 1);
+                if (streamWriters.keySet().stream().noneMatch(mediaType -> mediaType.getSubtype().equals(subtype))) {
+                    return -1;
+                }
+                version = version.substring(0, dash);
+            }
+            try {
+                int parsed = Integer.parseInt(version);
+                return parsed > 0 ? parsed : -1;
+            } catch (NumberFormatException ex) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    // weak, because the gzipped and plain bodies differ byte for byte; Tomcat won't compress a response with a strong ETag
+    private static String weakEtag(String version) {
+        return "W/\"" + version + "\"";
+    }
+
+    // same column layout as data/log-entries.csv
+    private void exportCsv(LocalDate from, LocalDate to, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write("id,loggedOn,type,description,calories\n");
+        service.streamByDateRange(from, to, entry -> {
+            try {
+                writer.write(String.valueOf(entry.getId()));
+                writer.write(',');
+                writer.write(CSV_LOGGED_ON_FORMAT.format(entry.getLoggedOn()));
+                writer.write(',');
+                writer.write(entry.getType().name());
+                writer.write(',');
+                writer.write(csvEscape(entry.getDescription()));
+                writer.write(',');
+                writer.write(String.valueOf(entry.getCalories()));
+                writer.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        writer.flush();
+    }
+
+    private void exportNdjson(LocalDate from, LocalDate to, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = jsonMapper.getFactory().createGenerator(outputStream)) {
+            // each entry ends with its own newline, so no separator is needed between root values
+            generator.setRootValueSeparator(null);
+            SequenceWriter writer = entryWriter.writeValues(generator);
+            service.streamByDateRange(from, to, entry -> {
+                try {
+                    writer.write(entry);
+                    generator.writeRaw('\n');
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+    }
+
+    private static String csvEscape(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
 }
@@ -0,0 +1,61 @@
+package learn.calorietracker.controllers;
+
+import learn.calorietracker.domain.LogEntryService;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+
+/**
+ * Streams log entries as newline-delimited JSON or server-sent events, written as the client reads them.
+ * The entries are only read from the database as fast as they're written out, so memory use stays at about a page
+ * however many entries there are and however slow the client is.
+ * <p>
+ * This is still Spring MVC, not WebFlux: the Tomcat request thread is released straight away, but each entry is
+ * written with a blocking write on Spring MVC's async task executor (Boot's applicationTaskExecutor, sized with
+ * spring.task.execution.pool.* in application.properties). A client that stops reading holds one of those threads
+ * until its socket buffer drains or spring.mvc.async.request-timeout ends the request, so the number of streams that
+ * can be stuck on slow clients at once is the executor's max-size, not thousands.
+ * <p>
+ * Holding thousands of slow streams on a handful of threads would take non-blocking writes end to end (WebFlux on
+ * Netty, and a non-blocking database driver behind it), which this endpoint doesn't attempt. The nearest thing here is
+ * log-entry.virtual-threads.enabled on Java 21, where a stuck stream parks a virtual thread instead of a pool thread.
+ */
+@RestController
+@RequestMapping("/log/reactive")
+public class LogEntryReactiveController {
+
+    private final LogEntryService service;
+
+    public LogEntryReactiveController(LogEntryService service) {
+        this.service = service;
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_STREAM_JSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public ResponseEntity<Flux<LogEntry>> findAll(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) LogEntryType type) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(service.findAllAsFlux(from, to, type), HttpStatus.OK);
+    }
+
+    // the columnar and file repositories only serve the default user
+    @ExceptionHandler(InvalidDataAccessApiUsageException.class)
+    public ResponseEntity<Void> handleUnservedUser() {
+        return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+    }
+}
@@ -0,0 +1,89 @@
+package learn.calorietracker.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import learn.calorietracker.domain.LogEntryResult;
+import learn.calorietracker.domain.ResultType;
+import learn.calorietracker.models.LogEntry;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a LogEntryResult the same way the reflective serializer did, with the payload written by LogEntrySerializer.
+ */
+@JsonComponent
+public class LogEntryResultSerializer extends JsonSerializer<LogEntryResult> implements ContextualSerializer {
+
+    private static final SerializableString MESSAGES = new SerializedString("messages");
+    private static final SerializableString PAYLOAD = new SerializedString("payload");
+    private static final SerializableString TYPE = new SerializedString("type");
+    private static final SerializableString SUCCESSFUL = new SerializedString("successful");
+
+    // by ordinal
+    private static final SerializableString[] TYPE_NAMES = typeNames();
+
+    private final JsonSerializer<Object> payloadSerializer;
+
+    public LogEntryResultSerializer() {
+        this(null);
+    }
+
+    private LogEntryResultSerializer(JsonSerializer<Object> payloadSerializer) {
+        this.payloadSerializer = payloadSerializer;
+    }
+
+    @Override
+    public Class<LogEntryResult> handledType() {
+        return LogEntryResult.class;
+    }
+
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+        if (payloadSerializer != null) {
+            return this;
+        }
+        return new LogEntryResultSerializer(provider.findValueSerializer(LogEntry.class, property));
+    }
+
+    @Override
+    public void serialize(LogEntryResult result, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(result);
+        generator.writeFieldName(MESSAGES);
+        List<String> messages = result.getMessages();
+        generator.writeStartArray(messages.size());
+        for (String message : messages) {
+            generator.writeString(message);
+        }
+        generator.writeEndArray();
+        generator.writeFieldName(PAYLOAD);
+        if (result.getPayload() == null) {
+            generator.writeNull();
+        } else if (payloadSerializer == null) {
+            provider.findValueSerializer(LogEntry.class).serialize(result.getPayload(), generator, provider);
+        } else {
+            payloadSerializer.serialize(result.getPayload(), generator, provider);
+        }
+        generator.writeFieldName(TYPE);
+        generator.writeString(TYPE_NAMES[result.getType().ordinal()]);
+        generator.writeFieldName(SUCCESSFUL);
+        generator.writeBoolean(result.isSuccessful());
+        generator.writeEndObject();
+    }
+
+    private static SerializableString[] typeNames() {
+        ResultType[] types = ResultType.values();
+        SerializableString[] names = new SerializableString[types.length];
+        for (ResultType type : types) {
+            names[type.ordinal()] = new SerializedString(type.name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,106 @@
+package learn.calorietracker.controllers;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Writes a LogEntry field by field instead of through bean introspection, with the field names and type names
+ * encoded once up front. The output is the same as the reflective serializer's: same fields, same order,
+ * and loggedOn written by whatever LocalDateTime serializer the mapper is configured with.
+ * In the binary formats, CBOR and Smile, the type is written as its value and loggedOn as epoch milliseconds in UTC.
+ */
+@JsonComponent
+public class LogEntrySerializer extends JsonSerializer<LogEntry> implements ContextualSerializer {
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString USER_ID = new SerializedString("userId");
+    private static final SerializableString LOGGED_ON = new SerializedString("loggedOn");
+    private static final SerializableString TYPE = new SerializedString("type");
+    private static final SerializableString DESCRIPTION = new SerializedString("description");
+    private static final SerializableString CALORIES = new SerializedString("calories");
+    private static final SerializableString VERSION = new SerializedString("version");
+
+    // by ordinal
+    private static final SerializableString[] TYPE_NAMES = typeNames();
+
+    private final JsonSerializer<Object> loggedOnSerializer;
+
+    public LogEntrySerializer() {
+        this(null);
+    }
+
+    private LogEntrySerializer(JsonSerializer<Object> loggedOnSerializer) {
+        this.loggedOnSerializer = loggedOnSerializer;
+    }
+
+    @Override
+    public Class<LogEntry> handledType() {
+        return LogEntry.class;
+    }
+
+    // looked up once per mapper, not once per entry
+    @Override
+    public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException {
+        if (loggedOnSerializer != null) {
+            return this;
+        }
+        return new LogEntrySerializer(provider.findValueSerializer(LocalDateTime.class, property));
+    }
+
+    @Override
+    public void serialize(LogEntry entry, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        boolean binary = generator.canWriteBinaryNatively();
+        generator.writeStartObject(entry);
+        generator.writeFieldName(ID);
+        generator.writeNumber(entry.getId());
+        generator.writeFieldName(USER_ID);
+        generator.writeNumber(entry.getUserId());
+        generator.writeFieldName(LOGGED_ON);
+        if (entry.getLoggedOn() == null) {
+            generator.writeNull();
+        } else if (binary) {
+            generator.writeNumber(entry.getLoggedOn().toInstant(ZoneOffset.UTC).toEpochMilli());
+        } else if (loggedOnSerializer == null) {
+            provider.findValueSerializer(LocalDateTime.class).serialize(entry.getLoggedOn(), generator, provider);
+        } else {
+            loggedOnSerializer.serialize(entry.getLoggedOn(), generator, provider);
+        }
+        generator.writeFieldName(TYPE);
+        if (entry.getType() == null) {
+            generator.writeNull();
+        } else if (binary) {
+            generator.writeNumber(entry.getType().getValue());
+        } else {
+            generator.writeString(TYPE_NAMES[entry.getType().ordinal()]);
+        }
+        generator.writeFieldName(DESCRIPTION);
+        generator.writeString(entry.getDescription());
+        generator.writeFieldName(CALORIES);
+        generator.writeNumber(entry.getCalories());
+        generator.writeFieldName(VERSION);
+        generator.writeNumber(entry.getVersion());
+        generator.writeEndObject();
+    }
+
+    private static SerializableString[] typeNames() {
+        LogEntryType[] types = LogEntryType.values();
+        SerializableString[] names = new SerializableString[types.length];
+        for (LogEntryType type : types) {
+            names[type.ordinal()] = new SerializedString(type.name());
+        }
+        return names;
+    }
+}
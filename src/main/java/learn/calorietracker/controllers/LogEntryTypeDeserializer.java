@@ -0,0 +1,39 @@
+package learn.calorietracker.controllers;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.boot.jackson.JsonComponent;
+
+import java.io.IOException;
+
+/**
+ * Reads a LogEntryType from its name, or from its value, which is how CBOR and Smile clients send it.
+ * A number is the value, the same as in the database, never the enum ordinal.
+ */
+@JsonComponent
+public class LogEntryTypeDeserializer extends JsonDeserializer<LogEntryType> {
+
+    @Override
+    public LogEntryType deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.hasToken(JsonToken.VALUE_NUMBER_INT)) {
+            int value = parser.getIntValue();
+            try {
+                return LogEntryType.findByValue(value);
+            } catch (RuntimeException ex) {
+                throw context.weirdNumberException(value, LogEntryType.class, ex.getMessage());
+            }
+        }
+        String name = parser.getValueAsString();
+        if (name == null) {
+            return (LogEntryType) context.handleUnexpectedToken(LogEntryType.class, parser);
+        }
+        try {
+            return LogEntryType.valueOf(name);
+        } catch (IllegalArgumentException ex) {
+            throw context.weirdStringException(name, LogEntryType.class, "not one of the LogEntryType names");
+        }
+    }
+}
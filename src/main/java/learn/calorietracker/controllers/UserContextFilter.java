@@ -0,0 +1,76 @@
+package learn.calorietracker.controllers;
+
+import learn.calorietracker.data.UserContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.Principal;
+
+/**
+ * Sets the UserContext for each request. A user the container has authenticated is used as is; its name has to be
+ * the numeric user id. Otherwise the X-User-Id header names the user, but only when log-entry.user-header.trusted
+ * says the app sits behind a proxy that authenticates clients and sets the header itself: anyone can send a header,
+ * so without that it's refused. A request with neither works with the default user's entries.
+ */
+@Component
+public class UserContextFilter extends OncePerRequestFilter {
+
+    public static final String USER_ID_HEADER = "X-User-Id";
+
+    private final boolean trustHeader;
+
+    public UserContextFilter(@Value("${log-entry.user-header.trusted:false}") boolean trustHeader) {
+        this.trustHeader = trustHeader;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(USER_ID_HEADER);
+        Principal principal = request.getUserPrincipal();
+
+        if (header != null && !trustHeader) {
+            response.sendError(HttpStatus.FORBIDDEN.value(),
+                    USER_ID_HEADER + " is only accepted from a trusted proxy");
+            return;
+        }
+
+        if (principal != null) {
+            int userId = parseUserId(principal.getName());
+            if (userId <= 0 || (header != null && parseUserId(header) != userId)) {
+                response.sendError(HttpStatus.FORBIDDEN.value(),
+                        "the signed in user doesn't match a user id");
+                return;
+            }
+            UserContext.setUserId(userId);
+        } else if (header != null) {
+            int userId = parseUserId(header);
+            if (userId <= 0) {
+                response.sendError(HttpStatus.BAD_REQUEST.value(), USER_ID_HEADER + " must be a positive number");
+                return;
+            }
+            UserContext.setUserId(userId);
+        }
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            UserContext.clear();
+        }
+    }
+
+    private static int parseUserId(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package learn.calorietracker.data;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import learn.calorietracker.models.DailyCalorieSummary;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-through cache in front of another repository for findById and findByType, and for the entry and collection
+ * versions the controller compares ETags against.
+ * Entries are evicted least recently used first once the cache holds maxSize entries, and expire after the ttl.
+ * Writes through this repository invalidate exactly the entries they affect, and the writing user's collection version.
+ * All caches are keyed by user as well, so one user never sees another's cached entries.
+ * LogEntry is mutable, so the cache keeps its own copies and hands out a fresh copy on every read; a caller changing
+ * what it was given can't change what the next caller reads.
+ */
+public class CachingLogEntryRepository implements LogEntryRepository, MeterBinder {
+
+    private final LogEntryRepository delegate;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    private static final LogEntryType[] TYPES = LogEntryType.values();
+    // a list for every type of every active user is too many; the least recently used lists go first
+    private static final int MAX_TYPE_LISTS = 1024;
+
+    private final Map<Long, CachedValue<LogEntry>> entriesById;
+    private final Map<Long, CachedValue<List<LogEntry>>> entriesByType;
+    private final Map<Integer, CachedValue<Long>> collectionVersions;
+
+    // bumped before and after every write; a read only fills the cache if no write overlapped it
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingLogEntryRepository(LogEntryRepository delegate, int maxSize, Duration ttl) {
+        this(delegate, maxSize, ttl, System::nanoTime);
+    }
+
+    CachingLogEntryRepository(LogEntryRepository delegate, int maxSize, Duration ttl, LongSupplier nanoClock) {
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+        this.entriesById = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedValue<LogEntry>> eldest) {
+                if (size() > CachingLogEntryRepository.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.entriesByType = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedValue<List<LogEntry>>> eldest) {
+                if (size() > MAX_TYPE_LISTS) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.collectionVersions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedValue<Long>> eldest) {
+                if (size() > MAX_TYPE_LISTS) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public List<LogEntry> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit, LocalDate from, LocalDate to, LogEntryType type) {
+        return delegate.findPage(afterId, limit, from, to, type);
+    }
+
+    @Override
+    public void streamAll(Consumer<LogEntry> consumer) {
+        delegate.streamAll(consumer);
+    }
+
+    @Override
+    public void streamByDateRange(LocalDate from, LocalDate to, Consumer<LogEntry> consumer) {
+        delegate.streamByDateRange(from, to, consumer);
+    }
+
+    @Override
+    public List<LogEntry> findByType(LogEntryType type) {
+        synchronized (this) {
+            List<LogEntry> cached = getIfFresh(entriesByType, typeKey(type));
+            if (cached != null) {
+                return copyAll(cached);
+            }
+        }
+
+        long generation = writeGeneration.get();
+        List<LogEntry> entries = delegate.findByType(type);
+
+        // very large lists aren't worth holding on to
+        if (entries.size() <= maxSize) {
+            List<LogEntry> copies = List.copyOf(copyAll(entries));
+            synchronized (this) {
+                if (generation == writeGeneration.get()) {
+                    entriesByType.put(typeKey(type), new CachedValue<>(copies, nanoClock.getAsLong() + ttlNanos));
+                }
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public List<LogEntry> findByDateRange(LocalDate from, LocalDate to) {
+        return delegate.findByDateRange(from, to);
+    }
+
+    @Override
+    public List<LogEntry> findByDateRangeAndType(LocalDate from, LocalDate to, LogEntryType type) {
+        return delegate.findByDateRangeAndType(from, to, type);
+    }
+
+    // a miss reads and caches the whole entry, so the GET that usually follows a changed version is a hit
+    @Override
+    public int findVersionById(int id) {
+        LogEntry entry = findById(id);
+        return entry == null ? 0 : entry.getVersion();
+    }
+
+    @Override
+    public long findCollectionVersion() {
+        int userId = UserContext.getUserId();
+        synchronized (this) {
+            Long cached = getIfFresh(collectionVersions, userId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long generation = writeGeneration.get();
+        long version = delegate.findCollectionVersion();
+
+        synchronized (this) {
+            if (generation == writeGeneration.get()) {
+                collectionVersions.put(userId, new CachedValue<>(version, nanoClock.getAsLong() + ttlNanos));
+            }
+        }
+        return version;
+    }
+
+    @Override
+    public LogEntry findById(int id) {
+        synchronized (this) {
+            LogEntry cached = getIfFresh(entriesById, idKey(id));
+            if (cached != null) {
+                return copy(cached);
+            }
+        }
+
+        long generation = writeGeneration.get();
+        LogEntry entry = delegate.findById(id);
+
+        if (entry != null) {
+            synchronized (this) {
+                if (generation == writeGeneration.get()) {
+                    entriesById.put(idKey(id), new CachedValue<>(copy(entry), nanoClock.getAsLong() + ttlNanos));
+                }
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public List<DailyCalorieSummary> findDailySummaries(LocalDate from, LocalDate to) {
+        return delegate.findDailySummaries(from, to);
+    }
+
+    @Override
+    public LogEntry create(LogEntry entry) {
+        writeGeneration.incrementAndGet();
+        try {
+            LogEntry created = delegate.create(entry);
+            synchronized (this) {
+                entriesByType.remove(typeKey(entry.getType()));
+                collectionVersions.remove(UserContext.getUserId());
+            }
+            return created;
+        } finally {
+            writeGeneration.incrementAndGet();
+        }
+    }
+
+    @Override
+    public List<LogEntry> createAll(List<LogEntry> entries) {
+        writeGeneration.incrementAndGet();
+        try {
+            List<LogEntry> created = delegate.createAll(entries);
+            synchronized (this) {
+                for (LogEntry entry : entries) {
+                    entriesByType.remove(typeKey(entry.getType()));
+                }
+                collectionVersions.remove(UserContext.getUserId());
+            }
+            return created;
+        } finally {
+            writeGeneration.incrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean update(LogEntry entry) {
+        writeGeneration.incrementAndGet();
+        try {
+            return delegate.update(entry);
+        } finally {
+            // also after a conflict, since the cached copy is probably the stale one
+            synchronized (this) {
+                invalidate(entry.getId());
+                entriesByType.remove(typeKey(entry.getType()));
+                collectionVersions.remove(UserContext.getUserId());
+            }
+            writeGeneration.incrementAndGet();
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        writeGeneration.incrementAndGet();
+        try {
+            boolean deleted = delegate.delete(id);
+            synchronized (this) {
+                invalidate(id);
+                collectionVersions.remove(UserContext.getUserId());
+            }
+            return deleted;
+        } finally {
+            writeGeneration.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("log_entry.cache.hits", this, CachingLogEntryRepository::getHits)
+                .register(registry);
+        FunctionCounter.builder("log_entry.cache.misses", this, CachingLogEntryRepository::getMisses)
+                .register(registry);
+        FunctionCounter.builder("log_entry.cache.evictions", this, CachingLogEntryRepository::getEvictions)
+                .register(registry);
+        Gauge.builder("log_entry.cache.size", this, CachingLogEntryRepository::getSize)
+                .register(registry);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int getSize() {
+        return entriesById.size() + entriesByType.size() + collectionVersions.size();
+    }
+
+    // removes the entry and the type list it belonged to; if we don't know its type, all of the user's type lists go
+    private void invalidate(int id) {
+        CachedValue<LogEntry> cached = entriesById.remove(idKey(id));
+        if (cached != null) {
+            entriesByType.remove(typeKey(cached.value.getType()));
+        } else {
+            for (LogEntryType type : TYPES) {
+                entriesByType.remove(typeKey(type));
+            }
+        }
+    }
+
+    private static LogEntry copy(LogEntry entry) {
+        LogEntry copy = new LogEntry(entry.getId(), entry.getLoggedOn(), entry.getType(), entry.getDescription(), entry.getCalories());
+        copy.setUserId(entry.getUserId());
+        copy.setVersion(entry.getVersion());
+        return copy;
+    }
+
+    private static List<LogEntry> copyAll(List<LogEntry> entries) {
+        List<LogEntry> copies = new ArrayList<>(entries.size());
+        for (LogEntry entry : entries) {
+            copies.add(copy(entry));
+        }
+        return copies;
+    }
+
+    // the current user in the high half, so ids and types only collide within a user
+    private static long idKey(int id) {
+        return ((long) UserContext.getUserId() << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    private static long typeKey(LogEntryType type) {
+        return ((long) UserContext.getUserId() << 32) | type.ordinal();
+    }
+
+    private <K, V> V getIfFresh(Map<K, CachedValue<V>> cache, K key) {
+        CachedValue<V> cached = cache.get(key);
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        if (cached.expiresAt - nanoClock.getAsLong() <= 0) {
+            cache.remove(key);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached.value;
+    }
+
+    private static class CachedValue<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private CachedValue(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
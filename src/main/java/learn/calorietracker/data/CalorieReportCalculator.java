@@ -0,0 +1,185 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.CalorieReport;
+import learn.calorietracker.models.LogEntryType;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The arithmetic behind calorie_report. Every total in a report is a sum over the days in one of its two windows,
+ * so moving reports to a later as_of, or applying changed days to them, only needs the days whose totals changed
+ * or that cross a window boundary: each one's old contribution comes out and its new one goes in.
+ * A full build is the same thing starting from no reports, with every day in the last two years as changed.
+ */
+final class CalorieReportCalculator {
+
+    static final int[] PERIOD_DAYS = {7, 30, 365};
+
+    // the oldest day any report looks at, counting as_of itself
+    static final int HISTORY_DAYS = 2 * PERIOD_DAYS[PERIOD_DAYS.length - 1];
+
+    private static final LogEntryType[] TYPES = LogEntryType.values();
+
+    private static final int OUTSIDE = 0;
+    private static final int CURRENT = 1;
+    private static final int PREVIOUS = 2;
+
+    private static final Day EMPTY = new Day();
+
+    private CalorieReportCalculator() {
+    }
+
+    /**
+     * One user's daily_calorie_total rows for one day, indexed by type ordinal.
+     */
+    static final class Day {
+        private final int[] calories = new int[TYPES.length];
+        private final int[] entries = new int[TYPES.length];
+
+        void add(LogEntryType type, int calories, int entries) {
+            this.calories[type.ordinal()] += calories;
+            this.entries[type.ordinal()] += entries;
+        }
+
+        int getEntries(LogEntryType type) {
+            return entries[type.ordinal()];
+        }
+
+        Day copy() {
+            Day copy = new Day();
+            System.arraycopy(calories, 0, copy.calories, 0, calories.length);
+            System.arraycopy(entries, 0, copy.entries, 0, entries.length);
+            return copy;
+        }
+
+        // a logged day has at least one entry of any type, the same rule the averages use
+        boolean isLogged() {
+            for (int count : entries) {
+                if (count > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The days that are in a different window, or in none any more, once reports as of from are moved to to.
+     */
+    static SortedSet<LocalDate> crossingDays(LocalDate from, LocalDate to) {
+        SortedSet<LocalDate> days = new TreeSet<>();
+        for (int periodDays : PERIOD_DAYS) {
+            for (LocalDate day = from.minusDays(2L * periodDays - 1); !day.isAfter(to); day = day.plusDays(1)) {
+                if (window(day, from, periodDays) != window(day, to, periodDays)) {
+                    days.add(day);
+                }
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Moves reports, all as of one day or empty for a user who has none yet, to asOf. before holds days as the reports
+     * counted them and after as they should count them now; a day missing from one of the two is empty there.
+     * Both need every day that changed and every day in crossingDays, or the result is off by those days.
+     * Per type reports share the logged days of the report for every type, and are dropped once both their totals are 0.
+     */
+    static List<CalorieReport> advance(List<CalorieReport> reports, LocalDate asOf,
+                                       Map<LocalDate, Day> before, Map<LocalDate, Day> after) {
+        LocalDate from = reports.isEmpty() ? null : reports.get(0).getAsOf();
+        SortedSet<LocalDate> days = new TreeSet<>(before.keySet());
+        days.addAll(after.keySet());
+
+        List<CalorieReport> advanced = new ArrayList<>();
+        for (int periodDays : PERIOD_DAYS) {
+            CalorieReport allTypes = null;
+            CalorieReport[] byType = new CalorieReport[TYPES.length];
+            for (CalorieReport report : reports) {
+                if (report.getPeriodDays() != periodDays) {
+                    continue;
+                }
+                if (report.getType() == null) {
+                    allTypes = copy(report);
+                } else {
+                    byType[report.getType().ordinal()] = copy(report);
+                }
+            }
+            if (allTypes == null) {
+                allTypes = new CalorieReport(periodDays, null, asOf);
+            }
+
+            for (LocalDate day : days) {
+                if (from != null) {
+                    add(allTypes, byType, window(day, from, periodDays), before.getOrDefault(day, EMPTY), -1);
+                }
+                add(allTypes, byType, window(day, asOf, periodDays), after.getOrDefault(day, EMPTY), 1);
+            }
+
+            allTypes.setAsOf(asOf);
+            advanced.add(allTypes);
+            for (CalorieReport report : byType) {
+                if (report == null || (report.getTotalCalories() == 0 && report.getPreviousTotalCalories() == 0)) {
+                    continue;
+                }
+                report.setAsOf(asOf);
+                report.setLoggedDays(allTypes.getLoggedDays());
+                report.setPreviousLoggedDays(allTypes.getPreviousLoggedDays());
+                advanced.add(report);
+            }
+        }
+        return advanced;
+    }
+
+    static int window(LocalDate day, LocalDate asOf, int periodDays) {
+        long daysBack = ChronoUnit.DAYS.between(day, asOf);
+        if (daysBack < 0 || daysBack >= 2L * periodDays) {
+            return OUTSIDE;
+        }
+        return daysBack < periodDays ? CURRENT : PREVIOUS;
+    }
+
+    private static void add(CalorieReport allTypes, CalorieReport[] byType, int window, Day day, int sign) {
+        if (window == OUTSIDE) {
+            return;
+        }
+        boolean current = window == CURRENT;
+        int loggedDays = day.isLogged() ? sign : 0;
+        int totalCalories = 0;
+        for (int i = 0; i < TYPES.length; i++) {
+            if (day.calories[i] == 0) {
+                continue;
+            }
+            if (byType[i] == null) {
+                byType[i] = new CalorieReport(allTypes.getPeriodDays(), TYPES[i], allTypes.getAsOf());
+            }
+            add(byType[i], current, sign * day.calories[i], 0);
+            totalCalories += sign * day.calories[i];
+        }
+        add(allTypes, current, totalCalories, loggedDays);
+    }
+
+    private static void add(CalorieReport report, boolean current, int calories, int days) {
+        if (current) {
+            report.setTotalCalories(report.getTotalCalories() + calories);
+            report.setLoggedDays(report.getLoggedDays() + days);
+        } else {
+            report.setPreviousTotalCalories(report.getPreviousTotalCalories() + calories);
+            report.setPreviousLoggedDays(report.getPreviousLoggedDays() + days);
+        }
+    }
+
+    private static CalorieReport copy(CalorieReport report) {
+        CalorieReport copy = new CalorieReport(report.getPeriodDays(), report.getType(), report.getAsOf());
+        copy.setTotalCalories(report.getTotalCalories());
+        copy.setLoggedDays(report.getLoggedDays());
+        copy.setPreviousTotalCalories(report.getPreviousTotalCalories());
+        copy.setPreviousLoggedDays(report.getPreviousLoggedDays());
+        return copy;
+    }
+}
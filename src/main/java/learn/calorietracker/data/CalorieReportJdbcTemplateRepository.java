@@ -0,0 +1,224 @@
+package learn.calorietracker.data;
+
+import io.micrometer.core.annotation.Timed;
+import learn.calorietracker.data.CalorieReportCalculator.Day;
+import learn.calorietracker.models.CalorieReport;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The calorie_report tables. calorie_report always matches daily_calorie_total minus the calorie_report_change rows
+ * still queued: the report job applies and deletes queued changes, reading a user's reports moves them on to a new day,
+ * and both only look at the days that changed or cross a window boundary.
+ * <p>
+ * Both lock the user's calorie_report rows before anything else and then read the queue and the daily totals from one
+ * repeatable read snapshot. Writers queue a change in the same transaction as the daily total it describes, so the two
+ * always agree, and two updates of the same user's reports wait for each other instead of applying a change twice.
+ */
+@Repository
+@ConditionalOnExpression("${log-entry.reports.enabled:false} and '${log-entry.repository:jdbc}' != 'file'")
+public class CalorieReportJdbcTemplateRepository implements CalorieReportRepository {
+
+    private static final String TIMER = "log_entry.repository";
+
+    // log_entry_type_id for the report that covers every type
+    private static final int ALL_TYPES = 0;
+
+    // past this many days, rebuilding from two years of daily totals reads about as much as moving every window would
+    static final int MAX_DAYS_TO_MOVE = 31;
+
+    private static final String REPORT_COLUMNS = "select period_days, log_entry_type_id, as_of, total_calories, logged_days, "
+            + "previous_total_calories, previous_logged_days "
+            + "from calorie_report "
+            + "where user_id = ? "
+            + "order by period_days, log_entry_type_id";
+
+    private final JdbcTemplate template;
+
+    public CalorieReportJdbcTemplateRepository(JdbcTemplate template) {
+        this.template = template;
+    }
+
+    // a primary key range of at most a few dozen rows, however much history the user has
+    @Override
+    @Timed(TIMER)
+    public List<CalorieReport> findReports() {
+        return findReports(UserContext.getUserId(), false);
+    }
+
+    @Override
+    @Timed(TIMER)
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public List<CalorieReport> moveReportsForward(LocalDate asOf) {
+        int userId = UserContext.getUserId();
+        List<CalorieReport> reports = findReports(userId, true);
+        if (reports.isEmpty() || !reports.get(0).getAsOf().isBefore(asOf)) {
+            return reports;
+        }
+        List<CalorieReport> moved = update(userId, reports, asOf, findChanges(userId), false);
+        saveReports(userId, moved);
+        return moved;
+    }
+
+    // users with queued changes after afterUserId, in order, so the job can page through them
+    @Timed(TIMER)
+    public List<Integer> findUsersWithChanges(int afterUserId, int limit) {
+        return template.queryForList("select distinct user_id from calorie_report_change where user_id > ? "
+                + "order by user_id limit ?;", Integer.class, afterUserId, limit);
+    }
+
+    /**
+     * Applies the user's queued changes to their reports, moves them on to asOf and deletes the changes it applied.
+     * A user without reports gets them built from their daily totals. Returns the number of changes applied.
+     */
+    @Timed(TIMER)
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public int applyChanges(int userId, LocalDate asOf) {
+        List<CalorieReport> reports = findReports(userId, true);
+        List<Change> changes = findChanges(userId);
+        if (changes.isEmpty() && !reports.isEmpty() && !reports.get(0).getAsOf().isBefore(asOf)) {
+            return 0;
+        }
+
+        saveReports(userId, update(userId, reports, asOf, changes, true));
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        template.batchUpdate("delete from calorie_report_change where calorie_report_change_id = ?;",
+                changes, changes.size(), (ps, change) -> ps.setLong(1, change.id));
+        return changes.size();
+    }
+
+    // the reports as of asOf, with the queued changes counted if apply is true and left for the job otherwise
+    private List<CalorieReport> update(int userId, List<CalorieReport> reports, LocalDate asOf,
+                                       List<Change> changes, boolean apply) {
+        LocalDate from = reports.isEmpty() ? null : reports.get(0).getAsOf();
+
+        Map<LocalDate, Day> now;
+        if (from == null || from.plusDays(MAX_DAYS_TO_MOVE).isBefore(asOf)) {
+            reports = List.of();
+            now = findDays(userId, asOf.minusDays(CalorieReportCalculator.HISTORY_DAYS - 1), asOf);
+        } else {
+            Set<LocalDate> dates = new TreeSet<>(CalorieReportCalculator.crossingDays(from, asOf));
+            if (apply) {
+                for (Change change : changes) {
+                    dates.add(change.date);
+                }
+            }
+            now = findDays(userId, dates);
+        }
+
+        // what the saved reports have counted so far: today's totals without the changes still queued
+        Map<LocalDate, Day> counted = new HashMap<>();
+        for (Map.Entry<LocalDate, Day> day : now.entrySet()) {
+            counted.put(day.getKey(), day.getValue().copy());
+        }
+        for (Change change : changes) {
+            counted.computeIfAbsent(change.date, date -> new Day()).add(change.type, -change.calories, -change.entries);
+        }
+        // a rebuild starts from nothing, so only the after side matters
+        Map<LocalDate, Day> before = reports.isEmpty() ? Map.of() : counted;
+        return CalorieReportCalculator.advance(reports, asOf, before, apply ? now : counted);
+    }
+
+    private List<CalorieReport> findReports(int userId, boolean forUpdate) {
+        return template.query(REPORT_COLUMNS + (forUpdate ? " for update;" : ";"), (resultSet, rowNum) -> {
+            int typeId = resultSet.getInt("log_entry_type_id");
+            CalorieReport report = new CalorieReport(resultSet.getInt("period_days"),
+                    typeId == ALL_TYPES ? null : LogEntryType.findByValue(typeId),
+                    resultSet.getObject("as_of", LocalDate.class));
+            report.setTotalCalories(resultSet.getInt("total_calories"));
+            report.setLoggedDays(resultSet.getInt("logged_days"));
+            report.setPreviousTotalCalories(resultSet.getInt("previous_total_calories"));
+            report.setPreviousLoggedDays(resultSet.getInt("previous_logged_days"));
+            return report;
+        }, userId);
+    }
+
+    private List<Change> findChanges(int userId) {
+        final String sql = "select calorie_report_change_id, logged_date, log_entry_type_id, calories, entry_count "
+                + "from calorie_report_change where user_id = ?;";
+        return template.query(sql, (resultSet, rowNum) -> new Change(
+                resultSet.getLong("calorie_report_change_id"),
+                resultSet.getObject("logged_date", LocalDate.class),
+                LogEntryType.findByValue(resultSet.getInt("log_entry_type_id")),
+                resultSet.getInt("calories"),
+                resultSet.getInt("entry_count")), userId);
+    }
+
+    private Map<LocalDate, Day> findDays(int userId, LocalDate from, LocalDate to) {
+        Map<LocalDate, Day> days = new HashMap<>();
+        template.query("select logged_date, log_entry_type_id, total_calories, entry_count from daily_calorie_total "
+                + "where user_id = ? and logged_date between ? and ?;", dayHandler(days), userId, from, to);
+        return days;
+    }
+
+    private Map<LocalDate, Day> findDays(int userId, Collection<LocalDate> dates) {
+        Map<LocalDate, Day> days = new HashMap<>();
+        if (dates.isEmpty()) {
+            return days;
+        }
+        List<Object> args = new ArrayList<>(dates.size() + 1);
+        args.add(userId);
+        args.addAll(dates);
+        template.query("select logged_date, log_entry_type_id, total_calories, entry_count from daily_calorie_total "
+                + "where user_id = ? and logged_date in (" + String.join(", ", Collections.nCopies(dates.size(), "?")) + ");",
+                dayHandler(days), args.toArray());
+        return days;
+    }
+
+    private static RowCallbackHandler dayHandler(Map<LocalDate, Day> days) {
+        return resultSet -> days.computeIfAbsent(resultSet.getObject("logged_date", LocalDate.class), date -> new Day())
+                .add(LogEntryType.findByValue(resultSet.getInt("log_entry_type_id")),
+                        resultSet.getInt("total_calories"), resultSet.getInt("entry_count"));
+    }
+
+    private void saveReports(int userId, List<CalorieReport> reports) {
+        template.update("delete from calorie_report where user_id = ?;", userId);
+        final String sql = "insert into calorie_report (user_id, period_days, log_entry_type_id, as_of, total_calories, "
+                + "logged_days, previous_total_calories, previous_logged_days) "
+                + "values (?, ?, ?, ?, ?, ?, ?, ?);";
+        template.batchUpdate(sql, reports, reports.size(), (ps, report) -> {
+            ps.setInt(1, userId);
+            ps.setInt(2, report.getPeriodDays());
+            ps.setInt(3, report.getType() == null ? ALL_TYPES : report.getType().getValue());
+            ps.setObject(4, report.getAsOf());
+            ps.setInt(5, report.getTotalCalories());
+            ps.setInt(6, report.getLoggedDays());
+            ps.setInt(7, report.getPreviousTotalCalories());
+            ps.setInt(8, report.getPreviousLoggedDays());
+        });
+    }
+
+    // one calorie_report_change row
+    private static class Change {
+        private final long id;
+        private final LocalDate date;
+        private final LogEntryType type;
+        private final int calories;
+        private final int entries;
+
+        private Change(long id, LocalDate date, LogEntryType type, int calories, int entries) {
+            this.id = id;
+            this.date = date;
+            this.type = type;
+            this.calories = calories;
+            this.entries = entries;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.CalorieReport;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// the current user's 7, 30 and 365-day reports in UserContext; only there when log-entry.reports.enabled is true
+public interface CalorieReportRepository {
+
+    // as last saved, which may be as of an earlier day
+    List<CalorieReport> findReports();
+
+    // moves the reports on to asOf and saves them; reports already as of asOf come back as they are
+    List<CalorieReport> moveReportsForward(LocalDate asOf);
+}
@@ -0,0 +1,586 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.DailyCalorieSummary;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Serves every read from memory, with entries stored column by column in primitive arrays
+ * and indexed by type and by day.
+ * Writes go to the backing repository first and are then applied to the columns, so this has to be the only
+ * writer to log_entry; call load() again to pick up changes made anywhere else.
+ * Only the default user's entries are loaded, and only the default user can use it.
+ * Rows stay in id order. Deleted rows are only marked until they make up half the rows, then the columns are compacted.
+ */
+public class ColumnarLogEntryRepository implements LogEntryRepository {
+
+    private static final LogEntryType[] TYPES = LogEntryType.values();
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int STREAM_CHUNK_SIZE = 1000;
+    private static final int MIN_DELETED_TO_COMPACT = 1024;
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    private final LogEntryRepository delegate;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // writes are applied one at a time so the table and the columns see them in the same order
+    private final Object writeMutex = new Object();
+
+    private int rowCount;
+    private int deletedCount;
+    private int[] ids;
+    private long[] loggedOn; // epoch seconds, UTC
+    private byte[] types; // LogEntryType ordinal
+    private int[] calories;
+    private int[] versions;
+    private int[] descriptions; // code into descriptionDictionary
+    private BitSet deleted;
+
+    private List<String> descriptionDictionary;
+    private Map<String, Integer> descriptionCodes;
+
+    // live rows of each type, in row order
+    private RowList[] rowsByType;
+    // live rows by epoch day, in logged on then row order
+    private TreeMap<Long, RowList> rowsByDay;
+
+    public ColumnarLogEntryRepository(LogEntryRepository delegate) {
+        this.delegate = delegate;
+        reset(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Replaces whatever is in memory with every entry in the backing repository.
+     */
+    public void load() {
+        synchronized (writeMutex) {
+            lock.writeLock().lock();
+            try {
+                reset(INITIAL_CAPACITY);
+                delegate.streamAll(this::put);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> findAll() {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            List<LogEntry> entries = new ArrayList<>(rowCount - deletedCount);
+            for (int row = deleted.nextClearBit(0); row < rowCount; row = deleted.nextClearBit(row + 1)) {
+                entries.add(toEntry(row));
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit) {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            int start = Arrays.binarySearch(ids, 0, rowCount, afterId);
+            start = start >= 0 ? start + 1 : -start - 1;
+
+            List<LogEntry> entries = new ArrayList<>(Math.min(limit, rowCount - start));
+            for (int row = deleted.nextClearBit(start); row < rowCount && entries.size() < limit; row = deleted.nextClearBit(row + 1)) {
+                entries.add(toEntry(row));
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit, LocalDate from, LocalDate to, LogEntryType type) {
+        checkDefaultUser();
+        long start = from.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long end = to.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+
+        lock.readLock().lock();
+        try {
+            int row = Arrays.binarySearch(ids, 0, rowCount, afterId);
+            row = row >= 0 ? row + 1 : -row - 1;
+
+            List<LogEntry> entries = new ArrayList<>();
+            for (row = deleted.nextClearBit(row); row < rowCount && entries.size() < limit; row = deleted.nextClearBit(row + 1)) {
+                if ((type == null || types[row] == type.ordinal()) && loggedOn[row] >= start && loggedOn[row] < end) {
+                    entries.add(toEntry(row));
+                }
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // hands out entries a chunk at a time so a slow consumer doesn't hold up writers
+    @Override
+    public void streamAll(Consumer<LogEntry> consumer) {
+        checkDefaultUser();
+        List<LogEntry> chunk = findPage(0, STREAM_CHUNK_SIZE);
+        while (!chunk.isEmpty()) {
+            chunk.forEach(consumer);
+            chunk = findPage(chunk.get(chunk.size() - 1).getId(), STREAM_CHUNK_SIZE);
+        }
+    }
+
+    // a day at a time, for the same reason
+    @Override
+    public void streamByDateRange(LocalDate from, LocalDate to, Consumer<LogEntry> consumer) {
+        checkDefaultUser();
+        long day = from.toEpochDay();
+        long lastDay = to.toEpochDay();
+        while (day <= lastDay) {
+            List<LogEntry> chunk = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                Map.Entry<Long, RowList> dayRows = rowsByDay.ceilingEntry(day);
+                if (dayRows == null || dayRows.getKey() > lastDay) {
+                    return;
+                }
+                addEntries(dayRows.getValue(), -1, chunk);
+                day = dayRows.getKey() + 1;
+            } finally {
+                lock.readLock().unlock();
+            }
+            chunk.forEach(consumer);
+        }
+    }
+
+    @Override
+    public List<LogEntry> findByType(LogEntryType type) {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            RowList rows = rowsByType[type.ordinal()];
+            List<LogEntry> entries = new ArrayList<>(rows.size);
+            addEntries(rows, -1, entries);
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> findByDateRange(LocalDate from, LocalDate to) {
+        checkDefaultUser();
+        return findByDateRange(from, to, -1);
+    }
+
+    @Override
+    public List<LogEntry> findByDateRangeAndType(LocalDate from, LocalDate to, LogEntryType type) {
+        checkDefaultUser();
+        return findByDateRange(from, to, type.ordinal());
+    }
+
+    @Override
+    public LogEntry findById(int id) {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            int row = findRow(id);
+            return row < 0 ? null : toEntry(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int findVersionById(int id) {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            int row = findRow(id);
+            return row < 0 ? 0 : versions[row];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // every write goes through the backing repository, so its version moves with ours
+    @Override
+    public long findCollectionVersion() {
+        checkDefaultUser();
+        return delegate.findCollectionVersion();
+    }
+
+    @Override
+    public List<DailyCalorieSummary> findDailySummaries(LocalDate from, LocalDate to) {
+        checkDefaultUser();
+        if (from.isAfter(to)) {
+            return List.of();
+        }
+
+        int[] totals = new int[TYPES.length];
+        int[] counts = new int[TYPES.length];
+        List<DailyCalorieSummary> summaries = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            NavigableMap<Long, RowList> days = rowsByDay.subMap(from.toEpochDay(), true, to.toEpochDay(), true).descendingMap();
+            for (Map.Entry<Long, RowList> day : days.entrySet()) {
+                Arrays.fill(totals, 0);
+                Arrays.fill(counts, 0);
+                RowList rows = day.getValue();
+                for (int i = 0; i < rows.size; i++) {
+                    int row = rows.rows[i];
+                    totals[types[row]] += calories[row];
+                    counts[types[row]]++;
+                }
+
+                DailyCalorieSummary summary = new DailyCalorieSummary(LocalDate.ofEpochDay(day.getKey()));
+                for (int type = 0; type < TYPES.length; type++) {
+                    if (counts[type] > 0) {
+                        summary.addCalories(TYPES[type], totals[type]);
+                    }
+                }
+                summaries.add(summary);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return summaries;
+    }
+
+    @Override
+    public LogEntry create(LogEntry entry) {
+        checkDefaultUser();
+        synchronized (writeMutex) {
+            LogEntry created = delegate.create(entry);
+            lock.writeLock().lock();
+            try {
+                put(created);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return created;
+        }
+    }
+
+    @Override
+    public List<LogEntry> createAll(List<LogEntry> entries) {
+        checkDefaultUser();
+        synchronized (writeMutex) {
+            List<LogEntry> created = delegate.createAll(entries);
+            lock.writeLock().lock();
+            try {
+                created.forEach(this::put);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return created;
+        }
+    }
+
+    @Override
+    public boolean update(LogEntry entry) {
+        checkDefaultUser();
+        synchronized (writeMutex) {
+            boolean updated = delegate.update(entry);
+            if (updated) {
+                lock.writeLock().lock();
+                try {
+                    put(entry);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            return updated;
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        checkDefaultUser();
+        synchronized (writeMutex) {
+            boolean wasDeleted = delegate.delete(id);
+            if (wasDeleted) {
+                lock.writeLock().lock();
+                try {
+                    int row = findRow(id);
+                    if (row >= 0) {
+                        unindex(row);
+                        deleted.set(row);
+                        deletedCount++;
+                        if (deletedCount >= MIN_DELETED_TO_COMPACT && deletedCount * 2 >= rowCount) {
+                            compact();
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            return wasDeleted;
+        }
+    }
+
+
+    // only one user's entries are kept here, so any other user is turned away instead of being shown them
+    private static void checkDefaultUser() {
+        if (UserContext.getUserId() != UserContext.DEFAULT_USER_ID) {
+            throw new InvalidDataAccessApiUsageException(
+                    "the columnar repository only holds the default user's entries; use log-entry.repository=jdbc for more users");
+        }
+    }
+
+    private List<LogEntry> findByDateRange(LocalDate from, LocalDate to, int type) {
+        if (from.isAfter(to)) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<LogEntry> entries = new ArrayList<>();
+            for (RowList rows : rowsByDay.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values()) {
+                addEntries(rows, type, entries);
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // a type of -1 means every type
+    private void addEntries(RowList rows, int type, List<LogEntry> entries) {
+        for (int i = 0; i < rows.size; i++) {
+            int row = rows.rows[i];
+            if (type < 0 || types[row] == type) {
+                entries.add(toEntry(row));
+            }
+        }
+    }
+
+    private LogEntry toEntry(int row) {
+        LogEntry entry = new LogEntry(ids[row],
+                LocalDateTime.ofEpochSecond(loggedOn[row], 0, ZoneOffset.UTC),
+                TYPES[types[row]],
+                descriptionDictionary.get(descriptions[row]),
+                calories[row]);
+        entry.setUserId(UserContext.DEFAULT_USER_ID);
+        entry.setVersion(versions[row]);
+        return entry;
+    }
+
+    private int findRow(int id) {
+        int row = Arrays.binarySearch(ids, 0, rowCount, id);
+        return row >= 0 && !deleted.get(row) ? row : -1;
+    }
+
+    // adds the entry or overwrites the row that has its id; callers hold the write lock
+    private void put(LogEntry entry) {
+        int row = Arrays.binarySearch(ids, 0, rowCount, entry.getId());
+        if (row >= 0) {
+            if (deleted.get(row)) {
+                deleted.clear(row);
+                deletedCount--;
+            } else {
+                unindex(row);
+            }
+            setColumns(row, entry);
+            index(row);
+            return;
+        }
+
+        ensureCapacity(rowCount + 1);
+        row = -row - 1;
+        if (row < rowCount) {
+            // ids normally arrive in increasing order; anything else shifts the rows after it, so rebuild the indexes
+            shiftRows(row);
+            setColumns(row, entry);
+            rebuildIndexes();
+        } else {
+            rowCount++;
+            setColumns(row, entry);
+            index(row);
+        }
+    }
+
+    private void setColumns(int row, LogEntry entry) {
+        ids[row] = entry.getId();
+        loggedOn[row] = entry.getLoggedOn().toEpochSecond(ZoneOffset.UTC);
+        types[row] = (byte) entry.getType().ordinal();
+        calories[row] = entry.getCalories();
+        versions[row] = entry.getVersion();
+        descriptions[row] = descriptionCodes.computeIfAbsent(entry.getDescription(), description -> {
+            descriptionDictionary.add(description);
+            return descriptionDictionary.size() - 1;
+        });
+    }
+
+    private void shiftRows(int row) {
+        int count = rowCount - row;
+        System.arraycopy(ids, row, ids, row + 1, count);
+        System.arraycopy(loggedOn, row, loggedOn, row + 1, count);
+        System.arraycopy(types, row, types, row + 1, count);
+        System.arraycopy(calories, row, calories, row + 1, count);
+        System.arraycopy(versions, row, versions, row + 1, count);
+        System.arraycopy(descriptions, row, descriptions, row + 1, count);
+        for (int i = deleted.previousSetBit(rowCount - 1); i >= row; i = deleted.previousSetBit(i - 1)) {
+            deleted.clear(i);
+            deleted.set(i + 1);
+        }
+        rowCount++;
+    }
+
+    private void index(int row) {
+        RowList typeRows = rowsByType[types[row]];
+        int position = Arrays.binarySearch(typeRows.rows, 0, typeRows.size, row);
+        typeRows.insert(-position - 1, row);
+
+        RowList dayRows = rowsByDay.computeIfAbsent(day(row), day -> new RowList());
+        int low = 0;
+        int high = dayRows.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int other = dayRows.rows[mid];
+            if (loggedOn[other] < loggedOn[row] || (loggedOn[other] == loggedOn[row] && other < row)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        dayRows.insert(low, row);
+    }
+
+    private void unindex(int row) {
+        RowList typeRows = rowsByType[types[row]];
+        typeRows.remove(Arrays.binarySearch(typeRows.rows, 0, typeRows.size, row));
+
+        long day = day(row);
+        RowList dayRows = rowsByDay.get(day);
+        dayRows.remove(dayRows.indexOf(row));
+        if (dayRows.size == 0) {
+            rowsByDay.remove(day);
+        }
+    }
+
+    private long day(int row) {
+        return Math.floorDiv(loggedOn[row], SECONDS_PER_DAY);
+    }
+
+    private void rebuildIndexes() {
+        rowsByType = new RowList[TYPES.length];
+        for (int type = 0; type < TYPES.length; type++) {
+            rowsByType[type] = new RowList();
+        }
+        rowsByDay = new TreeMap<>();
+        for (int row = deleted.nextClearBit(0); row < rowCount; row = deleted.nextClearBit(row + 1)) {
+            index(row);
+        }
+    }
+
+    // squeezes out deleted rows and descriptions no longer used
+    private void compact() {
+        int[] oldIds = ids;
+        long[] oldLoggedOn = loggedOn;
+        byte[] oldTypes = types;
+        int[] oldCalories = calories;
+        int[] oldVersions = versions;
+        int[] oldDescriptions = descriptions;
+        List<String> oldDictionary = descriptionDictionary;
+        BitSet oldDeleted = deleted;
+        int oldRowCount = rowCount;
+
+        reset(Math.max(INITIAL_CAPACITY, (oldRowCount - deletedCount) * 2));
+        for (int row = oldDeleted.nextClearBit(0); row < oldRowCount; row = oldDeleted.nextClearBit(row + 1)) {
+            int newRow = rowCount++;
+            ids[newRow] = oldIds[row];
+            loggedOn[newRow] = oldLoggedOn[row];
+            types[newRow] = oldTypes[row];
+            calories[newRow] = oldCalories[row];
+            versions[newRow] = oldVersions[row];
+            descriptions[newRow] = descriptionCodes.computeIfAbsent(oldDictionary.get(oldDescriptions[row]), description -> {
+                descriptionDictionary.add(description);
+                return descriptionDictionary.size() - 1;
+            });
+            index(newRow);
+        }
+    }
+
+    private void reset(int capacity) {
+        rowCount = 0;
+        deletedCount = 0;
+        ids = new int[capacity];
+        loggedOn = new long[capacity];
+        types = new byte[capacity];
+        calories = new int[capacity];
+        versions = new int[capacity];
+        descriptions = new int[capacity];
+        deleted = new BitSet();
+        descriptionDictionary = new ArrayList<>();
+        descriptionCodes = new HashMap<>();
+        rebuildIndexes();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        loggedOn = Arrays.copyOf(loggedOn, newCapacity);
+        types = Arrays.copyOf(types, newCapacity);
+        calories = Arrays.copyOf(calories, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+        descriptions = Arrays.copyOf(descriptions, newCapacity);
+    }
+
+    // a growable list of row numbers
+    private static class RowList {
+        private int[] rows = new int[8];
+        private int size;
+
+        private void insert(int index, int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            System.arraycopy(rows, index, rows, index + 1, size - index);
+            rows[index] = row;
+            size++;
+        }
+
+        private void remove(int index) {
+            System.arraycopy(rows, index + 1, rows, index, size - index - 1);
+            size--;
+        }
+
+        private int indexOf(int row) {
+            for (int i = 0; i < size; i++) {
+                if (rows[i] == row) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
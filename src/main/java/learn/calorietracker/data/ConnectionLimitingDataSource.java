@@ -0,0 +1,175 @@
+package learn.calorietracker.data;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Wraps a DataSource so no more than maxConnections connections are out at once.
+ * Callers queue on a fair semaphore sized to the pool instead of all waiting inside the pool,
+ * which matters once requests run on virtual threads and thousands of them can ask for a connection together.
+ * A caller that can't get a permit within acquireTimeout gets a SQLTransientConnectionException.
+ * One limiter only makes sense in front of one pool; see limitEachPool for the routing data sources.
+ */
+public class ConnectionLimitingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private final String name;
+    private final Semaphore permits;
+    private final int maxConnections;
+    private final long acquireTimeoutNanos;
+
+    public ConnectionLimitingDataSource(DataSource target, int maxConnections, Duration acquireTimeout) {
+        this(target, "dataSource", maxConnections, acquireTimeout);
+    }
+
+    public ConnectionLimitingDataSource(DataSource target, String name, int maxConnections, Duration acquireTimeout) {
+        super(target);
+        this.name = name;
+        this.permits = new Semaphore(maxConnections, true);
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    }
+
+    /**
+     * Puts a limiter in front of every pool behind dataSource, each sized to that pool's own maximum, so a router over
+     * several shards or replicas isn't held to one pool's worth of connections in total, and a busy shard can't take
+     * the permits of an idle one. The routers are rebuilt around their limited pools. Anything that isn't a Hikari pool
+     * gets defaultMaxConnections. Every limiter made is passed to created, for metrics.
+     */
+    public static DataSource limitEachPool(DataSource dataSource, int defaultMaxConnections, Duration acquireTimeout,
+                                           Consumer<ConnectionLimitingDataSource> created) {
+        if (dataSource instanceof ConnectionLimitingDataSource) {
+            return dataSource;
+        }
+        if (dataSource instanceof UserRoutingDataSource) {
+            List<DataSource> shards = new ArrayList<>();
+            for (DataSource shard : ((UserRoutingDataSource) dataSource).getShards()) {
+                shards.add(limitEachPool(shard, defaultMaxConnections, acquireTimeout, created));
+            }
+            return new UserRoutingDataSource(shards);
+        }
+        if (dataSource instanceof ReplicaRoutingDataSource) {
+            ReplicaRoutingDataSource router = (ReplicaRoutingDataSource) dataSource;
+            List<DataSource> replicas = new ArrayList<>();
+            for (DataSource replica : router.getReplicas()) {
+                replicas.add(limitEachPool(replica, defaultMaxConnections, acquireTimeout, created));
+            }
+            return new ReplicaRoutingDataSource(
+                    limitEachPool(router.getPrimary(), defaultMaxConnections, acquireTimeout, created), replicas);
+        }
+
+        ConnectionLimitingDataSource limited;
+        if (dataSource instanceof HikariDataSource) {
+            HikariDataSource pool = (HikariDataSource) dataSource;
+            String name = pool.getPoolName() == null ? "dataSource" : pool.getPoolName();
+            limited = new ConnectionLimitingDataSource(pool, name, pool.getMaximumPoolSize(), acquireTimeout);
+        } else {
+            limited = new ConnectionLimitingDataSource(dataSource, defaultMaxConnections, acquireTimeout);
+        }
+        created.accept(limited);
+        return limited;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquire();
+        try {
+            return wrap(super.getConnection());
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquire();
+        try {
+            return wrap(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getAvailableConnections() {
+        return permits.availablePermits();
+    }
+
+    public int getQueuedThreads() {
+        return permits.getQueueLength();
+    }
+
+    // closes the pool behind us when the context shuts down
+    @Override
+    public void close() throws Exception {
+        DataSource target = getTargetDataSource();
+        if (target instanceof AutoCloseable) {
+            ((AutoCloseable) target).close();
+        }
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new SQLTransientConnectionException(String.format(
+                        "no database connection available after %d ms, %d callers waiting",
+                        TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos), permits.getQueueLength()));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("interrupted while waiting for a database connection", ex);
+        }
+    }
+
+    // hands the permit back when the connection is closed, once even if close is called again
+    private Connection wrap(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ConnectionLimitingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "close":
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException ex) {
+                                throw ex.getCause();
+                            } finally {
+                                if (released.compareAndSet(false, true)) {
+                                    permits.release();
+                                }
+                            }
+                        default:
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException ex) {
+                                throw ex.getCause();
+                            }
+                    }
+                });
+    }
+}
@@ -0,0 +1,49 @@
+package learn.calorietracker.data;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+
+/**
+ * Where to find one database, for the configurations that connect to more than one.
+ */
+public class ConnectionSettings {
+    private String url;
+    private String username;
+    private String password;
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    HikariDataSource createPool(String poolName, int maxPoolSize) {
+        HikariDataSource pool = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        pool.setPoolName(poolName);
+        pool.setMaximumPoolSize(maxPoolSize);
+        return pool;
+    }
+}
@@ -0,0 +1,38 @@
+package learn.calorietracker.data;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * Leaves MySQL out entirely when log-entry.repository is file, for deployments that don't have it: the DataSource,
+ * JdbcTemplate and JDBC transaction manager aren't configured, so there's no pool, no LogEntryJdbcTemplateRepository,
+ * and no db health indicator to report /actuator/health as down. Registered in META-INF/spring.factories, since
+ * auto-configuration has to be excluded before the context starts.
+ */
+public class FileRepositoryEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+    static final String EXCLUDE = "spring.autoconfigure.exclude";
+
+    private static final String JDBC_AUTO_CONFIGURATION = String.join(",",
+            DataSourceAutoConfiguration.class.getName(),
+            DataSourceTransactionManagerAutoConfiguration.class.getName(),
+            JdbcTemplateAutoConfiguration.class.getName());
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        if (!"file".equals(environment.getProperty("log-entry.repository"))) {
+            return;
+        }
+        // added to whatever is excluded already, not in place of it
+        String excluded = environment.getProperty(EXCLUDE, "");
+        environment.getPropertySources().addFirst(new MapPropertySource("logEntryFileRepository",
+                Map.of(EXCLUDE, excluded.isBlank() ? JDBC_AUTO_CONFIGURATION : excluded + "," + JDBC_AUTO_CONFIGURATION)));
+    }
+}
@@ -0,0 +1,34 @@
+package learn.calorietracker.data;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import java.time.Duration;
+
+/**
+ * Checks every log-entry.file.compact-interval whether the file repository has enough deleted records to compact,
+ * so a file that rarely reaches the threshold deletes compact at still gets rewritten.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "log-entry.repository", havingValue = "file")
+public class LogEntryFileCompactionConfig implements SchedulingConfigurer {
+
+    private final LogEntryFileRepository repository;
+    private final Duration interval;
+
+    public LogEntryFileCompactionConfig(LogEntryFileRepository repository,
+                                        @Value("${log-entry.file.compact-interval:1h}") Duration interval) {
+        this.repository = repository;
+        this.interval = interval;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        registrar.addFixedDelayTask(repository::compactIfFragmented, interval.toMillis());
+    }
+}
@@ -0,0 +1,666 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.DailyCalorieSummary;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Stores entries in a file of fixed-width binary records, read and written through a MappedByteBuffer,
+ * for deployments without a database server. The file belongs to the default user; no one else can use it.
+ * Records are kept in id order and found through an in-memory index of ids by slot.
+ * An update overwrites its record in place, so the new record is first appended to an update log next to the file,
+ * with a CRC32, and forced. Opening the file replays the log, which rewrites whole any record a crash tore part way
+ * through; a torn record at the end of the log is one whose in-place write never started, and is dropped.
+ * Deletes only mark the record; once half the records are deleted the file is rewritten without them, and
+ * compactIfFragmented, run on a schedule, does the same once a tenth of them are, however few records that is.
+ * The file is limited to what fits in one mapping, a little under 2GB or about 6.6 million records.
+ */
+public class LogEntryFileRepository implements LogEntryRepository, AutoCloseable {
+
+    private static final int MAGIC = 0x4C4F4745; // "LOGE"
+    private static final int VERSION = 1;
+
+    // header
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_COUNT_OFFSET = 8;
+    private static final int DELETED_COUNT_OFFSET = 12;
+    private static final int NEXT_ID_OFFSET = 16;
+    private static final int CHANGE_COUNT_OFFSET = 20;
+    private static final int HEADER_SIZE = 64;
+
+    // record
+    private static final int ID_OFFSET = 0;
+    private static final int LIVE_OFFSET = 4;
+    private static final int TYPE_OFFSET = 5;
+    private static final int DESCRIPTION_LENGTH_OFFSET = 6;
+    private static final int LOGGED_ON_OFFSET = 8;
+    private static final int CALORIES_OFFSET = 16;
+    private static final int ENTRY_VERSION_OFFSET = 20;
+    private static final int DESCRIPTION_OFFSET = 24;
+    // descriptions are at most 100 characters, which is at most 300 bytes of UTF-8
+    private static final int DESCRIPTION_SIZE = 300;
+    private static final int RECORD_SIZE = DESCRIPTION_OFFSET + DESCRIPTION_SIZE;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+    private static final int STREAM_CHUNK_SIZE = 1000;
+    private static final int MIN_DELETED_TO_COMPACT = 1024;
+    // update log records are the record's length and CRC32 followed by the record
+    private static final int UPDATE_HEADER_SIZE = 8;
+    // every update is in the file as well once it's logged, so the log is emptied after this many
+    private static final int MAX_LOGGED_UPDATES = 4096;
+    private static final LogEntryType[] TYPES = LogEntryType.values();
+
+    private final Path path;
+    private final Path updateLogPath;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FileChannel channel;
+    private FileChannel updateLog;
+    private int loggedUpdates;
+    private MappedByteBuffer buffer;
+    private int recordCount;
+    private int deletedCount;
+    private int nextId;
+    private long changeCount;
+    // the id in each slot, so a record's offset is a binary search away
+    private int[] idsBySlot;
+
+    public LogEntryFileRepository(Path path) {
+        this.path = path;
+        this.updateLogPath = path.resolveSibling(path.getFileName() + ".updates");
+        try {
+            open();
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("unable to open " + path, ex);
+        }
+    }
+
+    /**
+     * @return true until the first entry is stored in the file
+     */
+    public boolean isNew() {
+        lock.readLock().lock();
+        try {
+            return nextId == 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return recordCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> findAll() {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            ByteBuffer records = buffer.duplicate();
+            List<LogEntry> entries = new ArrayList<>(recordCount - deletedCount);
+            for (int slot = 0; slot < recordCount; slot++) {
+                if (isLive(slot)) {
+                    entries.add(read(records, slot));
+                }
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit) {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            int start = Arrays.binarySearch(idsBySlot, 0, recordCount, afterId);
+            start = start >= 0 ? start + 1 : -start - 1;
+
+            ByteBuffer records = buffer.duplicate();
+            List<LogEntry> entries = new ArrayList<>(Math.min(limit, recordCount - start));
+            for (int slot = start; slot < recordCount && entries.size() < limit; slot++) {
+                if (isLive(slot)) {
+                    entries.add(read(records, slot));
+                }
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit, LocalDate from, LocalDate to, LogEntryType type) {
+        checkDefaultUser();
+        long start = from.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long end = to.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+
+        lock.readLock().lock();
+        try {
+            int first = Arrays.binarySearch(idsBySlot, 0, recordCount, afterId);
+            first = first >= 0 ? first + 1 : -first - 1;
+
+            ByteBuffer records = buffer.duplicate();
+            List<LogEntry> entries = new ArrayList<>();
+            for (int slot = first; slot < recordCount && entries.size() < limit; slot++) {
+                int offset = offset(slot);
+                long loggedOn = buffer.getLong(offset + LOGGED_ON_OFFSET);
+                if (isLive(slot) && (type == null || buffer.get(offset + TYPE_OFFSET) == type.ordinal())
+                        && loggedOn >= start && loggedOn < end) {
+                    entries.add(read(records, slot));
+                }
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // a chunk at a time so a slow consumer doesn't hold up writers
+    @Override
+    public void streamAll(Consumer<LogEntry> consumer) {
+        checkDefaultUser();
+        List<LogEntry> chunk = findPage(0, STREAM_CHUNK_SIZE);
+        while (!chunk.isEmpty()) {
+            chunk.forEach(consumer);
+            chunk = findPage(chunk.get(chunk.size() - 1).getId(), STREAM_CHUNK_SIZE);
+        }
+    }
+
+    @Override
+    public void streamByDateRange(LocalDate from, LocalDate to, Consumer<LogEntry> consumer) {
+        checkDefaultUser();
+        findByDateRange(from, to).forEach(consumer);
+    }
+
+    @Override
+    public List<LogEntry> findByType(LogEntryType type) {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            ByteBuffer records = buffer.duplicate();
+            List<LogEntry> entries = new ArrayList<>();
+            for (int slot = 0; slot < recordCount; slot++) {
+                if (isLive(slot) && buffer.get(offset(slot) + TYPE_OFFSET) == type.ordinal()) {
+                    entries.add(read(records, slot));
+                }
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> findByDateRange(LocalDate from, LocalDate to) {
+        checkDefaultUser();
+        return findByDateRange(from, to, -1);
+    }
+
+    @Override
+    public List<LogEntry> findByDateRangeAndType(LocalDate from, LocalDate to, LogEntryType type) {
+        checkDefaultUser();
+        return findByDateRange(from, to, type.ordinal());
+    }
+
+    @Override
+    public LogEntry findById(int id) {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(id);
+            return slot < 0 ? null : read(buffer.duplicate(), slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int findVersionById(int id) {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(id);
+            return slot < 0 ? 0 : buffer.getInt(offset(slot) + ENTRY_VERSION_OFFSET);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long findCollectionVersion() {
+        checkDefaultUser();
+        lock.readLock().lock();
+        try {
+            return changeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<DailyCalorieSummary> findDailySummaries(LocalDate from, LocalDate to) {
+        checkDefaultUser();
+        long start = from.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long end = to.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+
+        Map<LocalDate, DailyCalorieSummary> summaries = new TreeMap<>(Comparator.reverseOrder());
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < recordCount; slot++) {
+                int offset = offset(slot);
+                long loggedOn = buffer.getLong(offset + LOGGED_ON_OFFSET);
+                if (isLive(slot) && loggedOn >= start && loggedOn < end) {
+                    LocalDate date = LocalDateTime.ofEpochSecond(loggedOn, 0, ZoneOffset.UTC).toLocalDate();
+                    summaries.computeIfAbsent(date, DailyCalorieSummary::new)
+                            .addCalories(TYPES[buffer.get(offset + TYPE_OFFSET)], buffer.getInt(offset + CALORIES_OFFSET));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new ArrayList<>(summaries.values());
+    }
+
+    @Override
+    public LogEntry create(LogEntry entry) {
+        checkDefaultUser();
+        return createAll(List.of(entry)).get(0);
+    }
+
+    @Override
+    public List<LogEntry> createAll(List<LogEntry> entries) {
+        checkDefaultUser();
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(recordCount + entries.size());
+            ByteBuffer records = buffer.duplicate();
+            for (int i = 0; i < entries.size(); i++) {
+                int slot = recordCount + i;
+                entries.get(i).setUserId(UserContext.DEFAULT_USER_ID);
+                entries.get(i).setVersion(1);
+                write(records, offset(slot), nextId + i, entries.get(i));
+                idsBySlot[slot] = nextId + i;
+            }
+
+            // the header is written last; until then the new records don't exist
+            for (LogEntry entry : entries) {
+                entry.setId(nextId++);
+            }
+            recordCount += entries.size();
+            changeCount++;
+            writeHeader();
+            buffer.force();
+            return entries;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean update(LogEntry entry) {
+        checkDefaultUser();
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(entry.getId());
+            if (slot < 0) {
+                return false;
+            }
+            int version = buffer.getInt(offset(slot) + ENTRY_VERSION_OFFSET);
+            if (entry.getVersion() != 0 && entry.getVersion() != version) {
+                throw new OptimisticLockingFailureException("log entry " + entry.getId() + " was changed by someone else");
+            }
+            int requestedVersion = entry.getVersion();
+            entry.setVersion(version + 1);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            write(record, 0, entry.getId(), entry);
+            try {
+                logUpdate(record);
+            } catch (IOException ex) {
+                entry.setVersion(requestedVersion);
+                throw new DataAccessResourceFailureException("unable to log an update to " + path, ex);
+            }
+
+            buffer.duplicate().position(offset(slot)).put(record.rewind());
+            changeCount++;
+            writeHeader();
+            buffer.force();
+            if (++loggedUpdates >= MAX_LOGGED_UPDATES) {
+                clearUpdateLog();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        checkDefaultUser();
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(id);
+            if (slot < 0) {
+                return false;
+            }
+            buffer.put(offset(slot) + LIVE_OFFSET, (byte) 0);
+            deletedCount++;
+            changeCount++;
+            writeHeader();
+            buffer.force();
+
+            if (deletedCount >= MIN_DELETED_TO_COMPACT && deletedCount * 2 >= recordCount) {
+                compact();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the file if at least a tenth of its records are deleted. Deletes only compact once half the records
+     * are, and only in large files, so this is what keeps a file that mostly sees updates and a few deletes small.
+     *
+     * @return true if the file was compacted
+     */
+    public boolean compactIfFragmented() {
+        lock.writeLock().lock();
+        try {
+            if (deletedCount == 0 || deletedCount * 10 < recordCount) {
+                return false;
+            }
+            compact();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the file without deleted records. The new file replaces the old one in a single move,
+     * so a crash part way through leaves the old file intact.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+            int liveCount = recordCount - deletedCount;
+            try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer targetBuffer = target.map(FileChannel.MapMode.READ_WRITE, 0, mappingSize(Math.min(MAX_CAPACITY, Math.max(INITIAL_CAPACITY, liveCount * 2))));
+                ByteBuffer source = buffer.duplicate();
+                int targetSlot = 0;
+                for (int slot = 0; slot < recordCount; slot++) {
+                    if (isLive(slot)) {
+                        source.limit(offset(slot) + RECORD_SIZE).position(offset(slot));
+                        targetBuffer.position(offset(targetSlot++));
+                        targetBuffer.put(source);
+                    }
+                }
+                writeHeader(targetBuffer, liveCount, 0, nextId, changeCount);
+                targetBuffer.force();
+            }
+
+            // every logged update is in the old file, and so in the new one
+            clearUpdateLog();
+            channel.close();
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open();
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("unable to compact " + path, ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            clearUpdateLog();
+            updateLog.close();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    // only one user's entries are kept here, so any other user is turned away instead of being shown them
+    private static void checkDefaultUser() {
+        if (UserContext.getUserId() != UserContext.DEFAULT_USER_ID) {
+            throw new InvalidDataAccessApiUsageException(
+                    "the file repository only holds the default user's entries; use log-entry.repository=jdbc for more users");
+        }
+    }
+
+    private List<LogEntry> findByDateRange(LocalDate from, LocalDate to, int type) {
+        long start = from.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long end = to.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+
+        List<LogEntry> entries = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            ByteBuffer records = buffer.duplicate();
+            for (int slot = 0; slot < recordCount; slot++) {
+                int offset = offset(slot);
+                long loggedOn = buffer.getLong(offset + LOGGED_ON_OFFSET);
+                if (isLive(slot) && loggedOn >= start && loggedOn < end
+                        && (type < 0 || buffer.get(offset + TYPE_OFFSET) == type)) {
+                    entries.add(read(records, slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // records are in id order; ranges come back in logged on order like the other repositories
+        entries.sort(Comparator.comparing(LogEntry::getLoggedOn).thenComparingInt(LogEntry::getId));
+        return entries;
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappingSize(INITIAL_CAPACITY));
+            recordCount = 0;
+            deletedCount = 0;
+            nextId = 1;
+            changeCount = 0;
+            writeHeader();
+            buffer.force();
+        } else {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException(path + " is not a log entry file");
+            }
+            recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+            deletedCount = buffer.getInt(DELETED_COUNT_OFFSET);
+            nextId = buffer.getInt(NEXT_ID_OFFSET);
+            changeCount = buffer.getLong(CHANGE_COUNT_OFFSET);
+        }
+
+        idsBySlot = new int[capacity()];
+        for (int slot = 0; slot < recordCount; slot++) {
+            idsBySlot[slot] = buffer.getInt(offset(slot) + ID_OFFSET);
+        }
+
+        if (updateLog == null) {
+            updateLog = FileChannel.open(updateLogPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        replayUpdates();
+    }
+
+    // the id and live flag an update writes are the ones already there, so even a torn record is found by its id
+    // and is still live unless it has since been deleted, in which case it stays deleted
+    private void replayUpdates() throws IOException {
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(updateLogPath));
+        boolean replayed = false;
+        while (log.remaining() >= UPDATE_HEADER_SIZE) {
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (length != RECORD_SIZE || length > log.remaining()) {
+                break;
+            }
+            ByteBuffer record = log.slice().limit(length);
+            log.position(log.position() + length);
+            if (checksum(record) != checksum) {
+                break;
+            }
+            int slot = findSlot(record.getInt(ID_OFFSET));
+            if (slot >= 0) {
+                buffer.duplicate().position(offset(slot)).put(record.rewind());
+                replayed = true;
+            }
+        }
+        if (replayed) {
+            buffer.force();
+        }
+        clearUpdateLog();
+    }
+
+    private void logUpdate(ByteBuffer record) throws IOException {
+        ByteBuffer logged = ByteBuffer.allocate(UPDATE_HEADER_SIZE + RECORD_SIZE);
+        logged.putInt(RECORD_SIZE).putInt(checksum(record)).put(record.rewind()).flip();
+        while (logged.hasRemaining()) {
+            updateLog.write(logged);
+        }
+        updateLog.force(false);
+    }
+
+    // only once every logged update has been forced to the file
+    private void clearUpdateLog() {
+        try {
+            updateLog.truncate(0);
+            updateLog.position(0);
+            updateLog.force(false);
+            loggedUpdates = 0;
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("unable to clear " + updateLogPath, ex);
+        }
+    }
+
+    private static int checksum(ByteBuffer record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate().rewind());
+        return (int) crc.getValue();
+    }
+
+    private void ensureCapacity(int records) {
+        if (records <= capacity()) {
+            return;
+        }
+        if (records > MAX_CAPACITY) {
+            throw new DataAccessResourceFailureException(path + " is full");
+        }
+        try {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappingSize(Math.min(MAX_CAPACITY, Math.max(records, capacity() * 2))));
+            idsBySlot = Arrays.copyOf(idsBySlot, capacity());
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("unable to grow " + path, ex);
+        }
+    }
+
+    private int capacity() {
+        return (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    private int findSlot(int id) {
+        int slot = Arrays.binarySearch(idsBySlot, 0, recordCount, id);
+        return slot >= 0 && isLive(slot) ? slot : -1;
+    }
+
+    private boolean isLive(int slot) {
+        return buffer.get(offset(slot) + LIVE_OFFSET) != 0;
+    }
+
+    private LogEntry read(ByteBuffer records, int slot) {
+        int offset = offset(slot);
+        byte[] description = new byte[records.getShort(offset + DESCRIPTION_LENGTH_OFFSET)];
+        records.position(offset + DESCRIPTION_OFFSET);
+        records.get(description);
+
+        LogEntry entry = new LogEntry(records.getInt(offset + ID_OFFSET),
+                LocalDateTime.ofEpochSecond(records.getLong(offset + LOGGED_ON_OFFSET), 0, ZoneOffset.UTC),
+                TYPES[records.get(offset + TYPE_OFFSET)],
+                new String(description, StandardCharsets.UTF_8),
+                records.getInt(offset + CALORIES_OFFSET));
+        entry.setUserId(UserContext.DEFAULT_USER_ID);
+        entry.setVersion(records.getInt(offset + ENTRY_VERSION_OFFSET));
+        return entry;
+    }
+
+    private void write(ByteBuffer records, int offset, int id, LogEntry entry) {
+        byte[] description = entry.getDescription() == null ? new byte[0] : entry.getDescription().getBytes(StandardCharsets.UTF_8);
+        if (description.length > DESCRIPTION_SIZE) {
+            throw new IllegalArgumentException("description is too long to store");
+        }
+
+        records.putInt(offset + ID_OFFSET, id);
+        records.put(offset + LIVE_OFFSET, (byte) 1);
+        records.put(offset + TYPE_OFFSET, (byte) entry.getType().ordinal());
+        records.putShort(offset + DESCRIPTION_LENGTH_OFFSET, (short) description.length);
+        records.putLong(offset + LOGGED_ON_OFFSET, entry.getLoggedOn().toEpochSecond(ZoneOffset.UTC));
+        records.putInt(offset + CALORIES_OFFSET, entry.getCalories());
+        records.putInt(offset + ENTRY_VERSION_OFFSET, entry.getVersion());
+        records.position(offset + DESCRIPTION_OFFSET);
+        records.put(description);
+    }
+
+    private void writeHeader() {
+        writeHeader(buffer, recordCount, deletedCount, nextId, changeCount);
+    }
+
+    private static void writeHeader(ByteBuffer target, int recordCount, int deletedCount, int nextId, long changeCount) {
+        target.putInt(MAGIC_OFFSET, MAGIC);
+        target.putInt(VERSION_OFFSET, VERSION);
+        target.putInt(RECORD_COUNT_OFFSET, recordCount);
+        target.putInt(DELETED_COUNT_OFFSET, deletedCount);
+        target.putInt(NEXT_ID_OFFSET, nextId);
+        target.putLong(CHANGE_COUNT_OFFSET, changeCount);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static long mappingSize(int records) {
+        return HEADER_SIZE + (long) records * RECORD_SIZE;
+    }
+}
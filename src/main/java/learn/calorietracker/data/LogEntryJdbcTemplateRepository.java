@@ -1,92 +1,486 @@
 package learn.calorietracker.data;
 
+import io.micrometer.core.annotation.Timed;
+import learn.calorietracker.models.DailyCalorieSummary;
 import learn.calorietracker.models.LogEntry;
 import learn.calorietracker.models.LogEntryType;
-import org.springframework.context.annotation.Primary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.PreparedStatement;
-import java.sql.Statement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
-@Primary
+/**
+ * Every query is scoped to the user in UserContext, and new entries belong to that user.
+ * Not created with log-entry.repository=file, which runs without MySQL.
+ */
 @Repository
+@ConditionalOnExpression("'${log-entry.repository:jdbc}' != 'file'")
 public class LogEntryJdbcTemplateRepository implements LogEntryRepository {
 
+    // MySQL Connector/J only streams a result set row by row when the fetch size is Integer.MIN_VALUE,
+    // otherwise it buffers every row in memory before returning.
+    private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+    private static final String TIMER = "log_entry.repository";
+
+    // every log_entry id comes from here, so ids handed to the write-behind writer can't be taken by anyone else;
+    // rows inserted by hand are skipped over
+    private static final String ALLOCATE_IDS_SQL = "update log_entry_sequence "
+            + "set next_id = greatest(next_id, (select coalesce(max(log_entry_id), 0) + 1 from log_entry)) + ?;";
+
+    // a user's first write creates their row at version 2; without a row they're at 1
+    private static final String BUMP_COLLECTION_VERSION_SQL = "insert into log_entry_collection_version (user_id, version) values (?, 2) "
+            + "on duplicate key update version = version + 1;";
+
+    private static final String ADD_TO_DAILY_TOTAL_SQL = "insert into daily_calorie_total (user_id, logged_date, log_entry_type_id, total_calories, entry_count) "
+            + "values (?, ?, ?, ?, ?) "
+            + "on duplicate key update total_calories = total_calories + values(total_calories), entry_count = entry_count + values(entry_count);";
+
+    private static final String ADD_REPORT_CHANGE_SQL = "insert into calorie_report_change (user_id, logged_date, log_entry_type_id, calories, entry_count) "
+            + "values (?, ?, ?, ?, ?);";
+
     private final JdbcTemplate template;
+    // every daily_calorie_total change is also queued for the report job
+    private final boolean recordReportChanges;
+    // create and createAll take their ids first, so they run their own transactions instead of using @Transactional
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate idTransaction;
 
     public LogEntryJdbcTemplateRepository(JdbcTemplate template) {
+        this(template, false);
+    }
+
+    @Autowired
+    public LogEntryJdbcTemplateRepository(JdbcTemplate template,
+                                          @Value("${log-entry.reports.enabled:false}") boolean recordReportChanges) {
         this.template = template;
+        this.recordReportChanges = recordReportChanges;
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(template.getDataSource());
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.idTransaction = new TransactionTemplate(transactionManager);
+        idTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
     @Override
+    @Timed(TIMER)
     public List<LogEntry> findAll() {
-        final String sql = "select log_entry_id, logged_on, log_entry_type_id, description, calories from log_entry;";
-        return template.query(sql, mapper);
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry where user_id = ?;";
+        return template.query(sql, new LogEntryMapper(), UserContext.getUserId());
+    }
+
+    @Override
+    @Timed(TIMER)
+    public List<LogEntry> findPage(int afterId, int limit) {
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry where user_id = ? and log_entry_id > ? order by log_entry_id limit ?;";
+        return template.query(sql, new LogEntryMapper(), UserContext.getUserId(), afterId, limit);
+    }
+
+    @Override
+    @Timed(TIMER)
+    public List<LogEntry> findPage(int afterId, int limit, LocalDate from, LocalDate to, LogEntryType type) {
+        if (type == null) {
+            final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry "
+                    + "where user_id = ? and log_entry_id > ? and logged_on >= ? and logged_on < ? order by log_entry_id limit ?;";
+            return template.query(sql, new LogEntryMapper(), UserContext.getUserId(), afterId, from.atStartOfDay(), to.plusDays(1).atStartOfDay(), limit);
+        }
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry "
+                + "where user_id = ? and log_entry_id > ? and log_entry_type_id = ? and logged_on >= ? and logged_on < ? order by log_entry_id limit ?;";
+        return template.query(sql, new LogEntryMapper(), UserContext.getUserId(), afterId, type.getValue(), from.atStartOfDay(), to.plusDays(1).atStartOfDay(), limit);
+    }
+
+    @Override
+    @Timed(TIMER)
+    public void streamAll(Consumer<LogEntry> consumer) {
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry where user_id = ? order by log_entry_id;";
+        stream(sql, consumer, UserContext.getUserId());
     }
 
     @Override
+    @Timed(TIMER)
+    public void streamByDateRange(LocalDate from, LocalDate to, Consumer<LogEntry> consumer) {
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry "
+                + "where user_id = ? and logged_on >= ? and logged_on < ? order by logged_on, log_entry_id;";
+        stream(sql, consumer, UserContext.getUserId(), from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+    }
+
+    @Override
+    @Timed(TIMER)
     public List<LogEntry> findByType(LogEntryType type) {
-        final String sql = "select log_entry_id, logged_on, log_entry_type_id, description, calories from log_entry where log_entry_type_id = ?;";
-        return template.query(sql, mapper, type.getValue());
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry where user_id = ? and log_entry_type_id = ?;";
+        return template.query(sql, new LogEntryMapper(), UserContext.getUserId(), type.getValue());
+    }
+
+    @Override
+    @Timed(TIMER)
+    public List<LogEntry> findByDateRange(LocalDate from, LocalDate to) {
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry "
+                + "where user_id = ? and logged_on >= ? and logged_on < ? order by logged_on, log_entry_id;";
+        return template.query(sql, new LogEntryMapper(), UserContext.getUserId(), from.atStartOfDay(), to.plusDays(1).atStartOfDay());
     }
 
     @Override
+    @Timed(TIMER)
+    public List<LogEntry> findByDateRangeAndType(LocalDate from, LocalDate to, LogEntryType type) {
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry "
+                + "where user_id = ? and log_entry_type_id = ? and logged_on >= ? and logged_on < ? order by logged_on, log_entry_id;";
+        return template.query(sql, new LogEntryMapper(), UserContext.getUserId(), type.getValue(), from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+    }
+
+    @Override
+    @Timed(TIMER)
     public LogEntry findById(int id) {
-        final String sql = "select log_entry_id, logged_on, log_entry_type_id, description, calories from log_entry where log_entry_id = ?;";
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version from log_entry where log_entry_id = ? and user_id = ?;";
         try {
-            return template.queryForObject(sql, mapper, id);
+            return template.queryForObject(sql, new LogEntryMapper(), id, UserContext.getUserId());
         } catch (EmptyResultDataAccessException ex) {
             return null;
         }
     }
 
     @Override
+    @Timed(TIMER)
+    public int findVersionById(int id) {
+        final String sql = "select version from log_entry where log_entry_id = ? and user_id = ?;";
+        List<Integer> versions = template.queryForList(sql, Integer.class, id, UserContext.getUserId());
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    @Override
+    @Timed(TIMER)
+    public long findCollectionVersion() {
+        List<Long> versions = template.queryForList("select version from log_entry_collection_version where user_id = ?;",
+                Long.class, UserContext.getUserId());
+        return versions.isEmpty() ? 1 : versions.get(0);
+    }
+
+    @Override
+    @Timed(TIMER)
+    public List<DailyCalorieSummary> findDailySummaries(LocalDate from, LocalDate to) {
+        // reads the daily_calorie_total rollup, so the cost is proportional to the number of days, not entries
+        final String sql = "select logged_date, log_entry_type_id, total_calories "
+                + "from daily_calorie_total "
+                + "where user_id = ? and logged_date between ? and ? "
+                + "order by logged_date desc, log_entry_type_id;";
+
+        Map<LocalDate, DailyCalorieSummary> summaries = new LinkedHashMap<>();
+        template.query(sql, resultSet -> {
+            LocalDate date = resultSet.getObject("logged_date", LocalDate.class);
+            summaries.computeIfAbsent(date, DailyCalorieSummary::new)
+                    .addCalories(LogEntryType.findByValue(resultSet.getInt("log_entry_type_id")), resultSet.getInt("total_calories"));
+        }, UserContext.getUserId(), from, to);
+
+        return new ArrayList<>(summaries.values());
+    }
+
+    // the id is taken before the insert's transaction starts, see allocateIds
+    @Override
+    @Timed(TIMER)
     public LogEntry create(LogEntry entry) {
-        final String sql = "insert into log_entry(logged_on, log_entry_type_id, description, calories) values (?, ?, ?, ?);";
-
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        int rowsAffected = template.update(connection -> {
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            ps.setString(1, entry.getLoggedOn());
-            ps.setInt(2, entry.getType().getValue());
-            ps.setString(3, entry.getDescription());
-            ps.setInt(4, entry.getCalories());
-            return ps;
-        }, keyHolder);
+        int id = allocateIds(1);
+        return transaction.execute(status -> {
+            entry.setUserId(UserContext.getUserId());
+            addToDailyTotal(entry.getUserId(), entry.getLoggedOn(), entry.getType().getValue(), entry.getCalories(), 1);
+            template.update(BUMP_COLLECTION_VERSION_SQL, entry.getUserId());
+            entry.setId(id);
+            entry.setVersion(1);
+            insertWithIds(List.of(entry));
+            return entry;
+        });
+    }
 
-        if (rowsAffected <= 0) {
-            return null;
+    @Override
+    @Timed(TIMER)
+    public List<LogEntry> createAll(List<LogEntry> entries) {
+        if (entries.isEmpty()) {
+            return entries;
+        }
+
+        int firstId = allocateIds(entries.size());
+        return transaction.execute(status -> {
+            int userId = UserContext.getUserId();
+            entries.forEach(entry -> entry.setUserId(userId));
+            addToDailyTotals(entries);
+            template.update(BUMP_COLLECTION_VERSION_SQL, userId);
+
+            int id = firstId;
+            for (LogEntry entry : entries) {
+                entry.setId(id++);
+                entry.setVersion(1);
+            }
+            insertWithIds(entries);
+            return entries;
+        });
+    }
+
+    /**
+     * Inserts entries that already have ids, handed out by allocateIds, and owners.
+     * Unlike the other methods this isn't scoped to the current user: a batch can hold many users' entries.
+     * An entry that's already in the table is skipped, so a batch can safely be written again after a failure.
+     * Already there means the same id, owner and content, or the same id and owner at a later version once it's
+     * been updated; a different entry under the id is a DuplicateKeyException, never a silent skip.
+     *
+     * @return the entries that were inserted
+     */
+    @Timed(TIMER)
+    @Transactional
+    public List<LogEntry> createAllWithIds(List<LogEntry> entries) {
+        if (entries.isEmpty()) {
+            return entries;
         }
 
-        entry.setId(keyHolder.getKey().intValue());
-        return entry;
+        int minId = entries.stream().mapToInt(LogEntry::getId).min().getAsInt();
+        int maxId = entries.stream().mapToInt(LogEntry::getId).max().getAsInt();
+        Map<Integer, LogEntry> existing = new HashMap<>();
+        LogEntryMapper mapper = new LogEntryMapper();
+        template.query("select log_entry_id, user_id, logged_on, log_entry_type_id, description, calories, version "
+                        + "from log_entry where log_entry_id between ? and ?;",
+                (RowCallbackHandler) resultSet -> {
+                    LogEntry stored = mapper.mapRow(resultSet, 0);
+                    existing.put(stored.getId(), stored);
+                }, minId, maxId);
+
+        List<LogEntry> newEntries = new ArrayList<>(entries.size());
+        for (LogEntry entry : entries) {
+            LogEntry stored = existing.get(entry.getId());
+            if (stored == null) {
+                newEntries.add(entry);
+            } else if (!isSameEntry(stored, entry)) {
+                throw new DuplicateKeyException("log entry id " + entry.getId() + " is already taken by a different entry");
+            }
+        }
+        if (newEntries.isEmpty()) {
+            return newEntries;
+        }
+
+        insertWithIds(newEntries);
+        newEntries.forEach(entry -> entry.setVersion(1));
+        addToDailyTotals(newEntries);
+        Set<Integer> userIds = new TreeSet<>();
+        newEntries.forEach(entry -> userIds.add(entry.getUserId()));
+        // in user id order, so two batches bumping the same users can't deadlock
+        for (int userId : userIds) {
+            template.update(BUMP_COLLECTION_VERSION_SQL, userId);
+        }
+        return newEntries;
+    }
+
+    /**
+     * Reserves a block of ids from log_entry_sequence, for createAllWithIds and for every other insert.
+     * Every create in the database goes through the one sequence row, so it's updated in a transaction of its own
+     * that commits straight away instead of staying locked until the insert commits; ids of inserts that roll back
+     * are never used.
+     *
+     * @return the first id in the block
+     */
+    @Timed(TIMER)
+    public int allocateIds(int count) {
+        return idTransaction.execute(status -> {
+            template.update(ALLOCATE_IDS_SQL, count);
+            // the update holds the row lock until commit, so nobody can move next_id before this read
+            int end = template.queryForObject("select next_id from log_entry_sequence;", Integer.class);
+            return end - count;
+        });
     }
 
     @Override
+    @Timed(TIMER)
+    @Transactional
     public boolean update(LogEntry entry) {
-        final String sql = "update log_entry set logged_on = ?, log_entry_type_id = ?, description = ?, calories = ? where log_entry_id = ?;";
-        return template.update(sql, entry.getLoggedOn(), entry.getType().getValue(), entry.getDescription(), entry.getCalories(), entry.getId()) > 0;
+        // no select ... for update: the version check in the update's where clause catches anyone who got in first
+        LogEntry existing = findByIdWithoutDescription(entry.getId(), false);
+        if (existing == null) {
+            return false;
+        }
+        if (entry.getVersion() != 0 && entry.getVersion() != existing.getVersion()) {
+            throw conflict(entry.getId());
+        }
+
+        final String sql = "update log_entry set logged_on = ?, log_entry_type_id = ?, description = ?, calories = ?, version = version + 1 "
+                + "where log_entry_id = ? and user_id = ? and version = ?;";
+        if (template.update(sql, entry.getLoggedOn(), entry.getType().getValue(), entry.getDescription(), entry.getCalories(),
+                entry.getId(), existing.getUserId(), existing.getVersion()) == 0) {
+            throw conflict(entry.getId());
+        }
+
+        entry.setUserId(existing.getUserId());
+        entry.setVersion(existing.getVersion() + 1);
+        template.update(BUMP_COLLECTION_VERSION_SQL, existing.getUserId());
+        // existing is exactly what was replaced, so the rollup can be moved off it;
+        // the entry may have moved to a different day and/or type
+        addToDailyTotal(existing.getUserId(), existing.getLoggedOn(), existing.getType().getValue(), -existing.getCalories(), -1);
+        addToDailyTotal(existing.getUserId(), entry.getLoggedOn(), entry.getType().getValue(), entry.getCalories(), 1);
+        return true;
     }
 
     @Override
+    @Timed(TIMER)
+    @Transactional
     public boolean delete(int id) {
-        final String sql = "delete from log_entry where log_entry_id = ?;";
-        return template.update(sql, id) > 0;
-    }
-
-    private final RowMapper<LogEntry> mapper = ((resultSet, rowNum) -> {
-        LogEntry entry = new LogEntry();
-        entry.setId(resultSet.getInt("log_entry_id"));
-        entry.setLoggedOn(resultSet.getString("logged_on"));
-        entry.setType(LogEntryType.findByValue(resultSet.getInt("log_entry_type_id")));
-        entry.setDescription(resultSet.getString("description"));
-        entry.setCalories(resultSet.getInt("calories"));
-        return entry;
-    });
+        LogEntry existing = findByIdWithoutDescription(id, true);
+        if (existing == null) {
+            return false;
+        }
+
+        final String sql = "delete from log_entry where log_entry_id = ? and user_id = ?;";
+        boolean deleted = template.update(sql, id, existing.getUserId()) > 0;
+
+        if (deleted) {
+            addToDailyTotal(existing.getUserId(), existing.getLoggedOn(), existing.getType().getValue(), -existing.getCalories(), -1);
+            template.update(BUMP_COLLECTION_VERSION_SQL, existing.getUserId());
+        }
+        return deleted;
+    }
+
+    /**
+     * Recomputes the daily_calorie_total rollup from log_entry, for every user.
+     * calorie_report is kept from the old rollup and the changes queued against it, so both are cleared as well;
+     * with reports enabled every user with totals is queued, and the report job builds their reports from scratch.
+     */
+    @Timed(TIMER)
+    @Transactional
+    public void rebuildDailyTotals() {
+        template.update("delete from daily_calorie_total;");
+        template.update("insert into daily_calorie_total (user_id, logged_date, log_entry_type_id, total_calories, entry_count) "
+                + "select user_id, date(logged_on), log_entry_type_id, sum(calories), count(*) "
+                + "from log_entry "
+                + "group by user_id, date(logged_on), log_entry_type_id;");
+
+        template.update("delete from calorie_report;");
+        template.update("delete from calorie_report_change;");
+        if (recordReportChanges) {
+            // a change of nothing is enough for the job to visit the user, and a user without reports is built in full
+            template.update("insert into calorie_report_change (user_id, logged_date, log_entry_type_id, calories, entry_count) "
+                    + "select user_id, max(logged_date), min(log_entry_type_id), 0, 0 "
+                    + "from daily_calorie_total "
+                    + "group by user_id;");
+        }
+    }
+
+    /**
+     * Compares the daily_calorie_total rollup against log_entry, for every user.
+     *
+     * @return the days whose rollup rows are missing, extra or wrong; empty when the rollup is consistent
+     */
+    @Timed(TIMER)
+    public List<LocalDate> verifyDailyTotals() {
+        final String sql = "select e.logged_date "
+                + "from (select user_id, date(logged_on) as logged_date, log_entry_type_id, sum(calories) as total_calories, count(*) as entry_count "
+                + "    from log_entry group by user_id, date(logged_on), log_entry_type_id) e "
+                + "left outer join daily_calorie_total t "
+                + "    on t.user_id = e.user_id and t.logged_date = e.logged_date and t.log_entry_type_id = e.log_entry_type_id "
+                + "where t.logged_date is null or t.total_calories <> e.total_calories or t.entry_count <> e.entry_count "
+                + "union "
+                + "select t.logged_date "
+                + "from daily_calorie_total t "
+                + "where not exists (select 1 from log_entry e "
+                + "    where e.user_id = t.user_id and e.logged_on >= t.logged_date and e.logged_on < t.logged_date + interval 1 day "
+                + "    and e.log_entry_type_id = t.log_entry_type_id) "
+                + "order by logged_date;";
+        return template.query(sql, (resultSet, rowNum) -> resultSet.getObject("logged_date", LocalDate.class));
+    }
+
+    private void stream(String sql, Consumer<LogEntry> consumer, Object... args) {
+        LogEntryMapper mapper = new LogEntryMapper();
+        // forward-only and read-only so the driver hands rows over as they arrive instead of buffering the result
+        template.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(STREAMING_FETCH_SIZE);
+            new ArgumentPreparedStatementSetter(args).setValues(ps);
+            return ps;
+        }, (RowCallbackHandler) resultSet -> consumer.accept(mapper.mapRow(resultSet, 0)));
+    }
+
+    private void insertWithIds(List<LogEntry> entries) {
+        final String sql = "insert into log_entry(log_entry_id, user_id, logged_on, log_entry_type_id, description, calories) values (?, ?, ?, ?, ?, ?);";
+        template.batchUpdate(sql, entries, entries.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getId());
+            ps.setInt(2, entry.getUserId());
+            ps.setObject(3, entry.getLoggedOn());
+            ps.setInt(4, entry.getType().getValue());
+            ps.setString(5, entry.getDescription());
+            ps.setInt(6, entry.getCalories());
+        });
+    }
+
+    // an entry that's been updated since it was first written has moved on, but it's still the same entry
+    private static boolean isSameEntry(LogEntry stored, LogEntry entry) {
+        if (stored.getUserId() != entry.getUserId()) {
+            return false;
+        }
+        return stored.getVersion() > 1
+                || (stored.getLoggedOn().equals(entry.getLoggedOn())
+                && stored.getType() == entry.getType()
+                && stored.getDescription().equals(entry.getDescription())
+                && stored.getCalories() == entry.getCalories());
+    }
+
+    private static OptimisticLockingFailureException conflict(int id) {
+        return new OptimisticLockingFailureException("log entry " + id + " was changed by someone else");
+    }
+
+    // what update and delete need to know about the row they're replacing; the description isn't part of it
+    private LogEntry findByIdWithoutDescription(int id, boolean forUpdate) {
+        final String sql = "select log_entry_id, user_id, logged_on, log_entry_type_id, calories, version from log_entry "
+                + "where log_entry_id = ? and user_id = ?" + (forUpdate ? " for update;" : ";");
+        try {
+            return template.queryForObject(sql, LogEntryMapper.withoutDescription(), id, UserContext.getUserId());
+        } catch (EmptyResultDataAccessException ex) {
+            return null;
+        }
+    }
+
+    private void addToDailyTotals(List<LogEntry> entries) {
+        template.batchUpdate(ADD_TO_DAILY_TOTAL_SQL, entries, entries.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getUserId());
+            ps.setObject(2, entry.getLoggedOn().toLocalDate());
+            ps.setInt(3, entry.getType().getValue());
+            ps.setInt(4, entry.getCalories());
+            ps.setInt(5, 1);
+        });
+        if (recordReportChanges) {
+            template.batchUpdate(ADD_REPORT_CHANGE_SQL, entries, entries.size(), (ps, entry) -> {
+                ps.setInt(1, entry.getUserId());
+                ps.setObject(2, entry.getLoggedOn().toLocalDate());
+                ps.setInt(3, entry.getType().getValue());
+                ps.setInt(4, entry.getCalories());
+                ps.setInt(5, 1);
+            });
+        }
+    }
+
+    private void addToDailyTotal(int userId, LocalDateTime loggedOn, int typeId, int calories, int entryCount) {
+        LocalDate loggedDate = loggedOn.toLocalDate();
+        template.update(ADD_TO_DAILY_TOTAL_SQL, userId, loggedDate, typeId, calories, entryCount);
+        if (recordReportChanges) {
+            template.update(ADD_REPORT_CHANGE_SQL, userId, loggedDate, typeId, calories, entryCount);
+        }
+
+        if (entryCount < 0) {
+            template.update("delete from daily_calorie_total where user_id = ? and logged_date = ? and log_entry_type_id = ? and entry_count <= 0;",
+                    userId, loggedDate, typeId);
+        }
+    }
 }
@@ -0,0 +1,264 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of entries that have been accepted but may not be in the database yet.
+ * The journal is a series of segment files; a segment is deleted once everything in it has been written.
+ * Each record carries its length and a checksum, so a record torn by a crash is recognised and dropped on recovery.
+ * Records are numbered in one sequence that carries on across restarts, and the checkpoint file holds the last
+ * number known to be written, so recovery skips the records in a segment that were written before the crash.
+ */
+class LogEntryJournal implements AutoCloseable {
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final String CHECKPOINT = "flushed";
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final LogEntryType[] TYPES = LogEntryType.values();
+
+    private final Path directory;
+    private final Path checkpointPath;
+    private final List<Path> recovered;
+    // retired segments, oldest first, and the last sequence number each one holds
+    private final Deque<Segment> retired = new ArrayDeque<>();
+    private final Object syncLock = new Object();
+
+    private long segmentNumber;
+    private Path currentPath;
+    private FileChannel current;
+    private long appended;
+    private long synced;
+
+    LogEntryJournal(Path directory) throws IOException {
+        this.directory = directory;
+        this.checkpointPath = directory.resolve(CHECKPOINT);
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            recovered = files.filter(LogEntryJournal::isSegment).sorted().collect(Collectors.toList());
+        }
+        if (Files.exists(checkpointPath)) {
+            appended = ByteBuffer.wrap(Files.readAllBytes(checkpointPath)).getLong();
+            synced = appended;
+        }
+        segmentNumber = recovered.isEmpty() ? 0 : segmentNumber(recovered.get(recovered.size() - 1));
+        openSegment();
+    }
+
+    /**
+     * Has to be called before the first append, so new records are numbered after the recovered ones.
+     *
+     * @return the entries left in segments from before this journal was opened that were never written, oldest first
+     */
+    List<LogEntry> readRecovered() throws IOException {
+        long written = appended;
+        List<LogEntry> entries = new ArrayList<>();
+        for (Path segment : recovered) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                buffer.get(record);
+                if (checksum(record) != checksum) {
+                    break;
+                }
+                ByteBuffer decoded = ByteBuffer.wrap(record);
+                long sequence = decoded.getLong();
+                if (sequence > written) {
+                    entries.add(decode(decoded));
+                }
+                appended = Math.max(appended, sequence);
+            }
+        }
+        synced = appended;
+        return entries;
+    }
+
+    void deleteRecovered() throws IOException {
+        for (Path segment : recovered) {
+            Files.deleteIfExists(segment);
+        }
+        recovered.clear();
+    }
+
+    /**
+     * Writes the entry to the current segment. It isn't durable until sync is called with the returned sequence number.
+     */
+    synchronized long append(LogEntry entry) throws IOException {
+        byte[] record = encode(entry, appended + 1);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + record.length);
+        buffer.putInt(record.length).putInt(checksum(record)).put(record).flip();
+        while (buffer.hasRemaining()) {
+            current.write(buffer);
+        }
+        return ++appended;
+    }
+
+    /**
+     * Records that everything up to and including flushedSequence has been written, so recovery won't write it again.
+     * Has to return before anyone can change those entries in the database, or recovery could undo the change.
+     * The new checkpoint replaces the old one in a single move, so a crash leaves one or the other.
+     */
+    void checkpoint(long flushedSequence) throws IOException {
+        Path next = directory.resolve(CHECKPOINT + ".next");
+        try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8).putLong(flushedSequence).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(next, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Forces the journal to disk up to at least the given sequence number.
+     * Callers that arrive while another thread is forcing are usually covered by that force, so concurrent appends
+     * share one fsync.
+     */
+    void sync(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= sequence) {
+                return;
+            }
+            long target;
+            FileChannel channel;
+            synchronized (this) {
+                target = appended;
+                channel = current;
+            }
+            channel.force(false);
+            synced = target;
+        }
+    }
+
+    /**
+     * Starts a new segment once the current one is larger than maxBytes.
+     */
+    void rotateIfLargerThan(long maxBytes) throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (current.size() <= maxBytes) {
+                    return;
+                }
+                current.force(false);
+                synced = appended;
+                current.close();
+                retired.addLast(new Segment(currentPath, appended));
+                openSegment();
+            }
+        }
+    }
+
+    /**
+     * Deletes the retired segments whose entries have all been written, i.e. up to and including flushedSequence.
+     */
+    synchronized void release(long flushedSequence) throws IOException {
+        while (!retired.isEmpty() && retired.peekFirst().lastSequence <= flushedSequence) {
+            Files.deleteIfExists(retired.removeFirst().path);
+        }
+    }
+
+    /**
+     * Closes the journal, deleting every segment and the checkpoint if everything appended has been written.
+     */
+    synchronized void close(long flushedSequence) throws IOException {
+        current.force(false);
+        current.close();
+        release(flushedSequence);
+        if (flushedSequence >= appended) {
+            // nothing left to skip on the next start either
+            Files.deleteIfExists(currentPath);
+            Files.deleteIfExists(checkpointPath);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(-1);
+    }
+
+    private void openSegment() throws IOException {
+        segmentNumber++;
+        currentPath = directory.resolve(String.format("%s%012d%s", PREFIX, segmentNumber, SUFFIX));
+        current = FileChannel.open(currentPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private static byte[] encode(LogEntry entry, long sequence) {
+        byte[] description = entry.getDescription() == null ? new byte[0] : entry.getDescription().getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(8 + 4 + 4 + 8 + 4 + 1 + 4 + 4 + description.length)
+                .putLong(sequence)
+                .putInt(entry.getId())
+                .putInt(entry.getUserId())
+                .putLong(entry.getLoggedOn().toEpochSecond(ZoneOffset.UTC))
+                .putInt(entry.getLoggedOn().getNano())
+                .put((byte) entry.getType().ordinal())
+                .putInt(entry.getCalories())
+                .putInt(description.length)
+                .put(description)
+                .array();
+    }
+
+    private static LogEntry decode(ByteBuffer record) {
+        int id = record.getInt();
+        int userId = record.getInt();
+        LocalDateTime loggedOn = LocalDateTime.ofEpochSecond(record.getLong(), record.getInt(), ZoneOffset.UTC);
+        LogEntryType type = TYPES[record.get()];
+        int calories = record.getInt();
+        byte[] description = new byte[record.getInt()];
+        record.get(description);
+        LogEntry entry = new LogEntry(id, loggedOn, type, new String(description, StandardCharsets.UTF_8), calories);
+        entry.setUserId(userId);
+        return entry;
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long lastSequence;
+
+        private Segment(Path path, long lastSequence) {
+            this.path = path;
+            this.lastSequence = lastSequence;
+        }
+    }
+}
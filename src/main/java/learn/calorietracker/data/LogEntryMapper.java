@@ -0,0 +1,71 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+/**
+ * Maps log_entry rows. Columns are looked up by name on the first row only and read by index after that,
+ * so a mapper belongs to one result set; make a new one for each query.
+ * withoutDescription() is for queries that leave the description out because the caller doesn't need it.
+ */
+class LogEntryMapper implements RowMapper<LogEntry> {
+
+    private final boolean withDescription;
+
+    // 0 until the first row has been seen; JDBC columns start at 1
+    private int idColumn;
+    private int userIdColumn;
+    private int loggedOnColumn;
+    private int typeColumn;
+    private int descriptionColumn;
+    private int caloriesColumn;
+    private int versionColumn;
+
+    LogEntryMapper() {
+        this(true);
+    }
+
+    private LogEntryMapper(boolean withDescription) {
+        this.withDescription = withDescription;
+    }
+
+    static LogEntryMapper withoutDescription() {
+        return new LogEntryMapper(false);
+    }
+
+    @Override
+    public LogEntry mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        if (idColumn == 0) {
+            findColumns(resultSet);
+        }
+
+        LogEntry entry = new LogEntry();
+        entry.setId(resultSet.getInt(idColumn));
+        entry.setUserId(resultSet.getInt(userIdColumn));
+        entry.setLoggedOn(resultSet.getObject(loggedOnColumn, LocalDateTime.class));
+        entry.setType(LogEntryType.findByValue(resultSet.getInt(typeColumn)));
+        if (withDescription) {
+            entry.setDescription(resultSet.getString(descriptionColumn));
+        }
+        entry.setCalories(resultSet.getInt(caloriesColumn));
+        entry.setVersion(resultSet.getInt(versionColumn));
+        return entry;
+    }
+
+    private void findColumns(ResultSet resultSet) throws SQLException {
+        userIdColumn = resultSet.findColumn("user_id");
+        loggedOnColumn = resultSet.findColumn("logged_on");
+        typeColumn = resultSet.findColumn("log_entry_type_id");
+        if (withDescription) {
+            descriptionColumn = resultSet.findColumn("description");
+        }
+        caloriesColumn = resultSet.findColumn("calories");
+        versionColumn = resultSet.findColumn("version");
+        idColumn = resultSet.findColumn("log_entry_id");
+    }
+}
@@ -1,19 +1,49 @@
 package learn.calorietracker.data;
 
+import learn.calorietracker.models.DailyCalorieSummary;
 import learn.calorietracker.models.LogEntry;
 import learn.calorietracker.models.LogEntryType;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 
+// everything is scoped to the current user in UserContext: reads only see that user's entries,
+// and creates, updates and deletes only touch them
 public interface LogEntryRepository {
     List<LogEntry> findAll();
 
+    List<LogEntry> findPage(int afterId, int limit);
+
+    // in id order, between the two dates inclusive; a null type means every type
+    List<LogEntry> findPage(int afterId, int limit, LocalDate from, LocalDate to, LogEntryType type);
+
+    void streamAll(Consumer<LogEntry> consumer);
+
+    void streamByDateRange(LocalDate from, LocalDate to, Consumer<LogEntry> consumer);
+
     List<LogEntry> findByType(LogEntryType type);
 
+    List<LogEntry> findByDateRange(LocalDate from, LocalDate to);
+
+    List<LogEntry> findByDateRangeAndType(LocalDate from, LocalDate to, LogEntryType type);
+
     LogEntry findById(int id);
 
+    // 0 when there's no such entry; lets a caller check an ETag without reading the whole entry
+    int findVersionById(int id);
+
+    // changes whenever any of the user's entries is created, updated or deleted
+    long findCollectionVersion();
+
+    List<DailyCalorieSummary> findDailySummaries(LocalDate from, LocalDate to);
+
     LogEntry create(LogEntry entry);
 
+    List<LogEntry> createAll(List<LogEntry> entries);
+
+    // only applies if the stored version still matches entry.getVersion(), or unconditionally when that's 0;
+    // throws OptimisticLockingFailureException when it doesn't match and bumps entry's version when it succeeds
     boolean update(LogEntry entry);
 
     boolean delete(int id);
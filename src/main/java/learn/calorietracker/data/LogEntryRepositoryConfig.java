@@ -0,0 +1,75 @@
+package learn.calorietracker.data;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Chooses the LogEntryRepository the rest of the app uses.
+ * By default that's LogEntryJdbcTemplateRepository; the beans below replace it when they're switched on.
+ * log-entry.repository picks the storage (jdbc, columnar or file). The cache, write-behind and read replicas
+ * only work with jdbc, and only one of them at a time.
+ */
+@Configuration
+public class LogEntryRepositoryConfig {
+
+    @Bean
+    @Primary
+    @ConditionalOnExpression("${log-entry.cache.enabled:false} and !${log-entry.write-behind.enabled:false} and '${log-entry.repository:jdbc}' == 'jdbc'")
+    public CachingLogEntryRepository cachingLogEntryRepository(
+            LogEntryJdbcTemplateRepository jdbcRepository,
+            @Value("${log-entry.cache.max-size:10000}") int maxSize,
+            @Value("${log-entry.cache.ttl:10m}") Duration ttl) {
+        return new CachingLogEntryRepository(jdbcRepository, maxSize, ttl);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnExpression("${log-entry.replicas.enabled:false} and !${log-entry.cache.enabled:false} and !${log-entry.write-behind.enabled:false} and '${log-entry.repository:jdbc}' == 'jdbc'")
+    public ReadReplicaLogEntryRepository readReplicaLogEntryRepository(
+            LogEntryJdbcTemplateRepository jdbcRepository,
+            DataSource dataSource,
+            @Value("${log-entry.replicas.sticky-window:5s}") Duration stickyWindow) throws SQLException {
+        // the DataSource may be wrapped for timing or connection limits
+        return new ReadReplicaLogEntryRepository(jdbcRepository, dataSource.unwrap(ReplicaRoutingDataSource.class), stickyWindow);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "log-entry.repository", havingValue = "columnar")
+    public ColumnarLogEntryRepository columnarLogEntryRepository(LogEntryJdbcTemplateRepository jdbcRepository) {
+        ColumnarLogEntryRepository repository = new ColumnarLogEntryRepository(jdbcRepository);
+        repository.load();
+        return repository;
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "log-entry.repository", havingValue = "file")
+    public LogEntryFileRepository logEntryFileRepository(@Value("${log-entry.file.path:./data/log-entries.dat}") String path) {
+        return new LogEntryFileRepository(Path.of(path));
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnExpression("${log-entry.write-behind.enabled:false} and '${log-entry.repository:jdbc}' == 'jdbc'")
+    public WriteBehindLogEntryRepository writeBehindLogEntryRepository(
+            LogEntryJdbcTemplateRepository jdbcRepository,
+            @Value("${log-entry.write-behind.journal-path:./data/journal}") String journalPath,
+            @Value("${log-entry.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${log-entry.write-behind.batch-size:500}") int batchSize,
+            @Value("${log-entry.write-behind.flush-interval:50ms}") Duration flushInterval,
+            @Value("${log-entry.write-behind.offer-timeout:100ms}") Duration offerTimeout,
+            @Value("${log-entry.write-behind.id-block-size:1000}") int idBlockSize) {
+        return new WriteBehindLogEntryRepository(jdbcRepository, Path.of(journalPath), queueCapacity,
+                batchSize, flushInterval, offerTimeout, idBlockSize);
+    }
+}
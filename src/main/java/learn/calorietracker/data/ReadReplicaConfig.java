@@ -0,0 +1,66 @@
+package learn.calorietracker.data;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts the spring.datasource database, as the primary, and the log-entry.replicas.servers behind a
+ * ReplicaRoutingDataSource when log-entry.replicas.enabled is true. LogEntryRepositoryConfig then sends reads
+ * through a ReadReplicaLogEntryRepository. Can't be combined with sharding.
+ */
+@Configuration
+@ConditionalOnProperty(name = "log-entry.replicas.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("log-entry.replicas")
+    public ReplicaProperties replicaProperties() {
+        return new ReplicaProperties();
+    }
+
+    // the pools aren't beans themselves, so the DataSource post processors only wrap the router
+    @Bean
+    @Primary
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties primaryProperties, ReplicaProperties properties,
+                                                             @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maxPoolSize,
+                                                             @Value("${log-entry.sharding.enabled:false}") boolean sharding) {
+        if (sharding) {
+            throw new IllegalStateException("log-entry.replicas.enabled can't be used with log-entry.sharding.enabled");
+        }
+        if (properties.getServers().isEmpty()) {
+            throw new IllegalStateException("log-entry.replicas.enabled is true but no log-entry.replicas.servers are configured");
+        }
+
+        ConnectionSettings primary = new ConnectionSettings();
+        primary.setUrl(primaryProperties.determineUrl());
+        primary.setUsername(primaryProperties.determineUsername());
+        primary.setPassword(primaryProperties.determinePassword());
+
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < properties.getServers().size(); i++) {
+            replicas.add(properties.getServers().get(i).createPool("replica-" + i, maxPoolSize));
+        }
+        return new ReplicaRoutingDataSource(primary.createPool("primary", maxPoolSize), replicas);
+    }
+
+    public static class ReplicaProperties {
+        private List<ConnectionSettings> servers = new ArrayList<>();
+
+        public List<ConnectionSettings> getServers() {
+            return servers;
+        }
+
+        public void setServers(List<ConnectionSettings> servers) {
+            this.servers = servers;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package learn.calorietracker.data;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import learn.calorietracker.models.DailyCalorieSummary;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sends reads to the read replicas behind a ReplicaRoutingDataSource and writes to the primary.
+ * For stickyWindow after a user's write, that user's reads go to the primary as well, so they see their own
+ * changes before the replicas catch up; the window should be longer than the usual replication lag.
+ * Writes are remembered by this instance only, so a user whose next request lands on another instance
+ * may read from a replica that's behind.
+ */
+public class ReadReplicaLogEntryRepository implements LogEntryRepository, MeterBinder {
+
+    // once this many users have written recently, the expired ones are swept out
+    private static final int SWEEP_THRESHOLD = 10_000;
+
+    private final LogEntryRepository delegate;
+    private final ReplicaRoutingDataSource dataSource;
+    private final long stickyNanos;
+    private final LongSupplier nanoClock;
+
+    private final Map<Integer, Long> lastWriteByUser = new ConcurrentHashMap<>();
+
+    public ReadReplicaLogEntryRepository(LogEntryRepository delegate, ReplicaRoutingDataSource dataSource, Duration stickyWindow) {
+        this(delegate, dataSource, stickyWindow, System::nanoTime);
+    }
+
+    ReadReplicaLogEntryRepository(LogEntryRepository delegate, ReplicaRoutingDataSource dataSource, Duration stickyWindow,
+                                  LongSupplier nanoClock) {
+        this.delegate = delegate;
+        this.dataSource = dataSource;
+        this.stickyNanos = stickyWindow.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public List<LogEntry> findAll() {
+        return read(delegate::findAll);
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit) {
+        return read(() -> delegate.findPage(afterId, limit));
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit, LocalDate from, LocalDate to, LogEntryType type) {
+        return read(() -> delegate.findPage(afterId, limit, from, to, type));
+    }
+
+    @Override
+    public void streamAll(Consumer<LogEntry> consumer) {
+        read(() -> {
+            delegate.streamAll(consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public void streamByDateRange(LocalDate from, LocalDate to, Consumer<LogEntry> consumer) {
+        read(() -> {
+            delegate.streamByDateRange(from, to, consumer);
+            return null;
+        });
+    }
+
+    @Override
+    public List<LogEntry> findByType(LogEntryType type) {
+        return read(() -> delegate.findByType(type));
+    }
+
+    @Override
+    public List<LogEntry> findByDateRange(LocalDate from, LocalDate to) {
+        return read(() -> delegate.findByDateRange(from, to));
+    }
+
+    @Override
+    public List<LogEntry> findByDateRangeAndType(LocalDate from, LocalDate to, LogEntryType type) {
+        return read(() -> delegate.findByDateRangeAndType(from, to, type));
+    }
+
+    @Override
+    public LogEntry findById(int id) {
+        return read(() -> delegate.findById(id));
+    }
+
+    @Override
+    public int findVersionById(int id) {
+        return read(() -> delegate.findVersionById(id));
+    }
+
+    @Override
+    public long findCollectionVersion() {
+        return read(delegate::findCollectionVersion);
+    }
+
+    @Override
+    public List<DailyCalorieSummary> findDailySummaries(LocalDate from, LocalDate to) {
+        return read(() -> delegate.findDailySummaries(from, to));
+    }
+
+    @Override
+    public LogEntry create(LogEntry entry) {
+        try {
+            return delegate.create(entry);
+        } finally {
+            wrote();
+        }
+    }
+
+    @Override
+    public List<LogEntry> createAll(List<LogEntry> entries) {
+        try {
+            return delegate.createAll(entries);
+        } finally {
+            wrote();
+        }
+    }
+
+    // also after a conflict, since the user is about to reload the entry and try again
+    @Override
+    public boolean update(LogEntry entry) {
+        try {
+            return delegate.update(entry);
+        } finally {
+            wrote();
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        try {
+            return delegate.delete(id);
+        } finally {
+            wrote();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("log_entry.connections", dataSource, ReplicaRoutingDataSource::getPrimaryConnections)
+                .tag("target", "primary")
+                .register(registry);
+        FunctionCounter.builder("log_entry.connections", dataSource, ReplicaRoutingDataSource::getReplicaConnections)
+                .tag("target", "replica")
+                .register(registry);
+    }
+
+    private <T> T read(Supplier<T> query) {
+        return recentlyWrote() ? query.get() : dataSource.read(query);
+    }
+
+    private boolean recentlyWrote() {
+        int userId = UserContext.getUserId();
+        Long lastWrite = lastWriteByUser.get(userId);
+        if (lastWrite == null) {
+            return false;
+        }
+        if (nanoClock.getAsLong() - lastWrite < stickyNanos) {
+            return true;
+        }
+        lastWriteByUser.remove(userId, lastWrite);
+        return false;
+    }
+
+    private void wrote() {
+        long now = nanoClock.getAsLong();
+        lastWriteByUser.put(UserContext.getUserId(), now);
+        if (lastWriteByUser.size() > SWEEP_THRESHOLD) {
+            lastWriteByUser.values().removeIf(lastWrite -> now - lastWrite >= stickyNanos);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package learn.calorietracker.data;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hands out primary connections, except inside read(), where connections come from the read replicas in turn.
+ * A read that joins a transaction already under way stays on the primary, so it sees the transaction's own writes.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> READING = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder replicaConnections = new LongAdder();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            replicaKeys.add("replica-" + i);
+            targets.put(replicaKeys.get(i), replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Runs a read that can be served by a replica, which may be a little behind the primary.
+     */
+    public <T> T read(Supplier<T> query) {
+        Boolean previous = READING.get();
+        READING.set(Boolean.TRUE);
+        try {
+            return query.get();
+        } finally {
+            if (previous == null) {
+                READING.remove();
+            } else {
+                READING.set(previous);
+            }
+        }
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    DataSource getPrimary() {
+        return primary;
+    }
+
+    List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    public long getPrimaryConnections() {
+        return primaryConnections.sum();
+    }
+
+    public long getReplicaConnections() {
+        return replicaConnections.sum();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (READING.get() == null || replicas.isEmpty() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            primaryConnections.increment();
+            return PRIMARY;
+        }
+        replicaConnections.increment();
+        return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource dataSource : replicas) {
+            if (dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) dataSource).close();
+            }
+        }
+        if (primary instanceof AutoCloseable) {
+            ((AutoCloseable) primary).close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package learn.calorietracker.data;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the single spring.datasource with one pool per entry in log-entry.sharding.shards,
+ * behind a UserRoutingDataSource, when log-entry.sharding.enabled is true. Every shard has the same schema.
+ * The write-behind writer hands out ids for one database, so it can't be combined with sharding.
+ */
+@Configuration
+@ConditionalOnProperty(name = "log-entry.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean
+    @ConfigurationProperties("log-entry.sharding")
+    public ShardingProperties shardingProperties() {
+        return new ShardingProperties();
+    }
+
+    // the shard pools aren't beans themselves, so the DataSource post processors only wrap the router
+    @Bean
+    @Primary
+    public UserRoutingDataSource shardedDataSource(ShardingProperties properties,
+                                                   @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maxPoolSize,
+                                                   @Value("${log-entry.write-behind.enabled:false}") boolean writeBehind) {
+        if (writeBehind) {
+            throw new IllegalStateException("log-entry.write-behind.enabled can't be used with log-entry.sharding.enabled");
+        }
+        if (properties.getShards().isEmpty()) {
+            throw new IllegalStateException("log-entry.sharding.enabled is true but no log-entry.sharding.shards are configured");
+        }
+
+        List<DataSource> shards = new ArrayList<>();
+        for (int i = 0; i < properties.getShards().size(); i++) {
+            shards.add(properties.getShards().get(i).createPool("shard-" + i, maxPoolSize));
+        }
+        return new UserRoutingDataSource(shards);
+    }
+
+    public static class ShardingProperties {
+        private List<ConnectionSettings> shards = new ArrayList<>();
+
+        public List<ConnectionSettings> getShards() {
+            return shards;
+        }
+
+        public void setShards(List<ConnectionSettings> shards) {
+            this.shards = shards;
+        }
+    }
+}
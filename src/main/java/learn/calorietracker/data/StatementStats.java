@@ -0,0 +1,76 @@
+package learn.calorietracker.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals for every execution of one SQL statement, as recorded by StatementTimingDataSource.
+ * Execution time is spent waiting on execute*; fetch time is spent inside ResultSet calls reading the rows.
+ */
+public class StatementStats {
+
+    private final String sql;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder slowCount = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder executionNanos = new LongAdder();
+    private final LongAdder fetchNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    StatementStats(String sql) {
+        this.sql = sql;
+    }
+
+    void record(long executionNanos, long fetchNanos, long rows, boolean slow) {
+        count.increment();
+        this.rows.add(rows);
+        this.executionNanos.add(executionNanos);
+        this.fetchNanos.add(fetchNanos);
+        maxNanos.accumulateAndGet(executionNanos + fetchNanos, Math::max);
+        if (slow) {
+            slowCount.increment();
+        }
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSlowCount() {
+        return slowCount.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public double getTotalExecutionMillis() {
+        return toMillis(executionNanos.sum());
+    }
+
+    public double getTotalFetchMillis() {
+        return toMillis(fetchNanos.sum());
+    }
+
+    public double getTotalMillis() {
+        return toMillis(executionNanos.sum() + fetchNanos.sum());
+    }
+
+    public double getMeanMillis() {
+        long executions = count.sum();
+        return executions == 0 ? 0 : getTotalMillis() / executions;
+    }
+
+    public double getMaxMillis() {
+        return toMillis(maxNanos.get());
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
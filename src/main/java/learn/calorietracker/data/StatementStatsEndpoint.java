@@ -0,0 +1,30 @@
+package learn.calorietracker.data;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.List;
+
+/**
+ * /actuator/statements: per-statement timings from StatementTimingDataSource. DELETE starts the totals over.
+ */
+@Endpoint(id = "statements")
+public class StatementStatsEndpoint {
+
+    private final StatementTimingDataSource dataSource;
+
+    public StatementStatsEndpoint(StatementTimingDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @ReadOperation
+    public List<StatementStats> statements() {
+        return dataSource.getStatementStats();
+    }
+
+    @DeleteOperation
+    public void reset() {
+        dataSource.resetStatementStats();
+    }
+}
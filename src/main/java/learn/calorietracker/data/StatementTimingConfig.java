@@ -0,0 +1,39 @@
+package learn.calorietracker.data;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * Wraps the DataSource in a StatementTimingDataSource when log-entry.jdbc-timing.enabled is true.
+ */
+@Configuration
+@ConditionalOnProperty(name = "log-entry.jdbc-timing.enabled", havingValue = "true")
+public class StatementTimingConfig {
+
+    // static so the post processor doesn't drag this configuration into early initialization
+    @Bean
+    public static BeanPostProcessor statementTimingDataSourcePostProcessor(
+            @Value("${log-entry.jdbc-timing.slow-threshold:250ms}") Duration slowThreshold) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof StatementTimingDataSource)) {
+                    return new StatementTimingDataSource((DataSource) bean, slowThreshold);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public StatementStatsEndpoint statementStatsEndpoint(DataSource dataSource) throws SQLException {
+        return new StatementStatsEndpoint(dataSource.unwrap(StatementTimingDataSource.class));
+    }
+}
@@ -0,0 +1,294 @@
+package learn.calorietracker.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Wraps a DataSource and times every statement run through its connections.
+ * For each SQL string it keeps the execution time, the time spent fetching rows and the row count,
+ * and it logs any statement slower than the threshold along with its bound parameters.
+ */
+public class StatementTimingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementTimingDataSource.class);
+
+    // the repository only issues a handful of distinct statements; this guards against unbounded growth from ad hoc SQL
+    private static final int MAX_STATEMENTS = 1000;
+
+    private final long slowThresholdNanos;
+    private final Map<String, StatementStats> stats = new ConcurrentHashMap<>();
+
+    public StatementTimingDataSource(DataSource target, Duration slowThreshold) {
+        super(target);
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    /**
+     * @return stats for every statement seen so far, slowest in total first
+     */
+    public List<StatementStats> getStatementStats() {
+        return stats.values().stream()
+                .sorted(Comparator.comparingDouble(StatementStats::getTotalMillis).reversed())
+                .collect(Collectors.toList());
+    }
+
+    public void resetStatementStats() {
+        stats.clear();
+    }
+
+    // closes the pool behind us when the context shuts down
+    @Override
+    public void close() throws Exception {
+        DataSource target = getTargetDataSource();
+        if (target instanceof AutoCloseable) {
+            ((AutoCloseable) target).close();
+        }
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, new ConnectionHandler(connection));
+    }
+
+    private void record(Execution execution) {
+        long totalNanos = execution.executionNanos + execution.fetchNanos;
+        boolean slow = totalNanos >= slowThresholdNanos;
+
+        String sql = execution.sql == null ? "" : execution.sql.trim();
+        StatementStats statementStats = stats.get(sql);
+        if (statementStats == null && stats.size() < MAX_STATEMENTS) {
+            statementStats = stats.computeIfAbsent(sql, StatementStats::new);
+        }
+        if (statementStats != null) {
+            statementStats.record(execution.executionNanos, execution.fetchNanos, execution.rows, slow);
+        }
+
+        if (slow) {
+            log.warn("slow statement: {} ms execute, {} ms fetch, {} rows, parameters {}: {}",
+                    execution.executionNanos / 1_000_000, execution.fetchNanos / 1_000_000,
+                    execution.rows, execution.parameters, sql);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(StatementTimingDataSource.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    // one run of a statement; queries are recorded once their result set is closed so fetch time is included
+    private static class Execution {
+        private final String sql;
+        private final List<Object> parameters;
+        private long executionNanos;
+        private long fetchNanos;
+        private long rows;
+        private boolean recorded;
+
+        private Execution(String sql, List<Object> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        private ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+
+            Object result = StatementTimingDataSource.invoke(connection, method, args);
+            if (result instanceof PreparedStatement && (name.equals("prepareStatement") || name.equals("prepareCall"))) {
+                Class<?> type = name.equals("prepareCall") ? CallableStatement.class : PreparedStatement.class;
+                return proxy(type, new StatementHandler((Statement) result, (String) args[0]));
+            }
+            if (result instanceof Statement && name.equals("createStatement")) {
+                return proxy(Statement.class, new StatementHandler((Statement) result, null));
+            }
+            return result;
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String sql;
+        private final List<Object> parameters = new ArrayList<>();
+        private int batchSize;
+        private Execution pending;
+
+        private StatementHandler(Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+
+            if (name.equals("getResultSet")) {
+                ResultSet resultSet = (ResultSet) StatementTimingDataSource.invoke(statement, method, args);
+                return resultSet == null || pending == null ? resultSet : wrapResultSet(resultSet, pending);
+            }
+
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                setParameter((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                parameters.clear();
+            } else if (name.equals("addBatch")) {
+                batchSize++;
+            } else if (name.equals("clearBatch")) {
+                batchSize = 0;
+            } else if (name.equals("close")) {
+                finish(pending);
+            }
+
+            return StatementTimingDataSource.invoke(statement, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finish(pending);
+
+            String executedSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            List<Object> executedParameters = batchSize > 0
+                    ? List.of(String.format("batch of %s, last %s", batchSize, parameters))
+                    : parameters;
+            Execution execution = new Execution(executedSql, executedParameters);
+            batchSize = 0;
+
+            long start = System.nanoTime();
+            Object result = StatementTimingDataSource.invoke(statement, method, args);
+            execution.executionNanos = System.nanoTime() - start;
+
+            if (result instanceof ResultSet) {
+                pending = execution;
+                return wrapResultSet((ResultSet) result, execution);
+            }
+            if (result instanceof Boolean && (Boolean) result) {
+                // execute() produced a result set; it's fetched through getResultSet
+                pending = execution;
+                return result;
+            }
+
+            execution.rows = updatedRows(result);
+            finish(execution);
+            return result;
+        }
+
+        private ResultSet wrapResultSet(ResultSet resultSet, Execution execution) {
+            return proxy(ResultSet.class, new ResultSetHandler(resultSet, execution, this));
+        }
+
+        private void setParameter(int index, Object value) {
+            while (parameters.size() < index) {
+                parameters.add(null);
+            }
+            parameters.set(index - 1, value);
+        }
+
+        private void finish(Execution execution) {
+            if (execution == null || execution.recorded) {
+                return;
+            }
+            execution.recorded = true;
+            if (execution == pending) {
+                pending = null;
+            }
+            record(execution);
+        }
+    }
+
+    private static long updatedRows(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                rows += Math.max(count, 0);
+            }
+        } else if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                rows += Math.max(count, 0);
+            }
+        }
+        return rows;
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final Execution execution;
+        private final StatementHandler statementHandler;
+
+        private ResultSetHandler(ResultSet resultSet, Execution execution, StatementHandler statementHandler) {
+            this.resultSet = resultSet;
+            this.execution = execution;
+            this.statementHandler = statementHandler;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            long start = System.nanoTime();
+            Object result = StatementTimingDataSource.invoke(resultSet, method, args);
+            execution.fetchNanos += System.nanoTime() - start;
+
+            String name = method.getName();
+            if (name.equals("next") && (Boolean) result) {
+                execution.rows++;
+            } else if (name.equals("close")) {
+                statementHandler.finish(execution);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package learn.calorietracker.data;
+
+/**
+ * The user the current thread is working for. LogEntryJdbcTemplateRepository scopes every query to this user,
+ * and UserRoutingDataSource sends the query to the user's shard.
+ * Outside a request, or for a request that doesn't name a user, it's the default user,
+ * who owns every entry logged before entries had owners.
+ */
+public final class UserContext {
+
+    public static final int DEFAULT_USER_ID = 1;
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private UserContext() {
+    }
+
+    public static int getUserId() {
+        Integer userId = CURRENT.get();
+        return userId == null ? DEFAULT_USER_ID : userId;
+    }
+
+    public static void setUserId(int userId) {
+        if (userId <= 0) {
+            throw new IllegalArgumentException("user id must be positive: " + userId);
+        }
+        CURRENT.set(userId);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
@@ -0,0 +1,71 @@
+package learn.calorietracker.data;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends each connection request to the shard that holds the current user's entries, by a hash of the user id.
+ * A user always lands on the same shard as long as the number of shards doesn't change;
+ * adding a shard moves users, and their rows have to be moved with them.
+ * Ids are only unique within a shard, which is enough because every query is scoped to one user.
+ */
+public class UserRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final List<DataSource> shards;
+
+    public UserRoutingDataSource(List<DataSource> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("at least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        // an unknown key is a bug here, not a reason to fall back to some other user's shard
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    List<DataSource> getShards() {
+        return shards;
+    }
+
+    /**
+     * The shard for a user. The id is mixed first so users created one after another
+     * don't fill the shards in lockstep with any pattern in how ids are handed out.
+     */
+    public static int shardFor(int userId, int shardCount) {
+        int hash = userId;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, shardCount);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return shardFor(UserContext.getUserId(), shards.size());
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource shard : shards) {
+            if (shard instanceof AutoCloseable) {
+                ((AutoCloseable) shard).close();
+            }
+        }
+    }
+}
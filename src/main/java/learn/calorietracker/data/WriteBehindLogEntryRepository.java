@@ -0,0 +1,362 @@
+package learn.calorietracker.data;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import learn.calorietracker.models.DailyCalorieSummary;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Accepts single creates without touching the database: the entry gets an id from a pre-allocated block,
+ * is appended to a local journal and fsynced, then queued. A background writer inserts the queue in batches,
+ * once batchSize entries are waiting or flushInterval has passed, so many creates share one transaction.
+ * When the queue is full, create waits up to offerTimeout and then fails with a TransientDataAccessResourceException.
+ * Anything still in the journal at startup that was never written is written before the repository is used.
+ * findById sees queued entries; the other reads only see entries once they've been written.
+ */
+public class WriteBehindLogEntryRepository implements LogEntryRepository, MeterBinder, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindLogEntryRepository.class);
+
+    private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30_000;
+
+    private final LogEntryJdbcTemplateRepository delegate;
+    private final LogEntryJournal journal;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long offerTimeoutNanos;
+    private final int idBlockSize;
+
+    // a permit for every free slot in the queue, taken before an entry is journaled so a journaled entry is never turned away
+    private final Semaphore capacity;
+    private final BlockingQueue<Pending> queue;
+    private final Map<Integer, LogEntry> pendingById = new ConcurrentHashMap<>();
+    // journal order and queue order must match, so the writer can release the journal in sequence order
+    private final Object appendLock = new Object();
+    private final Object flushed = new Object();
+    private final Thread writer;
+
+    private int nextId;
+    private int idBlockEnd;
+    private volatile long flushedSequence;
+    private volatile boolean closed;
+
+    public WriteBehindLogEntryRepository(LogEntryJdbcTemplateRepository delegate, Path journalDirectory, int queueCapacity,
+                                         int batchSize, Duration flushInterval, Duration offerTimeout, int idBlockSize) {
+        this.delegate = delegate;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.idBlockSize = idBlockSize;
+        this.capacity = new Semaphore(queueCapacity);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        try {
+            journal = new LogEntryJournal(journalDirectory);
+            replay();
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("unable to open the log entry journal in " + journalDirectory, ex);
+        }
+
+        writer = new Thread(this::write, "log-entry-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public LogEntry create(LogEntry entry) {
+        if (closed) {
+            throw new TransientDataAccessResourceException("log entry writer is shut down");
+        }
+        try {
+            if (!capacity.tryAcquire(offerTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new TransientDataAccessResourceException("too many log entries are waiting to be saved, try again later");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("interrupted while waiting to save a log entry", ex);
+        }
+
+        long sequence;
+        try {
+            entry.setId(nextId());
+            entry.setUserId(UserContext.getUserId());
+            entry.setVersion(1);
+            LogEntry queued = copy(entry);
+            synchronized (appendLock) {
+                sequence = journal.append(queued);
+                pendingById.put(queued.getId(), queued);
+                queue.add(new Pending(queued, sequence));
+            }
+        } catch (IOException | RuntimeException ex) {
+            capacity.release();
+            throw ex instanceof IOException
+                    ? new DataAccessResourceFailureException("unable to journal a log entry", ex)
+                    : (RuntimeException) ex;
+        }
+
+        try {
+            journal.sync(sequence);
+        } catch (IOException ex) {
+            throw new DataAccessResourceFailureException("unable to journal a log entry", ex);
+        }
+        return entry;
+    }
+
+    @Override
+    public List<LogEntry> createAll(List<LogEntry> entries) {
+        return delegate.createAll(entries);
+    }
+
+    @Override
+    public LogEntry findById(int id) {
+        LogEntry pending = findPending(id);
+        return pending != null ? copy(pending) : delegate.findById(id);
+    }
+
+    @Override
+    public int findVersionById(int id) {
+        LogEntry pending = findPending(id);
+        return pending != null ? pending.getVersion() : delegate.findVersionById(id);
+    }
+
+    @Override
+    public long findCollectionVersion() {
+        return delegate.findCollectionVersion();
+    }
+
+    @Override
+    public boolean update(LogEntry entry) {
+        awaitWritten(entry.getId());
+        return delegate.update(entry);
+    }
+
+    @Override
+    public boolean delete(int id) {
+        awaitWritten(id);
+        return delegate.delete(id);
+    }
+
+    @Override
+    public List<LogEntry> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<LogEntry> findPage(int afterId, int limit, LocalDate from, LocalDate to, LogEntryType type) {
+        return delegate.findPage(afterId, limit, from, to, type);
+    }
+
+    @Override
+    public void streamAll(Consumer<LogEntry> consumer) {
+        delegate.streamAll(consumer);
+    }
+
+    @Override
+    public void streamByDateRange(LocalDate from, LocalDate to, Consumer<LogEntry> consumer) {
+        delegate.streamByDateRange(from, to, consumer);
+    }
+
+    @Override
+    public List<LogEntry> findByType(LogEntryType type) {
+        return delegate.findByType(type);
+    }
+
+    @Override
+    public List<LogEntry> findByDateRange(LocalDate from, LocalDate to) {
+        return delegate.findByDateRange(from, to);
+    }
+
+    @Override
+    public List<LogEntry> findByDateRangeAndType(LocalDate from, LocalDate to, LogEntryType type) {
+        return delegate.findByDateRangeAndType(from, to, type);
+    }
+
+    @Override
+    public List<DailyCalorieSummary> findDailySummaries(LocalDate from, LocalDate to) {
+        return delegate.findDailySummaries(from, to);
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("log_entry.write_behind.queued", this, WriteBehindLogEntryRepository::getQueued)
+                .register(registry);
+    }
+
+    /**
+     * Stops accepting entries and waits for the writer to save what's queued.
+     * Anything it can't save stays in the journal for the next start.
+     */
+    @Override
+    public void close() throws IOException, InterruptedException {
+        closed = true;
+        writer.join(SHUTDOWN_TIMEOUT_MILLIS);
+        if (!pendingById.isEmpty()) {
+            log.warn("{} log entries weren't saved before shutdown; they'll be saved from the journal on the next start", pendingById.size());
+        }
+        journal.close(flushedSequence);
+    }
+
+    private synchronized int nextId() {
+        if (nextId >= idBlockEnd) {
+            nextId = delegate.allocateIds(idBlockSize);
+            idBlockEnd = nextId + idBlockSize;
+        }
+        return nextId++;
+    }
+
+    private void replay() throws IOException {
+        List<LogEntry> entries = journal.readRecovered();
+        for (int start = 0; start < entries.size(); start += batchSize) {
+            delegate.createAllWithIds(entries.subList(start, Math.min(entries.size(), start + batchSize)));
+        }
+        if (!entries.isEmpty()) {
+            log.info("saved {} log entries from the journal", entries.size());
+        }
+        journal.deleteRecovered();
+    }
+
+    private void write() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                // group commit: keep collecting until the batch is full or the first entry has waited flushInterval
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                if (!save(batch)) {
+                    return;
+                }
+                batch.clear();
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    // retries until the batch is saved; gives up only at shutdown, leaving the batch in the journal.
+    // The journal's checkpoint moves past the batch before anyone can update or delete its entries, so they can't be
+    // saved again after a crash; saving a batch twice when the checkpoint fails is harmless, createAllWithIds skips it
+    private boolean save(List<Pending> batch) throws InterruptedException {
+        List<LogEntry> entries = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            entries.add(pending.entry);
+        }
+        long sequence = batch.get(batch.size() - 1).sequence;
+
+        while (true) {
+            try {
+                delegate.createAllWithIds(entries);
+                journal.checkpoint(sequence);
+                break;
+            } catch (IOException | RuntimeException ex) {
+                log.error("unable to save {} log entries, retrying", entries.size(), ex);
+                if (closed) {
+                    return false;
+                }
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+        }
+
+        for (Pending pending : batch) {
+            pendingById.remove(pending.entry.getId(), pending.entry);
+        }
+        capacity.release(batch.size());
+        synchronized (flushed) {
+            flushedSequence = sequence;
+            flushed.notifyAll();
+        }
+
+        try {
+            journal.release(flushedSequence);
+            journal.rotateIfLargerThan(MAX_SEGMENT_BYTES);
+        } catch (IOException ex) {
+            log.error("unable to rotate the log entry journal", ex);
+        }
+        return true;
+    }
+
+    // a queued entry is only visible to its owner, like a saved one
+    private LogEntry findPending(int id) {
+        LogEntry pending = pendingById.get(id);
+        return pending != null && pending.getUserId() == UserContext.getUserId() ? pending : null;
+    }
+
+    // updates and deletes have to wait for a queued entry to reach the table
+    private void awaitWritten(int id) {
+        synchronized (flushed) {
+            while (pendingById.containsKey(id)) {
+                try {
+                    flushed.wait(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new TransientDataAccessResourceException("interrupted while waiting for a log entry to be saved", ex);
+                }
+            }
+        }
+    }
+
+    private static LogEntry copy(LogEntry entry) {
+        LogEntry copy = new LogEntry(entry.getId(), entry.getLoggedOn(), entry.getType(), entry.getDescription(), entry.getCalories());
+        copy.setUserId(entry.getUserId());
+        copy.setVersion(entry.getVersion());
+        return copy;
+    }
+
+    private static class Pending {
+        private final LogEntry entry;
+        private final long sequence;
+
+        private Pending(LogEntry entry, long sequence) {
+            this.entry = entry;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package learn.calorietracker.domain;
+
+import learn.calorietracker.data.CalorieReportJdbcTemplateRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Runs CalorieReportJob every log-entry.reports.interval when log-entry.reports.enabled is true.
+ * The reports are kept from the daily_calorie_total rollup, which the file repository doesn't keep,
+ * and the job reads its queue from one database, so it can't be combined with sharding.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "log-entry.reports.enabled", havingValue = "true")
+public class CalorieReportConfig implements SchedulingConfigurer {
+
+    private final CalorieReportJob job;
+    private final Duration interval;
+
+    // a provider, so the combinations below fail with their own message instead of a missing JdbcTemplate
+    public CalorieReportConfig(ObjectProvider<CalorieReportJdbcTemplateRepository> reportRepository,
+                               @Value("${log-entry.reports.interval:1m}") Duration interval,
+                               @Value("${log-entry.repository:jdbc}") String repository,
+                               @Value("${log-entry.sharding.enabled:false}") boolean sharding) {
+        if ("file".equals(repository)) {
+            throw new IllegalStateException("log-entry.reports.enabled can't be used with log-entry.repository=file");
+        }
+        if (sharding) {
+            throw new IllegalStateException("log-entry.reports.enabled can't be used with log-entry.sharding.enabled");
+        }
+        this.job = new CalorieReportJob(reportRepository.getObject(), Clock.systemDefaultZone());
+        this.interval = interval;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        registrar.addFixedDelayTask(job, interval.toMillis());
+    }
+}
@@ -0,0 +1,60 @@
+package learn.calorietracker.domain;
+
+import learn.calorietracker.data.CalorieReportJdbcTemplateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Keeps calorie_report current. Each run applies the changes writers queued in calorie_report_change since the last
+ * one, user by user, reading only the days that changed and the days that crossed a window boundary since that user's
+ * reports were last moved. What a run costs depends on how much was written, not on how many users or entries there
+ * are: users who wrote nothing aren't touched, and their reports are moved on to a new day when they're read.
+ * A change is deleted in the same transaction that applies it, so however late a write commits, some run applies it once.
+ */
+public class CalorieReportJob implements Runnable {
+
+    // users read per query while paging through the ones with queued changes
+    static final int USERS_PER_QUERY = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(CalorieReportJob.class);
+
+    private final CalorieReportJdbcTemplateRepository reportRepository;
+    private final Clock clock;
+
+    public CalorieReportJob(CalorieReportJdbcTemplateRepository reportRepository, Clock clock) {
+        this.reportRepository = reportRepository;
+        this.clock = clock;
+    }
+
+    @Override
+    public void run() {
+        LocalDate today = LocalDate.now(clock);
+        int users = 0;
+        int changes = 0;
+
+        int afterUserId = 0;
+        List<Integer> userIds;
+        do {
+            userIds = reportRepository.findUsersWithChanges(afterUserId, USERS_PER_QUERY);
+            for (int userId : userIds) {
+                // one user's failure leaves their changes queued for the next run and doesn't hold up anyone else
+                try {
+                    changes += reportRepository.applyChanges(userId, today);
+                    users++;
+                } catch (DataAccessException ex) {
+                    log.warn("couldn't update the calorie reports of user {}; trying again next run", userId, ex);
+                }
+                afterUserId = userId;
+            }
+        } while (userIds.size() == USERS_PER_QUERY);
+
+        if (users > 0) {
+            log.debug("applied {} changes to the calorie reports of {} users", changes, users);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package learn.calorietracker.domain;
+
+import learn.calorietracker.data.LogEntryFileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Fills a brand new log entry file from the CSV at log-entry.file.csv-path when the file repository is in use.
+ * Once the file has entries the CSV is never read again.
+ */
+@Component
+@ConditionalOnProperty(name = "log-entry.repository", havingValue = "file")
+public class LogEntryCsvConversion implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(LogEntryCsvConversion.class);
+
+    private final LogEntryFileRepository repository;
+    private final LogEntryCsvImporter importer;
+    private final Path csvPath;
+
+    public LogEntryCsvConversion(LogEntryFileRepository repository, LogEntryCsvImporter importer,
+                                 @Value("${log-entry.file.csv-path:./data/log-entries.csv}") String csvPath) {
+        this.repository = repository;
+        this.importer = importer;
+        this.csvPath = Path.of(csvPath);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!repository.isNew() || !Files.exists(csvPath)) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(csvPath, StandardCharsets.UTF_8)) {
+            LogEntryImportReport report = importer.importCsv(reader);
+            log.info("converted {}: {}", csvPath, report);
+            report.getRejectedLines().forEach(log::warn);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package learn.calorietracker.domain;
+
+import learn.calorietracker.data.LogEntryRepository;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports files in the data/log-entries.csv format (id,loggedOn,type,description,calories).
+ * The file is read line by line and saved in chunks, so memory use doesn't depend on the file size.
+ * Each chunk is saved in its own transaction; the id column is ignored and new ids are generated.
+ */
+@Service
+public class LogEntryCsvImporter {
+    private static final String HEADER = "id,";
+
+
+    private final LogEntryService service;
+    private final LogEntryRepository repository;
+    private final int chunkSize;
+
+    public LogEntryCsvImporter(LogEntryService service, LogEntryRepository repository,
+                               @Value("${log-entry.import.chunk-size:1000}") int chunkSize) {
+        this.service = service;
+        this.repository = repository;
+        this.chunkSize = chunkSize;
+    }
+
+    public LogEntryImportReport importCsv(Reader reader) throws IOException {
+        LogEntryImportReport report = new LogEntryImportReport();
+        long start = System.nanoTime();
+
+        BufferedReader bufferedReader = reader instanceof BufferedReader
+                ? (BufferedReader) reader
+                : new BufferedReader(reader);
+
+        List<LogEntry> chunk = new ArrayList<>(chunkSize);
+        int lineNumber = 0;
+        for (String line = bufferedReader.readLine(); line != null; line = bufferedReader.readLine()) {
+            lineNumber++;
+            if (line.isBlank() || (lineNumber == 1 && line.startsWith(HEADER))) {
+                continue;
+            }
+            report.addRowRead();
+
+            LogEntry entry;
+            try {
+                entry = parse(line);
+            } catch (IllegalArgumentException ex) {
+                report.addRejectedLine(lineNumber, ex.getMessage());
+                continue;
+            }
+
+            LogEntryResult result = service.validate(entry, true);
+            if (!result.isSuccessful()) {
+                report.addRejectedLine(lineNumber, String.join(", ", result.getMessages()));
+                continue;
+            }
+
+            chunk.add(entry);
+            if (chunk.size() >= chunkSize) {
+                save(chunk, report);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        save(chunk, report);
+
+        report.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        return report;
+    }
+
+    private void save(List<LogEntry> chunk, LogEntryImportReport report) {
+        if (!chunk.isEmpty()) {
+            repository.createAll(chunk);
+            report.addRowsImported(chunk.size());
+        }
+    }
+
+    private LogEntry parse(String line) {
+        // the description may contain commas, so it's everything between the third and the last comma
+        int idEnd = line.indexOf(',');
+        int loggedOnEnd = idEnd < 0 ? -1 : line.indexOf(',', idEnd + 1);
+        int typeEnd = loggedOnEnd < 0 ? -1 : line.indexOf(',', loggedOnEnd + 1);
+        int descriptionEnd = line.lastIndexOf(',');
+        if (typeEnd < 0 || descriptionEnd <= typeEnd) {
+            throw new IllegalArgumentException("expected id,loggedOn,type,description,calories");
+        }
+
+        LogEntry entry = new LogEntry();
+        entry.setLoggedOn(LogEntryService.parseLoggedOn(line.substring(idEnd + 1, loggedOnEnd)));
+        entry.setType(parseType(line.substring(loggedOnEnd + 1, typeEnd).trim()));
+        entry.setDescription(unquote(line.substring(typeEnd + 1, descriptionEnd)));
+        entry.setCalories(parseCalories(line.substring(descriptionEnd + 1).trim()));
+        return entry;
+    }
+
+    private LogEntryType parseType(String value) {
+        try {
+            return LogEntryType.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("invalid type: %s", value));
+        }
+    }
+
+    private int parseCalories(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(String.format("invalid calories: %s", value));
+        }
+    }
+
+    private String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+}
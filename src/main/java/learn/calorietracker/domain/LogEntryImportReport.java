@@ -0,0 +1,64 @@
+package learn.calorietracker.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogEntryImportReport {
+    // keep the report small when a whole file is bad
+    private static final int MAX_REJECTED_LINES = 100;
+
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsRejected;
+    private long elapsedMillis;
+    private final List<String> rejectedLines = new ArrayList<>();
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsImported() {
+        return rowsImported;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return elapsedMillis == 0 ? rowsImported : rowsImported * 1000 / elapsedMillis;
+    }
+
+    public List<String> getRejectedLines() {
+        return new ArrayList<>(rejectedLines);
+    }
+
+    void addRowRead() {
+        rowsRead++;
+    }
+
+    void addRowsImported(int count) {
+        rowsImported += count;
+    }
+
+    void addRejectedLine(int lineNumber, String message) {
+        rowsRejected++;
+        if (rejectedLines.size() < MAX_REJECTED_LINES) {
+            rejectedLines.add(String.format("line %s: %s", lineNumber, message));
+        }
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("read %s, imported %s, rejected %s in %s ms (%s rows/sec)",
+                rowsRead, rowsImported, rowsRejected, elapsedMillis, getRowsPerSecond());
+    }
+}
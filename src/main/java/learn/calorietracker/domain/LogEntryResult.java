@@ -13,6 +13,8 @@ public class LogEntryResult {
 
     private LogEntry payload;
 
+    private ResultType type = ResultType.SUCCESS;
+
     public LogEntry getPayload() {
         return payload;
     }
@@ -25,11 +27,20 @@ public class LogEntryResult {
         return messages.isEmpty();
     }
 
+    public ResultType getType() {
+        return type;
+    }
+
     public List<String> getMessages() {
         return new ArrayList<>(messages);
     }
 
     public void addMessage(String message) {
+        addMessage(message, ResultType.INVALID);
+    }
+
+    public void addMessage(String message, ResultType type) {
         messages.add(message);
+        this.type = type;
     }
 }
@@ -1,33 +1,204 @@
 package learn.calorietracker.domain;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.calorietracker.data.CalorieReportRepository;
 import learn.calorietracker.data.LogEntryRepository;
+import learn.calorietracker.data.UserContext;
+import learn.calorietracker.models.CalorieReport;
+import learn.calorietracker.models.DailyCalorieSummary;
 import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryPage;
 import learn.calorietracker.models.LogEntryType;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 public class LogEntryService {
+    static final int MAX_PAGE_SIZE = 1000;
+    static final int FLUX_PAGE_SIZE = 500;
+
+    // the range MySQL supports for datetime columns, used for open-ended date ranges
+    private static final LocalDate MIN_DATE = LocalDate.of(1000, 1, 1);
+    private static final LocalDate MAX_DATE = LocalDate.of(9999, 12, 31);
+
+    // formats found in older clients and data/log-entries.csv, e.g. "2020-01-01 9:00 AM" and "2020-01-01 18:00"
+    private static final DateTimeFormatter[] LEGACY_LOGGED_ON_FORMATS = {
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME,
+            DateTimeFormatter.ofPattern("yyyy-MM-dd h:mm a", Locale.US),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm[:ss]", Locale.US)
+    };
+
+    private static final String TIMER = "log_entry.service";
+
     private LogEntryRepository repository;
+    // null unless log-entry.reports.enabled is true
+    private final CalorieReportRepository reportRepository;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary findAllRows;
+    private final DistributionSummary findByTypeRows;
+    private final DistributionSummary findByDateRangeRows;
 
-    public LogEntryService(LogEntryRepository repository) {
+    public LogEntryService(LogEntryRepository repository, Optional<CalorieReportRepository> reportRepository,
+                           MeterRegistry meterRegistry) {
         this.repository = repository;
+        this.reportRepository = reportRepository.orElse(null);
+        this.meterRegistry = meterRegistry;
+        this.findAllRows = rowsReturned("findAll");
+        this.findByTypeRows = rowsReturned("findByType");
+        this.findByDateRangeRows = rowsReturned("findByDateRange");
     }
 
+    @Timed(TIMER)
     public List<LogEntry> findAll() {
-        return repository.findAll();
+        List<LogEntry> entries = repository.findAll();
+        findAllRows.record(entries.size());
+        return entries;
+    }
+
+    @Timed(TIMER)
+    public LogEntryPage findPage(int afterId, int limit) {
+        int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+
+        // ask for one extra row so we know whether another page exists without a second query
+        List<LogEntry> entries = repository.findPage(Math.max(afterId, 0), pageSize + 1);
+
+        if (entries.size() <= pageSize) {
+            return new LogEntryPage(entries, null);
+        }
+
+        List<LogEntry> page = new ArrayList<>(entries.subList(0, pageSize));
+        return new LogEntryPage(page, page.get(pageSize - 1).getId());
+    }
+
+    @Timed(TIMER)
+    public void streamAll(Consumer<LogEntry> consumer) {
+        repository.streamAll(consumer);
+    }
+
+    @Timed(TIMER)
+    public void streamByDateRange(LocalDate from, LocalDate to, Consumer<LogEntry> consumer) {
+        if (from == null && to == null) {
+            repository.streamAll(consumer);
+            return;
+        }
+        repository.streamByDateRange(from == null ? MIN_DATE : from, to == null ? MAX_DATE : to, consumer);
     }
 
+    /**
+     * Entries in id order, optionally filtered by date range and type. Pages are only read from the repository
+     * as the subscriber asks for more, on the bounded elastic scheduler, and reading stops once it cancels; the Flux
+     * holds no connection between pages. Whatever writes the entries out may still block a thread of its own on a slow
+     * client. The pages are read for the user calling this, whichever thread reads them.
+     */
+    public Flux<LogEntry> findAllAsFlux(LocalDate from, LocalDate to, LogEntryType type) {
+        LocalDate start = from == null ? MIN_DATE : from;
+        LocalDate end = to == null ? MAX_DATE : to;
+        if (start.isAfter(end)) {
+            return Flux.empty();
+        }
+
+        int userId = UserContext.getUserId();
+        return Flux.<List<LogEntry>, Integer>generate(() -> 0, (afterId, sink) -> {
+                    List<LogEntry> page;
+                    UserContext.setUserId(userId);
+                    try {
+                        page = repository.findPage(afterId, FLUX_PAGE_SIZE, start, end, type);
+                    } finally {
+                        UserContext.clear();
+                    }
+                    if (!page.isEmpty()) {
+                        sink.next(page);
+                    }
+                    if (page.size() < FLUX_PAGE_SIZE) {
+                        sink.complete();
+                        return afterId;
+                    }
+                    return page.get(page.size() - 1).getId();
+                })
+                // one page at a time, so the next page isn't read until this one has been sent
+                .concatMapIterable(page -> page, 1)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Timed(TIMER)
     public List<LogEntry> findByType(LogEntryType type) {
-        return repository.findByType(type);
+        List<LogEntry> entries = repository.findByType(type);
+        findByTypeRows.record(entries.size());
+        return entries;
+    }
+
+    @Timed(TIMER)
+    public List<LogEntry> findByDateRange(LocalDate from, LocalDate to, LogEntryType type) {
+        LocalDate start = from == null ? MIN_DATE : from;
+        LocalDate end = to == null ? MAX_DATE : to;
+        if (start.isAfter(end)) {
+            return List.of();
+        }
+
+        List<LogEntry> entries = type == null
+                ? repository.findByDateRange(start, end)
+                : repository.findByDateRangeAndType(start, end, type);
+        findByDateRangeRows.record(entries.size());
+        return entries;
     }
 
+    @Timed(TIMER)
     public LogEntry findById(int id){
         return repository.findById(id);
     }
 
+    @Timed(TIMER)
+    public int findVersionById(int id) {
+        return repository.findVersionById(id);
+    }
+
+    @Timed(TIMER)
+    public long findCollectionVersion() {
+        return repository.findCollectionVersion();
+    }
+
+    @Timed(TIMER)
+    public List<DailyCalorieSummary> findDailySummaries(LocalDate from, LocalDate to) {
+        if (from == null || to == null || from.isAfter(to)) {
+            return List.of();
+        }
+        return repository.findDailySummaries(from, to);
+    }
+
+    /**
+     * The 7, 30 and 365-day reports as of today, for every type together and per type, with the entries
+     * CalorieReportJob had applied by its last run. Empty until the job has run for the user, and null when
+     * log-entry.reports.enabled is false.
+     */
+    @Timed(TIMER)
+    public List<CalorieReport> findReports() {
+        if (reportRepository == null) {
+            return null;
+        }
+        LocalDate today = LocalDate.now();
+        List<CalorieReport> reports = reportRepository.findReports();
+        // reports are only moved on to a new day when someone reads them, so users who don't cost nothing
+        if (!reports.isEmpty() && reports.get(0).getAsOf().isBefore(today)) {
+            reports = reportRepository.moveReportsForward(today);
+        }
+        return reports;
+    }
+
+    @Timed(TIMER)
     public LogEntryResult create(LogEntry entry){
         LogEntryResult result = validate(entry, true);
         /*
@@ -52,22 +223,58 @@ public class LogEntryService {
         return result;
     }
 
+    @Timed(TIMER)
+    public List<LogEntryResult> createAll(List<LogEntry> entries) {
+        List<LogEntryResult> results = new ArrayList<>();
+        if (entries == null || entries.isEmpty()) {
+            return results;
+        }
+
+        // validate everything up front; the batch is saved all-or-nothing
+        boolean allValid = true;
+        for (LogEntry entry : entries) {
+            LogEntryResult result = validate(entry, true);
+            allValid &= result.isSuccessful();
+            results.add(result);
+        }
+
+        if (!allValid) {
+            for (LogEntryResult result : results) {
+                if (result.isSuccessful()) {
+                    result.addMessage("entry was not saved because other entries in the batch are invalid");
+                }
+            }
+            return results;
+        }
+
+        List<LogEntry> newLogEntries = repository.createAll(entries);
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).setPayload(newLogEntries.get(i));
+        }
+
+        return results;
+    }
+
+    @Timed(TIMER)
     public LogEntryResult update(LogEntry entry) {
         LogEntryResult result = validate(entry, false);
 
         if (result.isSuccessful()) {
-            boolean success = repository.update(entry);
-
-            if (success) {
-                result.setPayload(entry);
-            } else {
-                result.addMessage("unable to update");
+            try {
+                if (repository.update(entry)) {
+                    result.setPayload(entry);
+                } else {
+                    result.addMessage("unable to update");
+                }
+            } catch (OptimisticLockingFailureException ex) {
+                result.addMessage("log entry was changed by someone else, reload it and try again", ResultType.CONFLICT);
             }
         }
 
         return result;
     }
 
+    @Timed(TIMER)
     public boolean deleteById(int id) {
         if (id <= 0) {
             return false;
@@ -76,7 +283,15 @@ public class LogEntryService {
         return repository.delete(id);
     }
 
-    private LogEntryResult validate(LogEntry entry, boolean isNewEntry) {
+    LogEntryResult validate(LogEntry entry, boolean isNewEntry) {
+        LogEntryResult result = checkEntry(entry, isNewEntry);
+        for (String message : result.getMessages()) {
+            meterRegistry.counter("log_entry.validation.failures", "message", message).increment();
+        }
+        return result;
+    }
+
+    private LogEntryResult checkEntry(LogEntry entry, boolean isNewEntry) {
         LogEntryResult result = new LogEntryResult();
 
         if (entry == null) {
@@ -110,10 +325,38 @@ public class LogEntryService {
             result.addMessage("description must be less than or equal to 100 characters");
         }
 
-        if (entry.getLoggedOn() == null || entry.getLoggedOn().isEmpty()) {
+        if (entry.getLoggedOn() == null) {
             result.addMessage("logged date is required");
         }
 
         return result;
     }
+
+    private DistributionSummary rowsReturned(String operation) {
+        return DistributionSummary.builder("log_entry.rows.returned")
+                .baseUnit("rows")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Parses a logged date in ISO format or any of the legacy formats. A date without a time is the start of that day.
+     *
+     * @throws IllegalArgumentException if the value isn't in a known format
+     */
+    public static LocalDateTime parseLoggedOn(String value) {
+        String trimmed = value == null ? "" : value.trim();
+        for (DateTimeFormatter format : LEGACY_LOGGED_ON_FORMATS) {
+            try {
+                return LocalDateTime.parse(trimmed, format);
+            } catch (DateTimeParseException ex) {
+                // try the next format
+            }
+        }
+        try {
+            return LocalDate.parse(trimmed).atStartOfDay();
+        } catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException(String.format("invalid logged date: %s", value));
+        }
+    }
 }
@@ -0,0 +1,8 @@
+package learn.calorietracker.domain;
+
+public enum ResultType {
+    SUCCESS,
+    INVALID,
+    // someone else changed the entry since the caller read it
+    CONFLICT
+}
@@ -0,0 +1,96 @@
+package learn.calorietracker.models;
+
+import java.time.LocalDate;
+
+/**
+ * Calories over the periodDays days up to and including asOf, next to the periodDays days before them.
+ * Averages are per logged day, a day with at least one entry of any type, so days without entries don't pull them down.
+ * A null type means every type together.
+ */
+public class CalorieReport {
+    private int periodDays;
+    private LogEntryType type;
+    private LocalDate asOf;
+    private int totalCalories;
+    private int loggedDays;
+    private int previousTotalCalories;
+    private int previousLoggedDays;
+
+    public CalorieReport() {
+    }
+
+    public CalorieReport(int periodDays, LogEntryType type, LocalDate asOf) {
+        this.periodDays = periodDays;
+        this.type = type;
+        this.asOf = asOf;
+    }
+
+    public int getPeriodDays() {
+        return periodDays;
+    }
+
+    public void setPeriodDays(int periodDays) {
+        this.periodDays = periodDays;
+    }
+
+    public LogEntryType getType() {
+        return type;
+    }
+
+    public void setType(LogEntryType type) {
+        this.type = type;
+    }
+
+    public LocalDate getAsOf() {
+        return asOf;
+    }
+
+    public void setAsOf(LocalDate asOf) {
+        this.asOf = asOf;
+    }
+
+    public int getTotalCalories() {
+        return totalCalories;
+    }
+
+    public void setTotalCalories(int totalCalories) {
+        this.totalCalories = totalCalories;
+    }
+
+    public int getLoggedDays() {
+        return loggedDays;
+    }
+
+    public void setLoggedDays(int loggedDays) {
+        this.loggedDays = loggedDays;
+    }
+
+    public int getPreviousTotalCalories() {
+        return previousTotalCalories;
+    }
+
+    public void setPreviousTotalCalories(int previousTotalCalories) {
+        this.previousTotalCalories = previousTotalCalories;
+    }
+
+    public int getPreviousLoggedDays() {
+        return previousLoggedDays;
+    }
+
+    public void setPreviousLoggedDays(int previousLoggedDays) {
+        this.previousLoggedDays = previousLoggedDays;
+    }
+
+    public double getAverageCalories() {
+        return loggedDays == 0 ? 0 : (double) totalCalories / loggedDays;
+    }
+
+    public double getPreviousAverageCalories() {
+        return previousLoggedDays == 0 ? 0 : (double) previousTotalCalories / previousLoggedDays;
+    }
+
+    // positive when the average went up since the period before
+    public double getTrend() {
+        return getAverageCalories() - getPreviousAverageCalories();
+    }
+}
@@ -0,0 +1,47 @@
+package learn.calorietracker.models;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class DailyCalorieSummary {
+    private LocalDate date;
+    private int totalCalories;
+    private Map<LogEntryType, Integer> caloriesByType = new EnumMap<>(LogEntryType.class);
+
+    public DailyCalorieSummary() {
+    }
+
+    public DailyCalorieSummary(LocalDate date) {
+        this.date = date;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public int getTotalCalories() {
+        return totalCalories;
+    }
+
+    public void setTotalCalories(int totalCalories) {
+        this.totalCalories = totalCalories;
+    }
+
+    public Map<LogEntryType, Integer> getCaloriesByType() {
+        return caloriesByType;
+    }
+
+    public void setCaloriesByType(Map<LogEntryType, Integer> caloriesByType) {
+        this.caloriesByType = caloriesByType;
+    }
+
+    public void addCalories(LogEntryType type, int calories) {
+        caloriesByType.merge(type, calories, Integer::sum);
+        totalCalories += calories;
+    }
+}
@@ -1,16 +1,20 @@
 package learn.calorietracker.models;
 
+import java.time.LocalDateTime;
+
 public class LogEntry {
     private int id;
-    private String loggedOn; // "2020-01-01 09:00 AM"
+    private int userId;
+    private LocalDateTime loggedOn;
     private LogEntryType type; // "Breakfast, Snack, Lunch, Dinner, Second Breakfast"
     private String description;
     private int calories;
+    private int version;
 
     public LogEntry() {
     }
 
-    public LogEntry(int id, String loggedOn, LogEntryType type, String description, int calories) {
+    public LogEntry(int id, LocalDateTime loggedOn, LogEntryType type, String description, int calories) {
         this.id = id;
         this.loggedOn = loggedOn;
         this.type = type;
@@ -26,11 +30,19 @@ public class LogEntry {
         this.id = id;
     }
 
-    public String getLoggedOn() {
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public LocalDateTime getLoggedOn() {
         return loggedOn;
     }
 
-    public void setLoggedOn(String loggedOn) {
+    public void setLoggedOn(LocalDateTime loggedOn) {
         this.loggedOn = loggedOn;
     }
 
@@ -57,4 +69,12 @@ public class LogEntry {
     public void setCalories(int calories) {
         this.calories = calories;
     }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
 }
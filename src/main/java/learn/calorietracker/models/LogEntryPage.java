@@ -0,0 +1,21 @@
+package learn.calorietracker.models;
+
+import java.util.List;
+
+public class LogEntryPage {
+    private final List<LogEntry> entries;
+    private final Integer nextCursor; // null when there are no more entries
+
+    public LogEntryPage(List<LogEntry> entries, Integer nextCursor) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<LogEntry> getEntries() {
+        return entries;
+    }
+
+    public Integer getNextCursor() {
+        return nextCursor;
+    }
+}
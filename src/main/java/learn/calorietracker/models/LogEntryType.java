@@ -7,6 +7,9 @@ public enum LogEntryType {
     SNACK(4, "Snack"),
     SECOND_BREAKFAST(5, "Second Breakfast");
 
+    // indexed by value, so a lookup is an array read instead of a scan over a fresh copy of values()
+    private static final LogEntryType[] BY_VALUE = indexByValue();
+
     private final int value;
     private final String type;
 
@@ -20,12 +23,22 @@ public enum LogEntryType {
     }
 
     public static LogEntryType findByValue(int value) {
-        for (LogEntryType logEntryType : LogEntryType.values()) {
-            if (logEntryType.getValue() == value) {
-                return logEntryType;
-            }
+        if (value >= 0 && value < BY_VALUE.length && BY_VALUE[value] != null) {
+            return BY_VALUE[value];
         }
         String message = String.format("No LogEntryType with value: %s.", value);
         throw new RuntimeException(message);
     }
+
+    private static LogEntryType[] indexByValue() {
+        int maxValue = 0;
+        for (LogEntryType logEntryType : values()) {
+            maxValue = Math.max(maxValue, logEntryType.value);
+        }
+        LogEntryType[] byValue = new LogEntryType[maxValue + 1];
+        for (LogEntryType logEntryType : values()) {
+            byValue[logEntryType.value] = logEntryType;
+        }
+        return byValue;
+    }
 }
@@ -0,0 +1,35 @@
+package learn.calorietracker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadConfigTest {
+
+    @Test
+    void shouldRunTasksOnVirtualThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21, "virtual threads need Java 21");
+
+        ExecutorService executor = VirtualThreadConfig.newVirtualThreadPerTaskExecutor("request-");
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+            assertTrue(thread.getName().startsWith("request-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void shouldFailClearlyBeforeJava21() {
+        assumeTrue(Runtime.version().feature() < 21);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class,
+                () -> VirtualThreadConfig.newVirtualThreadPerTaskExecutor("request-"));
+        assertTrue(ex.getMessage().contains("needs Java 21"));
+    }
+}
@@ -1,49 +1,93 @@
 package learn.calorietracker.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import learn.calorietracker.data.UserContext;
+import learn.calorietracker.domain.LogEntryCsvImporter;
+import learn.calorietracker.domain.LogEntryImportReport;
 import learn.calorietracker.domain.LogEntryResult;
 import learn.calorietracker.domain.LogEntryService;
+import learn.calorietracker.domain.ResultType;
+import learn.calorietracker.models.CalorieReport;
+import learn.calorietracker.models.DailyCalorieSummary;
 import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryPage;
 import learn.calorietracker.models.LogEntryType;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-@SpringBootTest
+@SpringBootTest(properties = "log-entry.user-header.trusted=true")
 @AutoConfigureMockMvc
 public class LogEntryControllerTest {
 
+    static final MediaType APPLICATION_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
     @MockBean
     LogEntryService service;
 
+    @MockBean
+    LogEntryCsvImporter importer;
+
     @Autowired
     MockMvc mvc;
 
+    @Autowired
+    ObjectMapper jsonMapper;
+
+    @Autowired
+    MappingJackson2CborHttpMessageConverter cborConverter;
+
+    @Autowired
+    MappingJackson2SmileHttpMessageConverter smileConverter;
+
     @Test
     void shouldGetAll() throws Exception {
         //arrange
         List<LogEntry> entries = List.of(
-             new LogEntry(1, "2020-01-01", LogEntryType.BREAKFAST, "Coffee", 10),
-                new LogEntry(1, "2020-01-01", LogEntryType.LUNCH, "Salad", 20),
-                new LogEntry(1, "2020-01-01", LogEntryType.DINNER, "Tacos", 30)
+             new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.LUNCH, "Salad", 20),
+                new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.DINNER, "Tacos", 30)
         );
 
-        ObjectMapper jsonMapper = new ObjectMapper();
         String expectedJson = jsonMapper.writeValueAsString(entries);
 
         when(service.findAll()).thenReturn(entries);
@@ -54,6 +98,265 @@ public class LogEntryControllerTest {
                 .andExpect(content().json(expectedJson));
     }
 
+    @Test
+    void shouldGetByType() throws Exception {
+        List<LogEntry> entries = List.of(
+                new LogEntry(2, LocalDateTime.of(2020, 1, 1, 12, 0), LogEntryType.LUNCH, "Salad", 20)
+        );
+
+        String expectedJson = jsonMapper.writeValueAsString(entries);
+
+        when(service.findByType(LogEntryType.LUNCH)).thenReturn(entries);
+
+        mvc.perform(get("/log?type=LUNCH"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedJson));
+    }
+
+    @Test
+    void shouldGetByDateRangeAndType() throws Exception {
+        List<LogEntry> entries = List.of(
+                new LogEntry(2, LocalDateTime.of(2020, 9, 23, 12, 0), LogEntryType.LUNCH, "Salad", 20)
+        );
+
+        String expectedJson = jsonMapper.writeValueAsString(entries);
+
+        when(service.findByDateRange(LocalDate.of(2020, 9, 23), LocalDate.of(2020, 9, 23), LogEntryType.LUNCH)).thenReturn(entries);
+
+        mvc.perform(get("/log?from=2020-09-23&to=2020-09-23&type=LUNCH"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedJson));
+    }
+
+    @Test
+    void shouldNotGetByBackwardsDateRange() throws Exception {
+        mvc.perform(get("/log?from=2020-09-24&to=2020-09-23"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldGetPage() throws Exception {
+        LogEntryPage page = new LogEntryPage(List.of(
+                new LogEntry(3, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(4, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.LUNCH, "Salad", 20)
+        ), 4);
+
+        String expectedJson = jsonMapper.writeValueAsString(page);
+
+        when(service.findPage(2, 2)).thenReturn(page);
+
+        mvc.perform(get("/log/page?cursor=2&limit=2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedJson));
+    }
+
+    @Test
+    void shouldNotGetPageWithNonPositiveLimit() throws Exception {
+        mvc.perform(get("/log/page?limit=0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldStreamAll() throws Exception {
+        List<LogEntry> entries = List.of(
+                new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(2, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.LUNCH, "Salad", 20)
+        );
+
+        String expectedJson = jsonMapper.writeValueAsString(entries);
+
+        doAnswer(invocation -> {
+            Consumer<LogEntry> consumer = invocation.getArgument(0);
+            entries.forEach(consumer);
+            return null;
+        }).when(service).streamAll(any());
+
+        MvcResult result = mvc.perform(get("/log/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().json(expectedJson));
+    }
+
+    @Test
+    void shouldStreamAsCbor() throws Exception {
+        LogEntry entry = new LogEntry(1, LocalDateTime.of(2020, 1, 1, 9, 0), LogEntryType.SNACK, "Apple", 95);
+
+        doAnswer(invocation -> {
+            Consumer<LogEntry> consumer = invocation.getArgument(0);
+            consumer.accept(entry);
+            return null;
+        }).when(service).streamAll(any());
+
+        MvcResult result = mvc.perform(get("/log/stream").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        byte[] body = mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode entries = cborConverter.getObjectMapper().readTree(body);
+        assertEquals(1, entries.size());
+        assertEquals(LogEntryType.SNACK.getValue(), entries.get(0).get("type").intValue());
+        assertEquals(epochMilli(entry.getLoggedOn()), entries.get(0).get("loggedOn").longValue());
+    }
+
+    @Test
+    void shouldNotStreamUnacceptableType() throws Exception {
+        mvc.perform(get("/log/stream").accept(MediaType.TEXT_PLAIN))
+                .andExpect(status().isNotAcceptable());
+
+        verify(service, never()).streamAll(any());
+    }
+
+    @Test
+    void shouldStreamForTheUserInTheHeader() throws Exception {
+        AtomicInteger userId = new AtomicInteger();
+        doAnswer(invocation -> {
+            userId.set(UserContext.getUserId());
+            return null;
+        }).when(service).streamAll(any());
+
+        MvcResult result = mvc.perform(get("/log/stream").header(UserContextFilter.USER_ID_HEADER, "42"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+
+        assertEquals(42, userId.get());
+    }
+
+    @Test
+    void shouldUseTheDefaultUserWithoutHeader() throws Exception {
+        AtomicInteger userId = new AtomicInteger();
+        when(service.findById(1)).thenAnswer(invocation -> {
+            userId.set(UserContext.getUserId());
+            return null;
+        });
+
+        mvc.perform(get("/log/1"))
+                .andExpect(status().isNotFound());
+
+        assertEquals(UserContext.DEFAULT_USER_ID, userId.get());
+    }
+
+    @Test
+    void shouldRejectInvalidUserId() throws Exception {
+        mvc.perform(get("/log/1").header(UserContextFilter.USER_ID_HEADER, "someone"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/log/1").header(UserContextFilter.USER_ID_HEADER, "0"))
+                .andExpect(status().isBadRequest());
+
+        verify(service, never()).findById(anyInt());
+    }
+
+    @Test
+    void shouldUseTheAuthenticatedUser() throws Exception {
+        AtomicInteger userId = new AtomicInteger();
+        when(service.findById(1)).thenAnswer(invocation -> {
+            userId.set(UserContext.getUserId());
+            return null;
+        });
+
+        mvc.perform(get("/log/1").principal(() -> "7"))
+                .andExpect(status().isNotFound());
+        assertEquals(7, userId.get());
+
+        mvc.perform(get("/log/1").principal(() -> "7").header(UserContextFilter.USER_ID_HEADER, "8"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void shouldTurnAwayUsersTheRepositoryDoesNotServe() throws Exception {
+        when(service.findById(1)).thenThrow(new InvalidDataAccessApiUsageException("only the default user"));
+
+        mvc.perform(get("/log/1").header(UserContextFilter.USER_ID_HEADER, "2"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldExportCsv() throws Exception {
+        List<LogEntry> entries = List.of(
+                new LogEntry(1, LocalDateTime.of(2020, 1, 1, 9, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(2, LocalDateTime.of(2020, 1, 1, 18, 0), LogEntryType.DINNER, "Steak, potatoes", 900)
+        );
+
+        doAnswer(invocation -> {
+            Consumer<LogEntry> consumer = invocation.getArgument(2);
+            entries.forEach(consumer);
+            return null;
+        }).when(service).streamByDateRange(eq(LocalDate.of(2020, 1, 1)), eq(LocalDate.of(2020, 1, 31)), any());
+
+        MvcResult result = mvc.perform(get("/log/export?format=csv&from=2020-01-01&to=2020-01-31"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andExpect(content().string("id,loggedOn,type,description,calories\n"
+                        + "1,2020-01-01 09:00:00,BREAKFAST,Coffee,10\n"
+                        + "2,2020-01-01 18:00:00,DINNER,\"Steak, potatoes\",900\n"));
+    }
+
+    @Test
+    void shouldExportNdjson() throws Exception {
+        LogEntry entry = new LogEntry(1, LocalDateTime.of(2020, 1, 1, 9, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+
+        doAnswer(invocation -> {
+            Consumer<LogEntry> consumer = invocation.getArgument(2);
+            consumer.accept(entry);
+            consumer.accept(entry);
+            return null;
+        }).when(service).streamByDateRange(isNull(), isNull(), any());
+
+        MvcResult result = mvc.perform(get("/log/export?format=ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String line = jsonMapper.writeValueAsString(entry);
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(line + "\n" + line + "\n"));
+    }
+
+    @Test
+    void shouldNotExportUnknownFormat() throws Exception {
+        mvc.perform(get("/log/export?format=xml"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldGetDailySummaries() throws Exception {
+        DailyCalorieSummary summary = new DailyCalorieSummary(LocalDate.of(2020, 9, 23));
+        summary.addCalories(LogEntryType.BREAKFAST, 400);
+        summary.addCalories(LogEntryType.LUNCH, 650);
+        List<DailyCalorieSummary> summaries = List.of(summary);
+
+        String expectedJson = jsonMapper.writeValueAsString(summaries);
+
+        when(service.findDailySummaries(LocalDate.of(2020, 9, 17), LocalDate.of(2020, 9, 23))).thenReturn(summaries);
+
+        mvc.perform(get("/log/summary/daily?from=2020-09-17&to=2020-09-23"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedJson));
+    }
+
+    @Test
+    void shouldNotGetDailySummariesWhenFromIsAfterTo() throws Exception {
+        mvc.perform(get("/log/summary/daily?from=2020-09-24&to=2020-09-23"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void shouldNotGetByNegativeLogEntryId() throws Exception {
         mvc.perform(get("/log/-1"))
@@ -70,9 +373,9 @@ public class LogEntryControllerTest {
 
     @Test
     void shouldGetById() throws Exception {
-        LogEntry entry = new LogEntry(1, "2020-01-01", LogEntryType.BREAKFAST, "Coffee", 10);
+        LogEntry entry = new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+        entry.setVersion(1);
 
-        ObjectMapper jsonMapper = new ObjectMapper();
         String expectedJson = jsonMapper.writeValueAsString(entry);
 
         when(service.findById(1)).thenReturn(entry);
@@ -80,18 +383,140 @@ public class LogEntryControllerTest {
         mvc.perform(get("/log/1"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"1-json\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
                 .andExpect(content().json(expectedJson));
+
+        // nothing to compare the version against, so it isn't read separately
+        verify(service, never()).findVersionById(anyInt());
+    }
+
+    @Test
+    void shouldGetByIdAsCbor() throws Exception {
+        LogEntry entry = new LogEntry(1, LocalDateTime.of(2020, 1, 1, 9, 30), LogEntryType.DINNER, "Tacos", 30);
+        entry.setVersion(1);
+
+        when(service.findById(1)).thenReturn(entry);
+
+        byte[] body = mvc.perform(get("/log/1").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"1-cbor\""))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode node = cborConverter.getObjectMapper().readTree(body);
+        assertEquals(LogEntryType.DINNER.getValue(), node.get("type").intValue());
+        assertEquals(epochMilli(entry.getLoggedOn()), node.get("loggedOn").longValue());
+        assertEquals("Tacos", node.get("description").textValue());
+    }
+
+    @Test
+    void shouldNotReadEntryWhenEtagMatches() throws Exception {
+        when(service.findVersionById(1)).thenReturn(3);
+
+        mvc.perform(get("/log/1").header(HttpHeaders.IF_NONE_MATCH, "W/\"3-json\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andExpect(content().string(""));
+
+        verify(service, never()).findById(1);
+    }
+
+    @Test
+    void shouldNotMatchAnEtagForAnotherMediaType() throws Exception {
+        LogEntry entry = new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+        entry.setVersion(3);
+        when(service.findVersionById(1)).thenReturn(3);
+        when(service.findById(1)).thenReturn(entry);
+
+        mvc.perform(get("/log/1")
+                        .accept(APPLICATION_SMILE)
+                        .header(HttpHeaders.IF_NONE_MATCH, "W/\"3-json\""))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_SMILE))
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"3-x-jackson-smile\""));
+    }
+
+    @Test
+    void shouldGetEntryWhenEtagIsStale() throws Exception {
+        LogEntry entry = new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+        entry.setVersion(4);
+        when(service.findVersionById(1)).thenReturn(4);
+        when(service.findById(1)).thenReturn(entry);
+
+        mvc.perform(get("/log/1").header(HttpHeaders.IF_NONE_MATCH, "W/\"3-json\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"4-json\""));
+    }
+
+    @Test
+    void shouldNotReadListWhenCollectionIsUnchanged() throws Exception {
+        when(service.findCollectionVersion()).thenReturn(42L);
+
+        mvc.perform(get("/log").header(HttpHeaders.IF_NONE_MATCH, "W/\"42-json\""))
+                .andExpect(status().isNotModified());
+
+        verify(service, never()).findAll();
+    }
+
+    @Test
+    void shouldGetListWhenCollectionHasChanged() throws Exception {
+        when(service.findCollectionVersion()).thenReturn(43L);
+        when(service.findAll()).thenReturn(List.of());
+
+        mvc.perform(get("/log").header(HttpHeaders.IF_NONE_MATCH, "W/\"42-json\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"43-json\""))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT));
+    }
+
+    @Test
+    void shouldTagDailySummariesWithTheirRange() throws Exception {
+        when(service.findCollectionVersion()).thenReturn(42L);
+
+        mvc.perform(get("/log/summary/daily?from=2020-09-17&to=2020-09-23")
+                        .header(HttpHeaders.IF_NONE_MATCH, "W/\"42-2020-09-17-2020-09-23-json\""))
+                .andExpect(status().isNotModified());
+
+        verify(service, never()).findDailySummaries(any(), any());
+    }
+
+    @Test
+    void shouldGetReports() throws Exception {
+        CalorieReport week = new CalorieReport(7, null, LocalDate.of(2020, 9, 23));
+        week.setTotalCalories(9000);
+        week.setLoggedDays(5);
+        week.setPreviousTotalCalories(7200);
+        week.setPreviousLoggedDays(4);
+        List<CalorieReport> reports = List.of(week);
+
+        String expectedJson = jsonMapper.writeValueAsString(reports);
+
+        when(service.findReports()).thenReturn(reports);
+
+        mvc.perform(get("/log/reports"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedJson))
+                .andExpect(content().json("[{\"periodDays\":7,\"averageCalories\":1800.0,\"trend\":0.0}]"));
+    }
+
+    @Test
+    void shouldNotFindReportsWhenTheyAreOff() throws Exception {
+        when(service.findReports()).thenReturn(null);
+
+        mvc.perform(get("/log/reports"))
+                .andExpect(status().isNotFound());
     }
 
     @Test
     void shouldAdd() throws Exception {
-        LogEntry entryIn = new LogEntry(0, "2020-01-01", LogEntryType.BREAKFAST, "Coffee", 10);
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
         LogEntryResult expected = new LogEntryResult();
-        expected.setPayload(new LogEntry(1, "2020-01-01", LogEntryType.BREAKFAST, "Coffee", 10));
+        expected.setPayload(new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10));
 
         when(service.create(any())).thenReturn(expected);
 
-        ObjectMapper jsonMapper = new ObjectMapper();
         String jsonIn = jsonMapper.writeValueAsString(entryIn);
         String expectedJson = jsonMapper.writeValueAsString(expected);
 
@@ -105,15 +530,54 @@ public class LogEntryControllerTest {
                 .andExpect(content().json(expectedJson));
     }
 
+    @Test
+    void shouldAcceptLegacyLoggedOnFormat() throws Exception {
+        LogEntryResult expected = new LogEntryResult();
+        expected.setPayload(new LogEntry(1, LocalDateTime.of(2020, 1, 1, 9, 0), LogEntryType.BREAKFAST, "Coffee", 10));
+
+        when(service.create(any())).thenReturn(expected);
+
+        var request = post("/log")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"loggedOn\":\"2020-01-01 9:00 AM\",\"type\":\"BREAKFAST\",\"description\":\"Coffee\",\"calories\":10}");
+
+        mvc.perform(request)
+                .andExpect(status().isCreated());
+
+        verify(service).create(argThat(entry -> LocalDateTime.of(2020, 1, 1, 9, 0).equals(entry.getLoggedOn())));
+    }
+
+    @Test
+    void shouldNotAddWithUnknownLoggedOnFormat() throws Exception {
+        var request = post("/log")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"loggedOn\":\"asdf\",\"type\":\"BREAKFAST\",\"description\":\"Coffee\",\"calories\":10}");
+
+        mvc.perform(request)
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldAskClientToRetryWhenQueueIsFull() throws Exception {
+        when(service.create(any())).thenThrow(new TransientDataAccessResourceException("queue is full"));
+
+        var request = post("/log")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"loggedOn\":\"2020-01-01T00:00:00\",\"type\":\"BREAKFAST\",\"description\":\"Coffee\",\"calories\":10}");
+
+        mvc.perform(request)
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
     @Test
     void shouldNotAddIfServiceFails() throws Exception {
-        LogEntry entryIn = new LogEntry(0, "2020-01-01", LogEntryType.BREAKFAST, "Coffee", 10);
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
         LogEntryResult expected = new LogEntryResult();
         expected.addMessage("It didn't work");
 
         when(service.create(any())).thenReturn(expected);
 
-        ObjectMapper jsonMapper = new ObjectMapper();
         String jsonIn = jsonMapper.writeValueAsString(entryIn);
         String expectedJson = jsonMapper.writeValueAsString(expected);
 
@@ -127,15 +591,119 @@ public class LogEntryControllerTest {
                 .andExpect(content().json(expectedJson));
     }
 
+    @Test
+    void shouldAddBatch() throws Exception {
+        List<LogEntry> entriesIn = List.of(
+                new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.LUNCH, "Salad", 20)
+        );
+        LogEntryResult first = new LogEntryResult();
+        first.setPayload(new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10));
+        LogEntryResult second = new LogEntryResult();
+        second.setPayload(new LogEntry(2, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.LUNCH, "Salad", 20));
+        List<LogEntryResult> expected = List.of(first, second);
+
+        when(service.createAll(any())).thenReturn(expected);
+
+        String jsonIn = jsonMapper.writeValueAsString(entriesIn);
+        String expectedJson = jsonMapper.writeValueAsString(expected);
+
+        var request = post("/log/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(jsonIn);
+
+        mvc.perform(request)
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedJson));
+    }
+
+    @Test
+    void shouldAddBatchAsSmile() throws Exception {
+        LocalDateTime loggedOn = LocalDateTime.of(2020, 1, 1, 7, 0);
+        LogEntryResult created = new LogEntryResult();
+        created.setPayload(new LogEntry(1, loggedOn, LogEntryType.SECOND_BREAKFAST, "Eggs", 150));
+
+        when(service.createAll(any())).thenReturn(List.of(created));
+
+        ObjectMapper smileMapper = smileConverter.getObjectMapper();
+        byte[] smileIn = smileMapper.writeValueAsBytes(List.of(Map.of(
+                "loggedOn", epochMilli(loggedOn),
+                "type", LogEntryType.SECOND_BREAKFAST.getValue(),
+                "description", "Eggs",
+                "calories", 150)));
+
+        var request = post("/log/batch")
+                .contentType(APPLICATION_SMILE)
+                .accept(APPLICATION_SMILE)
+                .content(smileIn);
+
+        byte[] body = mvc.perform(request)
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(APPLICATION_SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        verify(service).createAll(argThat(entries -> entries.size() == 1
+                && entries.get(0).getType() == LogEntryType.SECOND_BREAKFAST
+                && entries.get(0).getLoggedOn().equals(loggedOn)));
+        JsonNode results = smileMapper.readTree(body);
+        assertEquals(LogEntryType.SECOND_BREAKFAST.getValue(), results.get(0).get("payload").get("type").intValue());
+        assertEquals("SUCCESS", results.get(0).get("type").textValue());
+    }
+
+    @Test
+    void shouldNotAddBatchIfServiceFails() throws Exception {
+        List<LogEntry> entriesIn = List.of(
+                new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.LUNCH, "Salad", -20)
+        );
+        LogEntryResult first = new LogEntryResult();
+        first.addMessage("It didn't work");
+        LogEntryResult second = new LogEntryResult();
+        second.addMessage("It didn't work");
+        List<LogEntryResult> expected = List.of(first, second);
+
+        when(service.createAll(any())).thenReturn(expected);
+
+        String jsonIn = jsonMapper.writeValueAsString(entriesIn);
+        String expectedJson = jsonMapper.writeValueAsString(expected);
+
+        var request = post("/log/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(jsonIn);
+
+        mvc.perform(request)
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedJson));
+    }
+
+    @Test
+    void shouldImportCsv() throws Exception {
+        String csv = "id,loggedOn,type,description,calories\n1,2020-01-01 9:00 AM,BREAKFAST,Scrambled eggs,210\n";
+        LogEntryImportReport report = new LogEntryImportReport();
+
+        when(importer.importCsv(any())).thenReturn(report);
+
+        var request = post("/log/import")
+                .contentType("text/csv")
+                .content(csv);
+
+        mvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(jsonMapper.writeValueAsString(report)));
+    }
+
     @Test
     void shouldUpdate() throws Exception {
-        LogEntry entryIn = new LogEntry(0, "2020-01-01", LogEntryType.BREAKFAST, "Coffee", 10);
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+        entryIn.setVersion(1);
         LogEntryResult expected = new LogEntryResult();
-        expected.setPayload(new LogEntry(1, "2020-01-01", LogEntryType.BREAKFAST, "Coffee", 10));
+        expected.setPayload(new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10));
 
         when(service.update(any())).thenReturn(expected);
 
-        ObjectMapper jsonMapper = new ObjectMapper();
         String jsonIn = jsonMapper.writeValueAsString(entryIn);
         String expectedJson = jsonMapper.writeValueAsString(expected);
 
@@ -149,19 +717,85 @@ public class LogEntryControllerTest {
                 .andExpect(content().json(expectedJson));
     }
 
+    @Test
+    void shouldReturnConflictForStaleVersion() throws Exception {
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+        LogEntryResult expected = new LogEntryResult();
+        expected.addMessage("log entry was changed by someone else, reload it and try again", ResultType.CONFLICT);
+
+        when(service.update(argThat(entry -> entry.getVersion() == 3))).thenReturn(expected);
+
+        var request = put("/log/1")
+                .header(HttpHeaders.IF_MATCH, "W/\"3-cbor\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(jsonMapper.writeValueAsString(entryIn));
+
+        mvc.perform(request)
+                .andExpect(status().isConflict())
+                .andExpect(content().json(jsonMapper.writeValueAsString(expected)));
+    }
+
+    @Test
+    void shouldRequireAVersionToUpdate() throws Exception {
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+
+        var request = put("/log/1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(jsonMapper.writeValueAsString(entryIn));
+
+        mvc.perform(request)
+                .andExpect(status().isPreconditionRequired());
+
+        verify(service, never()).update(any());
+    }
+
+    @Test
+    void shouldFailUpdateWithMalformedIfMatch() throws Exception {
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+
+        for (String ifMatch : List.of("3", "W/\"three\"", "\"0\"", "W/\"3-xml\"")) {
+            var request = put("/log/1")
+                    .header(HttpHeaders.IF_MATCH, ifMatch)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(jsonMapper.writeValueAsString(entryIn));
+
+            mvc.perform(request)
+                    .andExpect(status().isPreconditionFailed());
+        }
+
+        verify(service, never()).update(any());
+    }
+
+    @Test
+    void shouldUpdateUnconditionallyWithIfMatchAny() throws Exception {
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+        LogEntryResult expected = new LogEntryResult();
+        expected.setPayload(new LogEntry(1, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10));
+
+        when(service.update(argThat(entry -> entry.getVersion() == 0))).thenReturn(expected);
+
+        var request = put("/log/1")
+                .header(HttpHeaders.IF_MATCH, "*")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(jsonMapper.writeValueAsString(entryIn));
+
+        mvc.perform(request)
+                .andExpect(status().isOk());
+    }
+
     @Test
     void shouldNotUpdateIfServiceFails() throws Exception {
-        LogEntry entryIn = new LogEntry(0, "2020-01-01", LogEntryType.BREAKFAST, "Coffee", 10);
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10);
         LogEntryResult expected = new LogEntryResult();
         expected.addMessage("It didn't work");
 
         when(service.update(any())).thenReturn(expected);
 
-        ObjectMapper jsonMapper = new ObjectMapper();
         String jsonIn = jsonMapper.writeValueAsString(entryIn);
         String expectedJson = jsonMapper.writeValueAsString(expected);
 
         var request = put("/log/1")
+                .header(HttpHeaders.IF_MATCH, "*")
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(jsonIn);
 
@@ -186,4 +820,8 @@ public class LogEntryControllerTest {
         mvc.perform(delete("/log/1"))
                 .andExpect(status().isNotFound());
     }
+
+    private static long epochMilli(LocalDateTime loggedOn) {
+        return loggedOn.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
 }
@@ -0,0 +1,72 @@
+package learn.calorietracker.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import learn.calorietracker.domain.LogEntryService;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class LogEntryReactiveControllerTest {
+
+    @MockBean
+    LogEntryService service;
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    ObjectMapper jsonMapper;
+
+    @Test
+    void shouldStreamEntriesAsJsonLines() throws Exception {
+        LogEntry coffee = new LogEntry(1, LocalDateTime.of(2020, 1, 1, 9, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+        LogEntry toast = new LogEntry(2, LocalDateTime.of(2020, 1, 1, 9, 5), LogEntryType.BREAKFAST, "Toast", 90);
+        LocalDate day = LocalDate.of(2020, 1, 1);
+        when(service.findAllAsFlux(eq(day), eq(day), eq(LogEntryType.BREAKFAST))).thenReturn(Flux.just(coffee, toast));
+
+        MvcResult result = mvc.perform(get("/log/reactive?from=2020-01-01&to=2020-01-01&type=BREAKFAST")
+                        .accept(MediaType.APPLICATION_STREAM_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_STREAM_JSON))
+                .andExpect(content().string(jsonMapper.writeValueAsString(coffee) + "\n"
+                        + jsonMapper.writeValueAsString(toast) + "\n"));
+    }
+
+    @Test
+    void shouldNotStreamBackwardsDateRange() throws Exception {
+        mvc.perform(get("/log/reactive?from=2020-01-02&to=2020-01-01")
+                        .accept(MediaType.APPLICATION_STREAM_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(service, never()).findAllAsFlux(any(), any(), isNull());
+    }
+}
@@ -0,0 +1,51 @@
+package learn.calorietracker.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import learn.calorietracker.domain.LogEntryResult;
+import learn.calorietracker.domain.ResultType;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogEntrySerializerTest {
+
+    @Test
+    void shouldWriteWhatTheReflectiveSerializerWrites() throws Exception {
+        // Boot's default: dates as ISO strings
+        assertSameJson(Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+    }
+
+    @Test
+    void shouldFollowTheMapperDateSettings() throws Exception {
+        assertSameJson(Jackson2ObjectMapperBuilder.json().featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
+    }
+
+    private static void assertSameJson(Jackson2ObjectMapperBuilder builder) throws Exception {
+        ObjectMapper reflective = builder.build();
+        ObjectMapper direct = builder.build().registerModule(new SimpleModule()
+                .addSerializer(new LogEntrySerializer())
+                .addSerializer(new LogEntryResultSerializer()));
+
+        LogEntry entry = new LogEntry(3, LocalDateTime.of(2020, 1, 1, 9, 0, 15), LogEntryType.SECOND_BREAKFAST,
+                "Toast, \"buttered\"", 300);
+        entry.setUserId(2);
+        entry.setVersion(4);
+        LogEntryResult success = new LogEntryResult();
+        success.setPayload(entry);
+        LogEntryResult conflict = new LogEntryResult();
+        conflict.addMessage("Log entry has changed.", ResultType.CONFLICT);
+        conflict.addMessage("Calories must be positive.");
+
+        for (Object value : List.of(entry, new LogEntry(), List.of(entry, entry), success, conflict, new LogEntryResult())) {
+            assertEquals(reflective.writeValueAsString(value), direct.writeValueAsString(value));
+        }
+    }
+}
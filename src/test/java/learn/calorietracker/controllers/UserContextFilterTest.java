@@ -0,0 +1,50 @@
+package learn.calorietracker.controllers;
+
+import learn.calorietracker.data.UserContext;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UserContextFilterTest {
+
+    @Test
+    void shouldRefuseTheHeaderUnlessTrusted() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/log/1");
+        request.addHeader(UserContextFilter.USER_ID_HEADER, "2");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        new UserContextFilter(false).doFilter(request, response, chain);
+
+        assertEquals(403, response.getStatus());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void shouldUseTheHeaderFromATrustedProxy() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/log/1");
+        request.addHeader(UserContextFilter.USER_ID_HEADER, "2");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicInteger userId = new AtomicInteger();
+
+        new UserContextFilter(true).doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                userId.set(UserContext.getUserId());
+            }
+        }));
+
+        assertEquals(200, response.getStatus());
+        assertEquals(2, userId.get());
+        assertEquals(UserContext.DEFAULT_USER_ID, UserContext.getUserId());
+    }
+}
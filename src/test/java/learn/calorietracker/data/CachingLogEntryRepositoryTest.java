@@ -0,0 +1,219 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CachingLogEntryRepositoryTest {
+
+    LogEntryRepository delegate;
+    AtomicLong clock;
+    CachingLogEntryRepository repository;
+
+    @BeforeEach
+    void setup() {
+        delegate = mock(LogEntryRepository.class);
+        clock = new AtomicLong();
+        repository = new CachingLogEntryRepository(delegate, 2, Duration.ofMinutes(1), clock::get);
+    }
+
+    @AfterEach
+    void teardown() {
+        UserContext.clear();
+    }
+
+    @Test
+    void shouldServeRepeatedFindByIdFromCache() {
+        when(delegate.findById(1)).thenReturn(makeEntry(1, LogEntryType.BREAKFAST));
+
+        repository.findById(1);
+        LogEntry entry = repository.findById(1);
+
+        assertEquals(1, entry.getId());
+        verify(delegate, times(1)).findById(1);
+        assertEquals(1, repository.getHits());
+        assertEquals(1, repository.getMisses());
+    }
+
+    @Test
+    void shouldNotShareCachedEntriesBetweenUsers() {
+        when(delegate.findById(1)).thenReturn(makeEntry(1, LogEntryType.BREAKFAST), (LogEntry) null);
+        repository.findById(1);
+
+        UserContext.setUserId(2);
+
+        assertNull(repository.findById(1));
+        verify(delegate, times(2)).findById(1);
+    }
+
+    @Test
+    void shouldNotCacheMissingEntries() {
+        repository.findById(1);
+        repository.findById(1);
+
+        verify(delegate, times(2)).findById(1);
+    }
+
+    @Test
+    void shouldExpireAfterTtl() {
+        when(delegate.findById(1)).thenReturn(makeEntry(1, LogEntryType.BREAKFAST));
+
+        repository.findById(1);
+        clock.addAndGet(Duration.ofMinutes(2).toNanos());
+        repository.findById(1);
+
+        verify(delegate, times(2)).findById(1);
+        assertEquals(1, repository.getEvictions());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedWhenFull() {
+        when(delegate.findById(anyInt())).thenAnswer(invocation -> makeEntry(invocation.getArgument(0), LogEntryType.LUNCH));
+
+        repository.findById(1);
+        repository.findById(2);
+        repository.findById(1);
+        repository.findById(3); // evicts 2
+
+        repository.findById(1);
+        repository.findById(2);
+
+        verify(delegate, times(1)).findById(1);
+        verify(delegate, times(2)).findById(2);
+        assertEquals(2, repository.getEvictions());
+    }
+
+    @Test
+    void shouldInvalidateOnUpdate() {
+        when(delegate.findById(1)).thenReturn(makeEntry(1, LogEntryType.BREAKFAST));
+        when(delegate.findByType(LogEntryType.BREAKFAST)).thenReturn(List.of(makeEntry(1, LogEntryType.BREAKFAST)));
+        when(delegate.findByType(LogEntryType.DINNER)).thenReturn(List.of());
+
+        repository.findById(1);
+        repository.findByType(LogEntryType.BREAKFAST);
+        repository.findByType(LogEntryType.DINNER);
+
+        // moves the entry from breakfast to lunch; dinner isn't affected
+        repository.update(makeEntry(1, LogEntryType.LUNCH));
+
+        repository.findById(1);
+        repository.findByType(LogEntryType.BREAKFAST);
+        repository.findByType(LogEntryType.DINNER);
+
+        verify(delegate, times(2)).findById(1);
+        verify(delegate, times(2)).findByType(LogEntryType.BREAKFAST);
+        verify(delegate, times(1)).findByType(LogEntryType.DINNER);
+    }
+
+    @Test
+    void shouldInvalidateOnConflict() {
+        when(delegate.findById(1)).thenReturn(makeEntry(1, LogEntryType.BREAKFAST));
+        when(delegate.update(any())).thenThrow(new OptimisticLockingFailureException("changed"));
+
+        repository.findById(1);
+        assertThrows(OptimisticLockingFailureException.class, () -> repository.update(makeEntry(1, LogEntryType.BREAKFAST)));
+        repository.findById(1);
+
+        verify(delegate, times(2)).findById(1);
+    }
+
+    @Test
+    void shouldInvalidateTypeOnCreate() {
+        LogEntry entry = makeEntry(0, LogEntryType.SNACK);
+        when(delegate.findByType(LogEntryType.SNACK)).thenReturn(List.of());
+
+        repository.findByType(LogEntryType.SNACK);
+        repository.create(entry);
+        repository.findByType(LogEntryType.SNACK);
+
+        verify(delegate, times(2)).findByType(LogEntryType.SNACK);
+    }
+
+    @Test
+    void shouldInvalidateOnDelete() {
+        when(delegate.findById(1)).thenReturn(makeEntry(1, LogEntryType.BREAKFAST));
+
+        repository.findById(1);
+        repository.delete(1);
+        repository.findById(1);
+
+        verify(delegate, times(2)).findById(1);
+    }
+
+    @Test
+    void shouldNotLetCallersChangeCachedEntries() {
+        when(delegate.findById(1)).thenReturn(makeEntry(1, LogEntryType.BREAKFAST));
+
+        repository.findById(1).setCalories(999);
+        LogEntry hit = repository.findById(1);
+        hit.setDescription("Changed");
+
+        LogEntry entry = repository.findById(1);
+        assertEquals(10, entry.getCalories());
+        assertEquals("Coffee", entry.getDescription());
+        assertNotSame(hit, entry);
+        verify(delegate, times(1)).findById(1);
+    }
+
+    @Test
+    void shouldNotLetCallersChangeCachedTypeLists() {
+        when(delegate.findByType(LogEntryType.BREAKFAST)).thenReturn(List.of(makeEntry(1, LogEntryType.BREAKFAST)));
+
+        repository.findByType(LogEntryType.BREAKFAST).get(0).setCalories(999);
+        repository.findByType(LogEntryType.BREAKFAST).get(0).setCalories(999);
+
+        assertEquals(10, repository.findByType(LogEntryType.BREAKFAST).get(0).getCalories());
+        verify(delegate, times(1)).findByType(LogEntryType.BREAKFAST);
+    }
+
+    @Test
+    void shouldServeVersionFromCachedEntry() {
+        LogEntry entry = makeEntry(1, LogEntryType.BREAKFAST);
+        entry.setVersion(3);
+        when(delegate.findById(1)).thenReturn(entry);
+
+        assertEquals(3, repository.findVersionById(1));
+        assertEquals(3, repository.findVersionById(1));
+        repository.findById(1);
+
+        verify(delegate, times(1)).findById(1);
+        verify(delegate, never()).findVersionById(anyInt());
+    }
+
+    @Test
+    void shouldCacheCollectionVersionUntilAWrite() {
+        when(delegate.findCollectionVersion()).thenReturn(4L, 5L);
+
+        assertEquals(4L, repository.findCollectionVersion());
+        assertEquals(4L, repository.findCollectionVersion());
+        repository.create(makeEntry(0, LogEntryType.SNACK));
+        assertEquals(5L, repository.findCollectionVersion());
+
+        verify(delegate, times(2)).findCollectionVersion();
+    }
+
+    @Test
+    void shouldNotShareCollectionVersionBetweenUsers() {
+        when(delegate.findCollectionVersion()).thenReturn(4L, 9L);
+        repository.findCollectionVersion();
+
+        UserContext.setUserId(2);
+
+        assertEquals(9L, repository.findCollectionVersion());
+    }
+
+    private LogEntry makeEntry(int id, LogEntryType type) {
+        return new LogEntry(id, LocalDateTime.of(2020, 1, 1, 9, 0), type, "Coffee", 10);
+    }
+}
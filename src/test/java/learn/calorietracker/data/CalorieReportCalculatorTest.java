@@ -0,0 +1,147 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.data.CalorieReportCalculator.Day;
+import learn.calorietracker.models.CalorieReport;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CalorieReportCalculatorTest {
+
+    static final LocalDate TODAY = LocalDate.of(2020, 3, 1);
+
+    @Test
+    void shouldAverageOverLoggedDaysAndCompareWithThePeriodBefore() {
+        Map<LocalDate, Day> days = new HashMap<>();
+        days.put(TODAY, day(LogEntryType.BREAKFAST, 300, LogEntryType.DINNER, 900));
+        days.put(TODAY.minusDays(6), day(LogEntryType.BREAKFAST, 500, LogEntryType.DINNER, 700));
+        // the week before
+        days.put(TODAY.minusDays(7), day(LogEntryType.BREAKFAST, 400, LogEntryType.DINNER, 400));
+        // only in the 30 and 365-day periods
+        days.put(TODAY.minusDays(20), day(LogEntryType.SNACK, 100, LogEntryType.SNACK, 0));
+        // too old for any period
+        days.put(TODAY.minusDays(730), day(LogEntryType.LUNCH, 1000, LogEntryType.LUNCH, 0));
+
+        List<CalorieReport> reports = CalorieReportCalculator.advance(List.of(), TODAY, Map.of(), days);
+
+        CalorieReport week = find(reports, 7, null);
+        assertEquals(2400, week.getTotalCalories());
+        assertEquals(2, week.getLoggedDays());
+        assertEquals(1200, week.getAverageCalories());
+        assertEquals(800, week.getPreviousAverageCalories());
+        assertEquals(400, week.getTrend());
+
+        CalorieReport weekBreakfast = find(reports, 7, LogEntryType.BREAKFAST);
+        assertEquals(400, weekBreakfast.getAverageCalories());
+        assertEquals(0, weekBreakfast.getTrend());
+        assertNull(find(reports, 7, LogEntryType.SNACK));
+
+        CalorieReport month = find(reports, 30, null);
+        assertEquals(4, month.getLoggedDays());
+        assertEquals(3300, month.getTotalCalories());
+        assertEquals(0, month.getPreviousLoggedDays());
+        assertNull(find(reports, 365, LogEntryType.LUNCH));
+    }
+
+    @Test
+    void shouldOnlyCrossTheDaysAtWindowEdges() {
+        // one day on: for each period a day enters, one moves to the period before, one drops out
+        Set<LocalDate> expected = new TreeSet<>();
+        for (int periodDays : CalorieReportCalculator.PERIOD_DAYS) {
+            expected.add(TODAY.minusDays(periodDays - 1));
+            expected.add(TODAY.minusDays(2L * periodDays - 1));
+        }
+        expected.add(TODAY.plusDays(1));
+
+        assertEquals(expected, CalorieReportCalculator.crossingDays(TODAY, TODAY.plusDays(1)));
+        assertTrue(CalorieReportCalculator.crossingDays(TODAY, TODAY).isEmpty());
+    }
+
+    @Test
+    void shouldMatchAFullBuildAfterMovingAndChangingDays() {
+        Random random = new Random(42);
+        Map<LocalDate, Day> days = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            addEntry(days, TODAY.minusDays(random.nextInt(CalorieReportCalculator.HISTORY_DAYS + 30)), random, 1);
+        }
+
+        LocalDate asOf = TODAY;
+        List<CalorieReport> reports = CalorieReportCalculator.advance(List.of(), asOf, Map.of(), days);
+        for (int step = 0; step < 200; step++) {
+            LocalDate next = asOf.plusDays(random.nextInt(4));
+
+            // a few entries added or taken away, some of them on days the reports can't see yet
+            Map<LocalDate, Day> before = new HashMap<>();
+            for (LocalDate day : CalorieReportCalculator.crossingDays(asOf, next)) {
+                before.put(day, days.getOrDefault(day, new Day()).copy());
+            }
+            for (int i = random.nextInt(4); i > 0; i--) {
+                LocalDate day = next.minusDays(random.nextInt(CalorieReportCalculator.HISTORY_DAYS + 5) - 3);
+                before.computeIfAbsent(day, d -> days.getOrDefault(d, new Day()).copy());
+                addEntry(days, day, random, random.nextInt(3) == 0 ? -1 : 1);
+            }
+            Map<LocalDate, Day> after = new HashMap<>();
+            for (LocalDate day : before.keySet()) {
+                after.put(day, days.getOrDefault(day, new Day()).copy());
+            }
+
+            reports = CalorieReportCalculator.advance(reports, next, before, after);
+            asOf = next;
+            assertEquals(describe(CalorieReportCalculator.advance(List.of(), asOf, Map.of(), days)), describe(reports),
+                    "after step " + step);
+        }
+    }
+
+    // adds an entry, or takes one away again if the day has one
+    private static void addEntry(Map<LocalDate, Day> days, LocalDate date, Random random, int sign) {
+        Day day = days.computeIfAbsent(date, d -> new Day());
+        if (sign < 0) {
+            for (LogEntryType type : LogEntryType.values()) {
+                if (day.getEntries(type) > 0) {
+                    day.add(type, -caloriesPerEntry(type), -1);
+                    return;
+                }
+            }
+        }
+        LogEntryType type = LogEntryType.values()[random.nextInt(LogEntryType.values().length)];
+        day.add(type, caloriesPerEntry(type), 1);
+    }
+
+    // every entry of a type has the same calories, so taking one away never leaves a negative total
+    private static int caloriesPerEntry(LogEntryType type) {
+        return 100 * (type.ordinal() + 1);
+    }
+
+    private static String describe(List<CalorieReport> reports) {
+        return reports.stream()
+                .map(report -> report.getPeriodDays() + "/" + report.getType() + "@" + report.getAsOf() + ": "
+                        + report.getTotalCalories() + " in " + report.getLoggedDays() + ", "
+                        + report.getPreviousTotalCalories() + " in " + report.getPreviousLoggedDays())
+                .sorted()
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static CalorieReport find(List<CalorieReport> reports, int periodDays, LogEntryType type) {
+        return reports.stream()
+                .filter(report -> report.getPeriodDays() == periodDays && report.getType() == type)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static Day day(LogEntryType first, int firstCalories, LogEntryType second, int secondCalories) {
+        Day day = new Day();
+        day.add(first, firstCalories, 1);
+        day.add(second, secondCalories, 1);
+        return day;
+    }
+}
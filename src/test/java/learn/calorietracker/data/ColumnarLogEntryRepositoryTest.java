@@ -0,0 +1,207 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.DailyCalorieSummary;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ColumnarLogEntryRepositoryTest {
+
+    static final LocalDate DAY_ONE = LocalDate.of(2020, 1, 1);
+    static final LocalDate DAY_TWO = LocalDate.of(2020, 1, 2);
+
+    LogEntryRepository delegate;
+    ColumnarLogEntryRepository repository;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        delegate = mock(LogEntryRepository.class);
+        List<LogEntry> stored = List.of(
+                new LogEntry(1, DAY_ONE.atTime(9, 0), LogEntryType.BREAKFAST, "Eggs", 200),
+                new LogEntry(2, DAY_ONE.atTime(12, 0), LogEntryType.LUNCH, "Salad", 300),
+                new LogEntry(3, DAY_TWO.atTime(8, 0), LogEntryType.BREAKFAST, "Eggs", 250),
+                new LogEntry(4, DAY_ONE.atTime(7, 0), LogEntryType.SNACK, "Coffee", 10));
+        doAnswer(invocation -> {
+            stored.forEach(invocation.getArgument(0, Consumer.class));
+            return null;
+        }).when(delegate).streamAll(any());
+
+        repository = new ColumnarLogEntryRepository(delegate);
+        repository.load();
+    }
+
+    @AfterEach
+    void teardown() {
+        UserContext.clear();
+    }
+
+    @Test
+    void shouldLoadEverything() {
+        List<LogEntry> all = repository.findAll();
+
+        assertEquals(List.of(1, 2, 3, 4), ids(all));
+        assertEquals("Eggs", all.get(2).getDescription());
+        assertEquals(DAY_TWO.atTime(8, 0), all.get(2).getLoggedOn());
+        assertEquals(LogEntryType.BREAKFAST, all.get(2).getType());
+        assertEquals(250, all.get(2).getCalories());
+    }
+
+    @Test
+    void shouldFindPage() {
+        assertEquals(List.of(2, 3), ids(repository.findPage(1, 2)));
+        assertEquals(List.of(4), ids(repository.findPage(3, 2)));
+        assertTrue(repository.findPage(4, 2).isEmpty());
+    }
+
+    @Test
+    void shouldFindFilteredPage() {
+        assertEquals(List.of(1, 3), ids(repository.findPage(0, 10, DAY_ONE, DAY_TWO, LogEntryType.BREAKFAST)));
+        assertEquals(List.of(2, 4), ids(repository.findPage(1, 10, DAY_ONE, DAY_ONE, null)));
+        assertEquals(List.of(2), ids(repository.findPage(1, 1, DAY_ONE, DAY_ONE, null)));
+        assertTrue(repository.findPage(3, 10, DAY_ONE, DAY_TWO, LogEntryType.BREAKFAST).isEmpty());
+    }
+
+    @Test
+    void shouldFindByType() {
+        assertEquals(List.of(1, 3), ids(repository.findByType(LogEntryType.BREAKFAST)));
+        assertTrue(repository.findByType(LogEntryType.DINNER).isEmpty());
+    }
+
+    @Test
+    void shouldFindByDateRangeInLoggedOnOrder() {
+        assertEquals(List.of(4, 1, 2), ids(repository.findByDateRange(DAY_ONE, DAY_ONE)));
+        assertEquals(List.of(4, 1, 2, 3), ids(repository.findByDateRange(DAY_ONE, DAY_TWO)));
+        assertEquals(List.of(1, 3), ids(repository.findByDateRangeAndType(DAY_ONE, DAY_TWO, LogEntryType.BREAKFAST)));
+    }
+
+    @Test
+    void shouldStreamByDateRange() {
+        List<LogEntry> streamed = new ArrayList<>();
+        repository.streamByDateRange(DAY_TWO, LocalDate.of(2020, 12, 31), streamed::add);
+
+        assertEquals(List.of(3), ids(streamed));
+    }
+
+    @Test
+    void shouldFindDailySummariesNewestFirst() {
+        List<DailyCalorieSummary> summaries = repository.findDailySummaries(DAY_ONE, DAY_TWO);
+
+        assertEquals(2, summaries.size());
+        assertEquals(DAY_TWO, summaries.get(0).getDate());
+        assertEquals(250, summaries.get(0).getTotalCalories());
+        assertEquals(DAY_ONE, summaries.get(1).getDate());
+        assertEquals(510, summaries.get(1).getTotalCalories());
+        assertEquals(300, summaries.get(1).getCaloriesByType().get(LogEntryType.LUNCH));
+    }
+
+    @Test
+    void shouldAddCreatedEntry() {
+        LogEntry entry = new LogEntry(0, DAY_TWO.atTime(18, 0), LogEntryType.DINNER, "Tacos", 700);
+        when(delegate.create(entry)).thenReturn(new LogEntry(5, DAY_TWO.atTime(18, 0), LogEntryType.DINNER, "Tacos", 700));
+
+        repository.create(entry);
+
+        assertEquals("Tacos", repository.findById(5).getDescription());
+        assertEquals(List.of(5), ids(repository.findByType(LogEntryType.DINNER)));
+        assertEquals(950, repository.findDailySummaries(DAY_TWO, DAY_TWO).get(0).getTotalCalories());
+    }
+
+    @Test
+    void shouldMoveUpdatedEntryBetweenIndexes() {
+        LogEntry entry = new LogEntry(1, DAY_TWO.atTime(20, 0), LogEntryType.DINNER, "Pasta", 600);
+        when(delegate.update(entry)).thenReturn(true);
+
+        assertTrue(repository.update(entry));
+
+        assertEquals(List.of(3), ids(repository.findByType(LogEntryType.BREAKFAST)));
+        assertEquals(List.of(1), ids(repository.findByType(LogEntryType.DINNER)));
+        assertEquals(List.of(3, 1), ids(repository.findByDateRange(DAY_TWO, DAY_TWO)));
+        assertEquals("Pasta", repository.findById(1).getDescription());
+    }
+
+    @Test
+    void shouldKeepVersionSetByBackingRepository() {
+        LogEntry entry = new LogEntry(2, DAY_ONE.atTime(12, 0), LogEntryType.LUNCH, "Soup", 250);
+        when(delegate.update(entry)).thenAnswer(invocation -> {
+            entry.setVersion(2);
+            return true;
+        });
+
+        repository.update(entry);
+
+        assertEquals(2, repository.findVersionById(2));
+        assertEquals(2, repository.findById(2).getVersion());
+        assertEquals(0, repository.findVersionById(99));
+    }
+
+    @Test
+    void shouldNotUpdateWhenBackingRepositoryFails() {
+        LogEntry entry = new LogEntry(1, DAY_TWO.atTime(20, 0), LogEntryType.DINNER, "Pasta", 600);
+
+        assertFalse(repository.update(entry));
+
+        assertEquals("Eggs", repository.findById(1).getDescription());
+    }
+
+    @Test
+    void shouldDelete() {
+        when(delegate.delete(2)).thenReturn(true);
+
+        assertTrue(repository.delete(2));
+
+        assertNull(repository.findById(2));
+        assertEquals(3, repository.size());
+        assertEquals(List.of(1, 3, 4), ids(repository.findAll()));
+        assertEquals(List.of(1, 3), ids(repository.findPage(0, 2)));
+        assertEquals(210, repository.findDailySummaries(DAY_ONE, DAY_ONE).get(0).getTotalCalories());
+    }
+
+    @Test
+    void shouldCompactAfterManyDeletes() {
+        List<LogEntry> created = new ArrayList<>();
+        for (int id = 5; id < 5005; id++) {
+            created.add(new LogEntry(id, DAY_TWO.atTime(10, 0), LogEntryType.SNACK, "Apple " + (id % 10), 50));
+        }
+        when(delegate.createAll(any())).thenReturn(created);
+        when(delegate.delete(anyInt())).thenReturn(true);
+        repository.createAll(created);
+
+        for (int id = 5; id < 4005; id++) {
+            repository.delete(id);
+        }
+
+        assertEquals(1004, repository.size());
+        assertEquals(4005, repository.findPage(4, 1).get(0).getId());
+        assertEquals(1001, repository.findByType(LogEntryType.SNACK).size());
+        assertEquals("Apple 4", repository.findById(5004).getDescription());
+    }
+
+    @Test
+    void shouldOnlyServeTheDefaultUser() {
+        assertEquals(UserContext.DEFAULT_USER_ID, repository.findById(1).getUserId());
+
+        UserContext.setUserId(2);
+
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> repository.findById(1));
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> repository.create(new LogEntry()));
+        verify(delegate, never()).create(any());
+    }
+
+    private static List<Integer> ids(List<LogEntry> entries) {
+        return entries.stream().map(LogEntry::getId).collect(Collectors.toList());
+    }
+}
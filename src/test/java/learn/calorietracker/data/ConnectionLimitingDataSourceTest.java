@@ -0,0 +1,112 @@
+package learn.calorietracker.data;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConnectionLimitingDataSourceTest {
+
+    DataSource target;
+    ConnectionLimitingDataSource dataSource;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        target = mock(DataSource.class);
+        when(target.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        dataSource = new ConnectionLimitingDataSource(target, 2, Duration.ofMillis(10));
+    }
+
+    @AfterEach
+    void teardown() {
+        UserContext.clear();
+    }
+
+    @Test
+    void shouldRejectWhenAllConnectionsAreOut() throws SQLException {
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+
+        assertEquals(0, dataSource.getAvailableConnections());
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+        verify(target, times(2)).getConnection();
+
+        first.close();
+        assertNotNull(dataSource.getConnection());
+    }
+
+    @Test
+    void shouldReleaseOnlyOnceWhenClosedTwice() throws SQLException {
+        Connection connection = dataSource.getConnection();
+
+        connection.close();
+        connection.close();
+
+        assertEquals(2, dataSource.getAvailableConnections());
+    }
+
+    @Test
+    void shouldReleaseWhenThePoolFails() throws SQLException {
+        when(target.getConnection()).thenThrow(new SQLTransientConnectionException("pool timed out"));
+
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+        assertEquals(2, dataSource.getAvailableConnections());
+    }
+
+    @Test
+    void shouldSizeALimiterToEachShard() throws SQLException {
+        DataSource otherTarget = mock(DataSource.class);
+        when(otherTarget.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        List<ConnectionLimitingDataSource> limiters = new ArrayList<>();
+
+        DataSource routed = ConnectionLimitingDataSource.limitEachPool(new UserRoutingDataSource(List.of(target, otherTarget)),
+                1, Duration.ofMillis(10), limiters::add);
+
+        assertEquals(2, limiters.size());
+        int userOnFirstShard = userOnShard(0);
+        int userOnSecondShard = userOnShard(1);
+
+        // the first shard's only connection is out, which doesn't stop anyone on the second
+        UserContext.setUserId(userOnFirstShard);
+        routed.getConnection();
+        assertThrows(SQLTransientConnectionException.class, routed::getConnection);
+        UserContext.setUserId(userOnSecondShard);
+        assertNotNull(routed.getConnection());
+        verify(otherTarget).getConnection();
+    }
+
+    @Test
+    void shouldSizeTheLimiterToTheHikariPool() {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName("replica-0");
+        pool.setMaximumPoolSize(3);
+        List<ConnectionLimitingDataSource> limiters = new ArrayList<>();
+
+        ConnectionLimitingDataSource.limitEachPool(new ReplicaRoutingDataSource(target, List.of(pool)),
+                10, Duration.ofMillis(10), limiters::add);
+
+        assertEquals(2, limiters.size());
+        assertEquals(10, limiters.get(1).getMaxConnections());
+        assertEquals("replica-0", limiters.get(0).getName());
+        assertEquals(3, limiters.get(0).getMaxConnections());
+    }
+
+    private static int userOnShard(int shard) {
+        int userId = 1;
+        while (UserRoutingDataSource.shardFor(userId, 2) != shard) {
+            userId++;
+        }
+        return userId;
+    }
+}
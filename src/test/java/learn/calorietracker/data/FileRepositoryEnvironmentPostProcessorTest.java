@@ -0,0 +1,31 @@
+package learn.calorietracker.data;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "log-entry.repository=file",
+        "log-entry.file.path=target/file-mode-log-entries.dat"
+})
+class FileRepositoryEnvironmentPostProcessorTest {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private LogEntryRepository repository;
+
+    @Test
+    void shouldRunWithoutMySqlInFileMode() {
+        assertTrue(repository instanceof LogEntryFileRepository);
+        assertEquals(0, context.getBeanNamesForType(DataSource.class).length);
+        assertEquals(0, context.getBeanNamesForType(LogEntryJdbcTemplateRepository.class).length);
+        assertFalse(context.containsBean("dbHealthIndicator"));
+    }
+}
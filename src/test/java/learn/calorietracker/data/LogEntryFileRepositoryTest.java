@@ -0,0 +1,266 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.DailyCalorieSummary;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogEntryFileRepositoryTest {
+
+    static final LocalDate DAY_ONE = LocalDate.of(2020, 1, 1);
+    static final LocalDate DAY_TWO = LocalDate.of(2020, 1, 2);
+
+    @TempDir
+    Path directory;
+
+    Path path;
+    LogEntryFileRepository repository;
+
+    @BeforeEach
+    void setup() {
+        path = directory.resolve("log-entries.dat");
+        repository = new LogEntryFileRepository(path);
+        repository.createAll(new ArrayList<>(List.of(
+                makeEntry(9, DAY_ONE, LogEntryType.BREAKFAST, "Scrambled eggs", 210),
+                makeEntry(12, DAY_ONE, LogEntryType.LUNCH, "Tuna fish salad", 500),
+                makeEntry(8, DAY_TWO, LogEntryType.BREAKFAST, "Crème brûlée", 400),
+                makeEntry(7, DAY_ONE, LogEntryType.SNACK, "Coffee", 10))));
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        UserContext.clear();
+        repository.close();
+    }
+
+    @Test
+    void shouldCreateWithSequentialIds() {
+        LogEntry created = repository.create(makeEntry(18, DAY_TWO, LogEntryType.DINNER, "Steak", 1000));
+
+        assertEquals(5, created.getId());
+        assertEquals(List.of(1, 2, 3, 4, 5), ids(repository.findAll()));
+        assertFalse(repository.isNew());
+    }
+
+    @Test
+    void shouldFindById() {
+        LogEntry entry = repository.findById(3);
+
+        assertEquals(3, entry.getId());
+        assertEquals(DAY_TWO.atTime(8, 0), entry.getLoggedOn());
+        assertEquals(LogEntryType.BREAKFAST, entry.getType());
+        assertEquals("Crème brûlée", entry.getDescription());
+        assertEquals(400, entry.getCalories());
+        assertNull(repository.findById(99));
+    }
+
+    @Test
+    void shouldFindByTypeAndDate() {
+        assertEquals(List.of(1, 3), ids(repository.findByType(LogEntryType.BREAKFAST)));
+        assertEquals(List.of(4, 1, 2), ids(repository.findByDateRange(DAY_ONE, DAY_ONE)));
+        assertEquals(List.of(1, 3), ids(repository.findByDateRangeAndType(DAY_ONE, DAY_TWO, LogEntryType.BREAKFAST)));
+        assertEquals(List.of(2, 3), ids(repository.findPage(1, 2)));
+    }
+
+    @Test
+    void shouldFindFilteredPage() {
+        assertEquals(List.of(1, 3), ids(repository.findPage(0, 10, DAY_ONE, DAY_TWO, LogEntryType.BREAKFAST)));
+        assertEquals(List.of(2, 4), ids(repository.findPage(1, 10, DAY_ONE, DAY_ONE, null)));
+        assertEquals(List.of(2), ids(repository.findPage(1, 1, DAY_ONE, DAY_ONE, null)));
+    }
+
+    @Test
+    void shouldFindDailySummariesNewestFirst() {
+        List<DailyCalorieSummary> summaries = repository.findDailySummaries(DAY_ONE, DAY_TWO);
+
+        assertEquals(2, summaries.size());
+        assertEquals(DAY_TWO, summaries.get(0).getDate());
+        assertEquals(720, summaries.get(1).getTotalCalories());
+    }
+
+    @Test
+    void shouldUpdate() {
+        assertTrue(repository.update(new LogEntry(2, DAY_TWO.atTime(13, 0), LogEntryType.LUNCH, "Soup", 300)));
+        assertFalse(repository.update(new LogEntry(99, DAY_TWO.atTime(13, 0), LogEntryType.LUNCH, "Soup", 300)));
+
+        LogEntry entry = repository.findById(2);
+        assertEquals("Soup", entry.getDescription());
+        assertEquals(DAY_TWO.atTime(13, 0), entry.getLoggedOn());
+    }
+
+    @Test
+    void shouldTrackVersions() {
+        long before = repository.findCollectionVersion();
+        assertEquals(1, repository.findVersionById(2));
+
+        LogEntry entry = new LogEntry(2, DAY_TWO.atTime(13, 0), LogEntryType.LUNCH, "Soup", 300);
+        repository.update(entry);
+
+        assertEquals(2, entry.getVersion());
+        assertEquals(2, repository.findById(2).getVersion());
+        assertEquals(before + 1, repository.findCollectionVersion());
+
+        repository.delete(2);
+        assertEquals(0, repository.findVersionById(2));
+        assertEquals(before + 2, repository.findCollectionVersion());
+    }
+
+    @Test
+    void shouldRejectStaleVersion() {
+        LogEntry first = new LogEntry(2, DAY_TWO.atTime(13, 0), LogEntryType.LUNCH, "Soup", 300);
+        first.setVersion(1);
+        LogEntry second = new LogEntry(2, DAY_TWO.atTime(13, 0), LogEntryType.LUNCH, "Salad", 350);
+        second.setVersion(1);
+
+        assertTrue(repository.update(first));
+        assertThrows(OptimisticLockingFailureException.class, () -> repository.update(second));
+
+        assertEquals("Soup", repository.findById(2).getDescription());
+    }
+
+    @Test
+    void shouldRewriteATornRecordFromTheUpdateLog() throws Exception {
+        assertTrue(repository.update(new LogEntry(2, DAY_TWO.atTime(13, 0), LogEntryType.LUNCH, "Soup", 300)));
+
+        // entry 2 is the second record, 64 + 324 bytes in; a crash part way through writing it leaves some of it zeroed
+        Path crashed = copyAsIfCrashed("crashed.dat");
+        try (FileChannel file = FileChannel.open(crashed, StandardOpenOption.WRITE)) {
+            file.write(ByteBuffer.wrap(new byte[200]), 64 + 324 + 8);
+        }
+
+        try (LogEntryFileRepository recovered = new LogEntryFileRepository(crashed)) {
+            LogEntry entry = recovered.findById(2);
+            assertEquals("Soup", entry.getDescription());
+            assertEquals(DAY_TWO.atTime(13, 0), entry.getLoggedOn());
+            assertEquals(300, entry.getCalories());
+            assertEquals(2, entry.getVersion());
+        }
+        assertEquals(0, Files.size(directory.resolve("crashed.dat.updates")));
+    }
+
+    @Test
+    void shouldDropATornUpdateAtTheEndOfTheLog() throws Exception {
+        assertTrue(repository.update(new LogEntry(2, DAY_TWO.atTime(13, 0), LogEntryType.LUNCH, "Soup", 300)));
+        Path crashed = copyAsIfCrashed("crashed.dat");
+        Path crashedLog = directory.resolve("crashed.dat.updates");
+        long logged = Files.size(crashedLog);
+
+        // the next update only got half its log record written before the crash, so its in-place write never started
+        assertTrue(repository.update(new LogEntry(2, DAY_TWO.atTime(14, 0), LogEntryType.LUNCH, "Salad", 350)));
+        byte[] log = Files.readAllBytes(path.resolveSibling("log-entries.dat.updates"));
+        Files.write(crashedLog, Arrays.copyOfRange(log, (int) logged, (int) (logged + (log.length - logged) / 2)),
+                StandardOpenOption.APPEND);
+
+        try (LogEntryFileRepository recovered = new LogEntryFileRepository(crashed)) {
+            assertEquals("Soup", recovered.findById(2).getDescription());
+            assertEquals(2, recovered.findVersionById(2));
+        }
+    }
+
+    @Test
+    void shouldNotReviveADeletedEntryFromTheUpdateLog() throws Exception {
+        assertTrue(repository.update(new LogEntry(2, DAY_TWO.atTime(13, 0), LogEntryType.LUNCH, "Soup", 300)));
+        assertTrue(repository.delete(2));
+
+        try (LogEntryFileRepository recovered = new LogEntryFileRepository(copyAsIfCrashed("crashed.dat"))) {
+            assertNull(recovered.findById(2));
+            assertEquals(3, recovered.size());
+        }
+    }
+
+    @Test
+    void shouldCompactWhenATenthIsDeleted() {
+        assertFalse(repository.compactIfFragmented());
+
+        repository.delete(3);
+
+        assertTrue(repository.compactIfFragmented());
+        assertFalse(repository.compactIfFragmented());
+        assertEquals(List.of(1, 2, 4), ids(repository.findAll()));
+        assertEquals(5, repository.create(makeEntry(18, DAY_TWO, LogEntryType.DINNER, "Steak", 1000)).getId());
+    }
+
+    @Test
+    void shouldDelete() {
+        assertTrue(repository.delete(2));
+        assertFalse(repository.delete(2));
+
+        assertNull(repository.findById(2));
+        assertEquals(List.of(1, 3, 4), ids(repository.findAll()));
+        assertEquals(3, repository.size());
+    }
+
+    @Test
+    void shouldKeepEntriesAfterReopening() throws Exception {
+        repository.delete(1);
+        repository.close();
+
+        repository = new LogEntryFileRepository(path);
+
+        assertEquals(List.of(2, 3, 4), ids(repository.findAll()));
+        assertEquals(5, repository.create(makeEntry(18, DAY_TWO, LogEntryType.DINNER, "Steak", 1000)).getId());
+    }
+
+    @Test
+    void shouldGrowAndCompact() throws Exception {
+        List<LogEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            entries.add(makeEntry(10, DAY_TWO, LogEntryType.SNACK, "Apple", 50));
+        }
+        repository.createAll(entries);
+        long grownSize = Files.size(path);
+
+        for (int id = 5; id < 3005; id++) {
+            repository.delete(id);
+        }
+
+        assertEquals(4, repository.size());
+        assertTrue(Files.size(path) < grownSize);
+        assertEquals(List.of(1, 2, 3, 4), ids(repository.findAll()));
+        assertEquals(3005, repository.create(makeEntry(18, DAY_TWO, LogEntryType.DINNER, "Steak", 1000)).getId());
+    }
+
+    @Test
+    void shouldOnlyServeTheDefaultUser() {
+        assertEquals(UserContext.DEFAULT_USER_ID, repository.findById(1).getUserId());
+
+        UserContext.setUserId(2);
+
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> repository.findAll());
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> repository.delete(1));
+    }
+
+    // the file and its update log as they are on disk now, without the repository having been closed
+    private Path copyAsIfCrashed(String name) throws Exception {
+        Path copy = directory.resolve(name);
+        Files.copy(path, copy);
+        Files.copy(path.resolveSibling("log-entries.dat.updates"), directory.resolve(name + ".updates"));
+        return copy;
+    }
+
+    private static LogEntry makeEntry(int hour, LocalDate day, LogEntryType type, String description, int calories) {
+        return new LogEntry(0, day.atTime(hour, 0), type, description, calories);
+    }
+
+    private static List<Integer> ids(List<LogEntry> entries) {
+        return entries.stream().map(LogEntry::getId).collect(Collectors.toList());
+    }
+}
@@ -1,13 +1,21 @@
 package learn.calorietracker.data;
 
+import learn.calorietracker.models.DailyCalorieSummary;
 import learn.calorietracker.models.LogEntry;
 import learn.calorietracker.models.LogEntryType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -21,6 +29,9 @@ public class LogEntryJdbcTemplateRepositoryTest {
     @Autowired
     JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
     static boolean hasSetUp = false;
 
     @BeforeEach
@@ -45,6 +56,87 @@ public class LogEntryJdbcTemplateRepositoryTest {
 
     }
 
+    @Test
+    void shouldFindPage() {
+        List<LogEntry> page = repository.findPage(1, 1);
+
+        assertNotNull(page);
+        assertEquals(1, page.size());
+        assertEquals(2, page.get(0).getId());
+    }
+
+    @Test
+    void shouldBumpVersionsOnUpdate() {
+        LogEntry entry = repository.create(new LogEntry(0, LocalDateTime.of(2020, 2, 1, 9, 0), LogEntryType.BREAKFAST, "Toast", 90));
+        long collectionVersion = repository.findCollectionVersion();
+        assertEquals(1, repository.findVersionById(entry.getId()));
+
+        entry.setCalories(120);
+        assertTrue(repository.update(entry));
+
+        assertEquals(2, entry.getVersion());
+        assertEquals(2, repository.findVersionById(entry.getId()));
+        assertEquals(2, repository.findById(entry.getId()).getVersion());
+        assertEquals(collectionVersion + 1, repository.findCollectionVersion());
+        assertEquals(0, repository.findVersionById(999999));
+    }
+
+    @Test
+    void shouldOnlySeeTheCurrentUsersEntries() {
+        UserContext.setUserId(2);
+        try {
+            LogEntry other = repository.create(new LogEntry(0, LocalDateTime.of(2020, 1, 1, 10, 0), LogEntryType.SNACK, "Apple", 80));
+            assertEquals(2, other.getUserId());
+            assertTrue(repository.findAll().stream().allMatch(entry -> entry.getUserId() == 2));
+            assertTrue(repository.findDailySummaries(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 1))
+                    .get(0).getCaloriesByType().containsKey(LogEntryType.SNACK));
+
+            UserContext.clear();
+            assertNull(repository.findById(other.getId()));
+            assertTrue(repository.findByType(LogEntryType.SNACK).stream().noneMatch(entry -> entry.getId() == other.getId()));
+            assertFalse(repository.delete(other.getId()));
+        } finally {
+            UserContext.clear();
+        }
+    }
+
+    @Test
+    void shouldRejectStaleVersion() {
+        LogEntry entry = repository.create(new LogEntry(0, LocalDateTime.of(2020, 2, 1, 12, 0), LogEntryType.LUNCH, "Soup", 300));
+        LogEntry first = repository.findById(entry.getId());
+        LogEntry second = repository.findById(entry.getId());
+
+        first.setCalories(320);
+        assertTrue(repository.update(first));
+        second.setCalories(280);
+        assertThrows(OptimisticLockingFailureException.class, () -> repository.update(second));
+
+        assertEquals(320, repository.findById(entry.getId()).getCalories());
+    }
+
+    @Test
+    void shouldFindFilteredPage() {
+        LocalDate day = LocalDate.of(2020, 1, 1);
+        List<LogEntry> page = repository.findPage(0, 10, day, day, LogEntryType.BREAKFAST);
+
+        assertFalse(page.isEmpty());
+        for (int i = 0; i < page.size(); i++) {
+            assertEquals(LogEntryType.BREAKFAST, page.get(i).getType());
+            assertEquals(day, page.get(i).getLoggedOn().toLocalDate());
+            assertTrue(i == 0 || page.get(i - 1).getId() < page.get(i).getId());
+        }
+    }
+
+    @Test
+    void shouldStreamByDateRange() {
+        List<LogEntry> streamed = new ArrayList<>();
+
+        repository.streamByDateRange(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 1), streamed::add);
+
+        assertFalse(streamed.isEmpty());
+        assertTrue(streamed.stream().allMatch(entry -> entry.getLoggedOn().toLocalDate().equals(LocalDate.of(2020, 1, 1))));
+    }
+
     @Test
     void shouldFindByType() {
         List<LogEntry> all = repository.findByType(LogEntryType.LUNCH);
@@ -58,6 +150,42 @@ public class LogEntryJdbcTemplateRepositoryTest {
         assertNotNull(entry.getDescription());
     }
 
+    @Test
+    void shouldFindDailySummaries() {
+        List<DailyCalorieSummary> summaries = repository.findDailySummaries(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 1));
+
+        assertNotNull(summaries);
+        assertEquals(1, summaries.size());
+
+        DailyCalorieSummary summary = summaries.get(0);
+
+        assertEquals(LocalDate.of(2020, 1, 1), summary.getDate());
+        assertTrue(summary.getTotalCalories() > 0);
+    }
+
+    @Test
+    void shouldFindByDateRange() {
+        List<LogEntry> entries = repository.findByDateRange(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 1));
+
+        assertFalse(entries.isEmpty());
+        assertTrue(entries.stream().allMatch(entry -> entry.getLoggedOn().toLocalDate().equals(LocalDate.of(2020, 1, 1))));
+    }
+
+    @Test
+    void shouldFindByDateRangeAndType() {
+        List<LogEntry> entries = repository.findByDateRangeAndType(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 1), LogEntryType.LUNCH);
+
+        assertEquals(1, entries.size());
+        assertEquals(2, entries.get(0).getId());
+    }
+
+    @Test
+    void shouldNotFindOutsideDateRange() {
+        List<LogEntry> entries = repository.findByDateRange(LocalDate.of(1999, 1, 1), LocalDate.of(1999, 12, 31));
+
+        assertTrue(entries.isEmpty());
+    }
+
     @Test
     void shouldFindById() {
         LogEntry entry = repository.findById(1);
@@ -79,7 +207,7 @@ public class LogEntryJdbcTemplateRepositoryTest {
         newEntry.setType(LogEntryType.SNACK);
         newEntry.setCalories(10000);
         newEntry.setDescription("All the Pizza ever");
-        newEntry.setLoggedOn("2020-10-01");
+        newEntry.setLoggedOn(LocalDateTime.of(2020, 10, 1, 0, 0));
 
         LogEntry entry = repository.create(newEntry);
 
@@ -87,13 +215,72 @@ public class LogEntryJdbcTemplateRepositoryTest {
         assertTrue(entry.getId() >= 4);
     }
 
+    @Test
+    void shouldCreateAll() {
+        List<LogEntry> newEntries = List.of(
+                new LogEntry(0, LocalDateTime.of(2020, 10, 2, 8, 0), LogEntryType.BREAKFAST, "Oatmeal", 300),
+                new LogEntry(0, LocalDateTime.of(2020, 10, 2, 12, 30), LogEntryType.LUNCH, "Burrito", 800)
+        );
+
+        List<LogEntry> entries = repository.createAll(newEntries);
+
+        assertEquals(2, entries.size());
+        assertTrue(entries.get(0).getId() >= 4);
+        assertEquals(entries.get(0).getId() + 1, entries.get(1).getId());
+        assertTrue(repository.verifyDailyTotals().isEmpty());
+    }
+
+    @Test
+    void shouldCreateAllWithAllocatedIds() {
+        int firstId = repository.allocateIds(10);
+        List<LogEntry> newEntries = List.of(
+                new LogEntry(firstId, LocalDateTime.of(2020, 10, 3, 8, 0), LogEntryType.BREAKFAST, "Bagel", 350),
+                new LogEntry(firstId + 1, LocalDateTime.of(2020, 10, 3, 12, 0), LogEntryType.LUNCH, "Soup", 250));
+
+        assertEquals(2, repository.createAllWithIds(newEntries).size());
+        // writing the same batch again is a no-op
+        assertEquals(0, repository.createAllWithIds(newEntries).size());
+        assertEquals("Soup", repository.findById(firstId + 1).getDescription());
+
+        // ids for ordinary creates come from the same sequence, after the block
+        LogEntry created = repository.create(new LogEntry(0, LocalDateTime.of(2020, 10, 3, 18, 0), LogEntryType.DINNER, "Pizza", 900));
+        assertTrue(created.getId() >= firstId + 10);
+        assertTrue(repository.verifyDailyTotals().isEmpty());
+    }
+
+    @Test
+    void shouldNotSkipADifferentEntryWithAnAllocatedId() {
+        int firstId = repository.allocateIds(1);
+        repository.createAllWithIds(List.of(
+                new LogEntry(firstId, LocalDateTime.of(2020, 10, 3, 8, 0), LogEntryType.BREAKFAST, "Bagel", 350)));
+
+        List<LogEntry> other = List.of(
+                new LogEntry(firstId, LocalDateTime.of(2020, 10, 3, 8, 0), LogEntryType.BREAKFAST, "Toast", 150));
+        assertThrows(DuplicateKeyException.class, () -> repository.createAllWithIds(other));
+        assertEquals("Bagel", repository.findById(firstId).getDescription());
+    }
+
+    @Test
+    void shouldCommitAllocatedIdsOnTheirOwn() {
+        TransactionTemplate outer = new TransactionTemplate(transactionManager);
+        int id = outer.execute(status -> {
+            status.setRollbackOnly();
+            return repository.create(new LogEntry(0, LocalDateTime.of(2020, 10, 4, 8, 0), LogEntryType.BREAKFAST, "Toast", 150)).getId();
+        });
+
+        // the insert rolled back, the sequence didn't, so the id is never handed out again
+        assertNull(repository.findById(id));
+        assertTrue(repository.allocateIds(1) > id);
+        assertTrue(repository.verifyDailyTotals().isEmpty());
+    }
+
     @Test
     void shouldUpdate() {
         //arrange
         LogEntry entry = new LogEntry();
         entry.setId(1);
         entry.setDescription("new description");
-        entry.setLoggedOn("2020-01-01");
+        entry.setLoggedOn(LocalDateTime.of(2020, 1, 1, 0, 0));
         entry.setType(LogEntryType.BREAKFAST);
         entry.setCalories(5);
         //act
@@ -129,4 +316,42 @@ public class LogEntryJdbcTemplateRepositoryTest {
         //assert
         assertFalse(deleted);
     }
+
+    @Test
+    void shouldKeepDailyTotalsInSyncWithWrites() {
+        //arrange
+        LogEntry entry = new LogEntry();
+        entry.setType(LogEntryType.DINNER);
+        entry.setCalories(700);
+        entry.setDescription("Lasagna");
+        entry.setLoggedOn(LocalDateTime.of(2020, 3, 1, 18, 0));
+        repository.create(entry);
+
+        //act
+        entry.setType(LogEntryType.SNACK);
+        entry.setLoggedOn(LocalDateTime.of(2020, 3, 2, 21, 0));
+        repository.update(entry);
+
+        //assert
+        List<DailyCalorieSummary> summaries = repository.findDailySummaries(LocalDate.of(2020, 3, 1), LocalDate.of(2020, 3, 2));
+        assertEquals(1, summaries.size());
+        assertEquals(LocalDate.of(2020, 3, 2), summaries.get(0).getDate());
+        assertEquals(700, summaries.get(0).getCaloriesByType().get(LogEntryType.SNACK));
+        assertTrue(repository.verifyDailyTotals().isEmpty());
+
+        //act
+        repository.delete(entry.getId());
+
+        //assert
+        assertTrue(repository.findDailySummaries(LocalDate.of(2020, 3, 1), LocalDate.of(2020, 3, 2)).isEmpty());
+        assertTrue(repository.verifyDailyTotals().isEmpty());
+    }
+
+    @Test
+    void shouldRebuildDailyTotals() {
+        //act
+        repository.rebuildDailyTotals();
+        //assert
+        assertTrue(repository.verifyDailyTotals().isEmpty());
+    }
 }
@@ -0,0 +1,77 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class LogEntryMapperTest {
+
+    static final LocalDateTime LOGGED_ON = LocalDateTime.of(2020, 1, 1, 9, 0);
+
+    ResultSet resultSet;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        resultSet = mock(ResultSet.class);
+        // the columns in a different order than the repository selects them
+        when(resultSet.findColumn("version")).thenReturn(1);
+        when(resultSet.findColumn("log_entry_id")).thenReturn(2);
+        when(resultSet.findColumn("user_id")).thenReturn(3);
+        when(resultSet.findColumn("logged_on")).thenReturn(4);
+        when(resultSet.findColumn("log_entry_type_id")).thenReturn(5);
+        when(resultSet.findColumn("description")).thenReturn(6);
+        when(resultSet.findColumn("calories")).thenReturn(7);
+        when(resultSet.getInt(1)).thenReturn(3);
+        when(resultSet.getInt(2)).thenReturn(10, 11);
+        when(resultSet.getInt(3)).thenReturn(1);
+        when(resultSet.getObject(4, LocalDateTime.class)).thenReturn(LOGGED_ON);
+        when(resultSet.getInt(5)).thenReturn(2);
+        when(resultSet.getString(6)).thenReturn("Salad");
+        when(resultSet.getInt(7)).thenReturn(300);
+    }
+
+    @Test
+    void shouldFindColumnsOnlyOnce() throws SQLException {
+        LogEntryMapper mapper = new LogEntryMapper();
+
+        LogEntry first = mapper.mapRow(resultSet, 0);
+        LogEntry second = mapper.mapRow(resultSet, 1);
+
+        assertEquals(10, first.getId());
+        assertEquals(11, second.getId());
+        assertEquals(1, second.getUserId());
+        assertEquals(LOGGED_ON, second.getLoggedOn());
+        assertEquals(LogEntryType.LUNCH, second.getType());
+        assertEquals("Salad", second.getDescription());
+        assertEquals(300, second.getCalories());
+        assertEquals(3, second.getVersion());
+        verify(resultSet, times(1)).findColumn("log_entry_id");
+        verify(resultSet, never()).getInt("log_entry_id");
+    }
+
+    @Test
+    void shouldSkipDescription() throws SQLException {
+        LogEntry entry = LogEntryMapper.withoutDescription().mapRow(resultSet, 0);
+
+        assertNull(entry.getDescription());
+        assertEquals(300, entry.getCalories());
+        verify(resultSet, never()).findColumn("description");
+        verify(resultSet, never()).getString(anyInt());
+    }
+
+    @Test
+    void shouldRejectUnknownType() throws SQLException {
+        when(resultSet.getInt(5)).thenReturn(6);
+
+        assertThrows(RuntimeException.class, () -> new LogEntryMapper().mapRow(resultSet, 0));
+    }
+}
@@ -0,0 +1,93 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// a primary and two replicas, each its own embedded database; nothing replicates, so every row says where it was read
+class ReadReplicaLogEntryRepositoryTest {
+
+    static final AtomicInteger databaseCount = new AtomicInteger();
+
+    EmbeddedDatabase primary;
+    EmbeddedDatabase firstReplica;
+    EmbeddedDatabase secondReplica;
+    ReplicaRoutingDataSource dataSource;
+    AtomicLong clock;
+    ReadReplicaLogEntryRepository repository;
+
+    @BeforeEach
+    void setup() {
+        primary = makeDatabase("primary");
+        firstReplica = makeDatabase("replica 0");
+        secondReplica = makeDatabase("replica 1");
+        dataSource = new ReplicaRoutingDataSource(primary, List.of(firstReplica, secondReplica));
+
+        clock = new AtomicLong();
+        repository = new ReadReplicaLogEntryRepository(new LogEntryJdbcTemplateRepository(new JdbcTemplate(dataSource)),
+                dataSource, Duration.ofSeconds(5), clock::get);
+    }
+
+    @AfterEach
+    void teardown() {
+        UserContext.clear();
+        primary.shutdown();
+        firstReplica.shutdown();
+        secondReplica.shutdown();
+    }
+
+    @Test
+    void shouldSpreadReadsOverReplicas() {
+        Set<String> readFrom = new HashSet<>();
+        readFrom.add(repository.findAll().get(0).getDescription());
+        readFrom.add(repository.findByType(LogEntryType.BREAKFAST).get(0).getDescription());
+
+        assertEquals(Set.of("replica 0", "replica 1"), readFrom);
+    }
+
+    @Test
+    void shouldReadOwnWritesFromPrimaryUntilWindowPasses() {
+        LogEntry created = repository.create(new LogEntry(0, LocalDateTime.of(2020, 1, 2, 12, 0), LogEntryType.LUNCH, "Soup", 300));
+
+        assertEquals("Soup", repository.findById(created.getId()).getDescription());
+        assertEquals("primary", repository.findAll().get(0).getDescription());
+
+        // someone else's reads were never sticky
+        UserContext.setUserId(2);
+        long replicaConnections = dataSource.getReplicaConnections();
+        repository.findAll();
+        assertEquals(replicaConnections + 1, dataSource.getReplicaConnections());
+        UserContext.clear();
+
+        clock.addAndGet(Duration.ofSeconds(6).toNanos());
+        assertNull(repository.findById(created.getId()));
+        assertTrue(repository.findAll().get(0).getDescription().startsWith("replica"));
+    }
+
+    private static EmbeddedDatabase makeDatabase(String description) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("replicas-" + databaseCount.incrementAndGet() + ";MODE=MySQL")
+                .addScript("embedded-schema.sql")
+                .build();
+        new JdbcTemplate(database).update("insert into log_entry (user_id, logged_on, log_entry_type_id, description, calories) "
+                + "values (1, '2020-01-01 09:00:00', 1, ?, 200);", description);
+        return database;
+    }
+}
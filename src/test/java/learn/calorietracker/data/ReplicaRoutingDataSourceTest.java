@@ -0,0 +1,71 @@
+package learn.calorietracker.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    Connection primaryConnection;
+    Connection firstReplicaConnection;
+    Connection secondReplicaConnection;
+    ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        primaryConnection = mock(Connection.class);
+        firstReplicaConnection = mock(Connection.class);
+        secondReplicaConnection = mock(Connection.class);
+        dataSource = new ReplicaRoutingDataSource(dataSourceFor(primaryConnection),
+                List.of(dataSourceFor(firstReplicaConnection), dataSourceFor(secondReplicaConnection)));
+    }
+
+    @Test
+    void shouldSendReadsToReplicasInTurn() {
+        assertSame(firstReplicaConnection, dataSource.read(this::connect));
+        assertSame(secondReplicaConnection, dataSource.read(this::connect));
+        assertSame(firstReplicaConnection, dataSource.read(this::connect));
+        assertEquals(3, dataSource.getReplicaConnections());
+    }
+
+    @Test
+    void shouldSendEverythingElseToPrimary() throws SQLException {
+        assertSame(primaryConnection, dataSource.getConnection());
+        // a read that's finished doesn't leave the thread reading from replicas
+        dataSource.read(this::connect);
+        assertSame(primaryConnection, dataSource.getConnection());
+        assertEquals(2, dataSource.getPrimaryConnections());
+    }
+
+    @Test
+    void shouldKeepReadsInATransactionOnPrimary() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertSame(primaryConnection, dataSource.read(this::connect));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+    }
+
+    private Connection connect() {
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static DataSource dataSourceFor(Connection connection) throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+}
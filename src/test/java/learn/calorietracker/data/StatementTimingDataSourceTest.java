@@ -0,0 +1,97 @@
+package learn.calorietracker.data;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StatementTimingDataSourceTest {
+
+    static final String SELECT_SQL = "select * from log_entry where log_entry_type_id = ?;";
+    static final String DELETE_SQL = "delete from log_entry where id = ?;";
+
+    DataSource target = mock(DataSource.class);
+    Connection connection = mock(Connection.class);
+    PreparedStatement statement = mock(PreparedStatement.class);
+    ResultSet resultSet = mock(ResultSet.class);
+
+    @BeforeEach
+    void setup() throws Exception {
+        when(target.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(statement.executeUpdate()).thenReturn(1);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+    }
+
+    @Test
+    void shouldRecordRowsFetchedByQuery() throws Exception {
+        StatementTimingDataSource dataSource = new StatementTimingDataSource(target, Duration.ofMinutes(1));
+
+        query(dataSource);
+        query(dataSource);
+
+        List<StatementStats> stats = dataSource.getStatementStats();
+        assertEquals(1, stats.size());
+        assertEquals(SELECT_SQL, stats.get(0).getSql());
+        assertEquals(2, stats.get(0).getCount());
+        assertEquals(3, stats.get(0).getRows());
+        assertEquals(0, stats.get(0).getSlowCount());
+        verify(statement, times(2)).setInt(1, 2);
+    }
+
+    @Test
+    void shouldRecordRowsUpdated() throws Exception {
+        StatementTimingDataSource dataSource = new StatementTimingDataSource(target, Duration.ofMinutes(1));
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(DELETE_SQL)) {
+            ps.setInt(1, 10);
+            assertEquals(1, ps.executeUpdate());
+        }
+
+        StatementStats stats = dataSource.getStatementStats().get(0);
+        assertEquals(DELETE_SQL, stats.getSql());
+        assertEquals(1, stats.getCount());
+        assertEquals(1, stats.getRows());
+    }
+
+    @Test
+    void shouldCountSlowStatements() throws Exception {
+        StatementTimingDataSource dataSource = new StatementTimingDataSource(target, Duration.ZERO);
+
+        query(dataSource);
+
+        assertEquals(1, dataSource.getStatementStats().get(0).getSlowCount());
+    }
+
+    @Test
+    void shouldReset() throws Exception {
+        StatementTimingDataSource dataSource = new StatementTimingDataSource(target, Duration.ofMinutes(1));
+        query(dataSource);
+
+        dataSource.resetStatementStats();
+
+        assertTrue(dataSource.getStatementStats().isEmpty());
+    }
+
+    private void query(DataSource dataSource) throws Exception {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SELECT_SQL)) {
+            ps.setInt(1, 2);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rs.getInt("log_entry_id");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package learn.calorietracker.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserRoutingDataSourceTest {
+
+    DataSource first;
+    DataSource second;
+    Connection firstConnection;
+    Connection secondConnection;
+    UserRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        first = mock(DataSource.class);
+        second = mock(DataSource.class);
+        firstConnection = mock(Connection.class);
+        secondConnection = mock(Connection.class);
+        when(first.getConnection()).thenReturn(firstConnection);
+        when(second.getConnection()).thenReturn(secondConnection);
+        dataSource = new UserRoutingDataSource(List.of(first, second));
+    }
+
+    @AfterEach
+    void teardown() {
+        UserContext.clear();
+    }
+
+    @Test
+    void shouldRouteEachUserToTheirShard() throws SQLException {
+        for (int userId = 1; userId <= 20; userId++) {
+            UserContext.setUserId(userId);
+            Connection expected = UserRoutingDataSource.shardFor(userId, 2) == 0 ? firstConnection : secondConnection;
+
+            assertSame(expected, dataSource.getConnection());
+            // the same user always lands on the same shard
+            assertSame(expected, dataSource.getConnection());
+        }
+    }
+
+    @Test
+    void shouldUseTheDefaultUsersShardOutsideARequest() throws SQLException {
+        Connection expected = UserRoutingDataSource.shardFor(UserContext.DEFAULT_USER_ID, 2) == 0 ? firstConnection : secondConnection;
+
+        assertSame(expected, dataSource.getConnection());
+    }
+
+    @Test
+    void shouldSpreadUsersAcrossShards() {
+        int[] users = new int[4];
+        for (int userId = 1; userId <= 10_000; userId++) {
+            users[UserRoutingDataSource.shardFor(userId, users.length)]++;
+        }
+
+        for (int count : users) {
+            assertTrue(count > 2_300 && count < 2_700, "uneven shard: " + count);
+        }
+    }
+
+    @Test
+    void shouldRequireAShard() {
+        assertThrows(IllegalArgumentException.class, () -> new UserRoutingDataSource(List.of()));
+    }
+}
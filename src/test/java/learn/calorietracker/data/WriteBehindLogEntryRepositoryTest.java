@@ -0,0 +1,166 @@
+package learn.calorietracker.data;
+
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class WriteBehindLogEntryRepositoryTest {
+
+    @TempDir
+    Path journalDirectory;
+
+    LogEntryJdbcTemplateRepository delegate;
+    WriteBehindLogEntryRepository repository;
+
+    @BeforeEach
+    void setup() {
+        delegate = mock(LogEntryJdbcTemplateRepository.class);
+        when(delegate.allocateIds(anyInt())).thenReturn(100, 200);
+    }
+
+    @AfterEach
+    void teardown() throws Exception {
+        UserContext.clear();
+        if (repository != null) {
+            repository.close();
+        }
+    }
+
+    @Test
+    void shouldReturnPreallocatedIds() throws Exception {
+        // hold the writer up so the entries are still queued when they're read back
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.createAllWithIds(any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return invocation.getArgument(0);
+        });
+        repository = new WriteBehindLogEntryRepository(delegate, journalDirectory, 10, 10, Duration.ofMillis(1), Duration.ZERO, 2);
+
+        assertEquals(100, repository.create(makeEntry()).getId());
+        assertEquals(101, repository.create(makeEntry()).getId());
+        assertEquals(200, repository.create(makeEntry()).getId());
+        assertEquals("Coffee", repository.findById(101).getDescription());
+
+        release.countDown();
+        repository.close();
+        repository = null;
+
+        verify(delegate, times(2)).allocateIds(2);
+        verify(delegate, atLeastOnce()).createAllWithIds(any());
+        verify(delegate, never()).create(any());
+        verify(delegate, never()).findById(anyInt());
+        // everything was written, so nothing is left to replay
+        assertEquals(0, Files.list(journalDirectory).count());
+    }
+
+    @Test
+    void shouldRejectWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.createAllWithIds(any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return invocation.getArgument(0);
+        });
+        repository = new WriteBehindLogEntryRepository(delegate, journalDirectory, 1, 1, Duration.ofMillis(1), Duration.ZERO, 10);
+
+        repository.create(makeEntry());
+        // the first entry holds the only slot until the writer has saved it
+        assertThrows(TransientDataAccessResourceException.class, () -> repository.create(makeEntry()));
+
+        release.countDown();
+    }
+
+    @Test
+    void shouldReplayJournalAfterCrash() throws Exception {
+        // a writer that never succeeds stands in for a crash before the batch reached the database
+        when(delegate.createAllWithIds(any())).thenThrow(new TransientDataAccessResourceException("database is down"));
+        WriteBehindLogEntryRepository crashed = new WriteBehindLogEntryRepository(delegate, journalDirectory, 10, 10, Duration.ofMillis(1), Duration.ZERO, 10);
+        crashed.create(makeEntry());
+        UserContext.setUserId(7);
+        crashed.create(makeEntry());
+        UserContext.clear();
+        crashed.close();
+
+        LogEntryJdbcTemplateRepository restarted = mock(LogEntryJdbcTemplateRepository.class);
+        repository = new WriteBehindLogEntryRepository(restarted, journalDirectory, 10, 10, Duration.ofMillis(1), Duration.ZERO, 10);
+
+        verify(restarted).createAllWithIds(argThat(entries -> entries.size() == 2
+                && entries.get(0).getId() == 100
+                && entries.get(1).getId() == 101
+                && entries.get(1).getDescription().equals("Coffee")
+                && entries.get(0).getUserId() == UserContext.DEFAULT_USER_ID
+                && entries.get(1).getUserId() == 7));
+    }
+
+    @Test
+    void shouldNotReplayEntriesThatWereSavedBeforeACrash() throws Exception {
+        // the first batch is saved, every later one fails until the crash
+        when(delegate.createAllWithIds(any()))
+                .thenAnswer(invocation -> invocation.getArgument(0))
+                .thenThrow(new TransientDataAccessResourceException("database is down"));
+        when(delegate.delete(100)).thenReturn(true);
+        WriteBehindLogEntryRepository crashed = new WriteBehindLogEntryRepository(delegate, journalDirectory, 10, 1, Duration.ofMillis(1), Duration.ZERO, 10);
+        LogEntry deleted = crashed.create(makeEntry());
+        // waits for the entry to be saved first
+        assertTrue(crashed.delete(deleted.getId()));
+        crashed.create(makeEntry());
+
+        // opened without closing the crashed repository, so its journal segment is still there
+        LogEntryJdbcTemplateRepository restarted = mock(LogEntryJdbcTemplateRepository.class);
+        repository = new WriteBehindLogEntryRepository(restarted, journalDirectory, 10, 10, Duration.ofMillis(1), Duration.ZERO, 10);
+        crashed.close();
+
+        verify(restarted).createAllWithIds(argThat(entries -> entries.size() == 1 && entries.get(0).getId() == 101));
+        verify(restarted, never()).createAllWithIds(argThat(entries -> entries.stream().anyMatch(entry -> entry.getId() == 100)));
+    }
+
+    @Test
+    void shouldOnlyShowQueuedEntriesToTheirOwner() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.createAllWithIds(any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return invocation.getArgument(0);
+        });
+        repository = new WriteBehindLogEntryRepository(delegate, journalDirectory, 10, 10, Duration.ofMillis(1), Duration.ZERO, 10);
+        UserContext.setUserId(3);
+        LogEntry entry = repository.create(makeEntry());
+
+        assertEquals(3, repository.findById(entry.getId()).getUserId());
+        UserContext.setUserId(4);
+        assertNull(repository.findById(entry.getId()));
+        assertEquals(0, repository.findVersionById(entry.getId()));
+
+        release.countDown();
+    }
+
+    @Test
+    void shouldWaitForQueuedEntryBeforeUpdating() {
+        when(delegate.update(any())).thenReturn(true);
+        repository = new WriteBehindLogEntryRepository(delegate, journalDirectory, 10, 10, Duration.ofMillis(1), Duration.ZERO, 10);
+        LogEntry entry = repository.create(makeEntry());
+        entry.setCalories(20);
+
+        assertTrue(repository.update(entry));
+
+        var order = inOrder(delegate);
+        order.verify(delegate).createAllWithIds(any());
+        order.verify(delegate).update(entry);
+    }
+
+    private static LogEntry makeEntry() {
+        return new LogEntry(0, LocalDateTime.of(2020, 1, 1, 9, 0), LogEntryType.BREAKFAST, "Coffee", 10);
+    }
+}
@@ -0,0 +1,215 @@
+package learn.calorietracker.domain;
+
+import learn.calorietracker.data.CalorieReportJdbcTemplateRepository;
+import learn.calorietracker.data.LogEntryJdbcTemplateRepository;
+import learn.calorietracker.data.UserContext;
+import learn.calorietracker.models.CalorieReport;
+import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CalorieReportJobTest {
+
+    static final AtomicInteger databaseCount = new AtomicInteger();
+    static final LocalDate TODAY = LocalDate.of(2020, 3, 1);
+
+    EmbeddedDatabase database;
+    JdbcTemplate template;
+    LogEntryJdbcTemplateRepository entryRepository;
+    CalorieReportJdbcTemplateRepository reportRepository;
+
+    @BeforeEach
+    void setup() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .setName("reports-" + databaseCount.incrementAndGet() + ";MODE=MySQL")
+                .addScript("embedded-schema.sql")
+                .build();
+        template = new JdbcTemplate(database);
+        entryRepository = new LogEntryJdbcTemplateRepository(template, true);
+        reportRepository = new CalorieReportJdbcTemplateRepository(template);
+    }
+
+    @AfterEach
+    void teardown() {
+        UserContext.clear();
+        database.shutdown();
+    }
+
+    @Test
+    void shouldOnlyUpdateUsersWhoWrote() {
+        create(1, TODAY, 500);
+        create(2, TODAY, 800);
+        job(TODAY).run();
+
+        assertEquals(500, reportFor(1).getTotalCalories());
+        assertEquals(800, reportFor(2).getTotalCalories());
+        assertEquals(0, queued());
+
+        // a stale total for user 2 would only be fixed by a rebuild
+        template.update("update calorie_report set total_calories = -1 where user_id = 2;");
+        create(1, TODAY, 200);
+        job(TODAY).run();
+
+        assertEquals(700, reportFor(1).getTotalCalories());
+        assertEquals(-1, reportFor(2).getTotalCalories());
+    }
+
+    @Test
+    void shouldApplyAWriteThatCommitsAfterLaterOnes() {
+        create(1, TODAY, 500);
+        create(1, TODAY, 100);
+        job(TODAY).run();
+
+        // a write that got its change id before the ones above but only committed now
+        template.update("insert into daily_calorie_total (user_id, logged_date, log_entry_type_id, total_calories, entry_count) "
+                + "values (1, ?, 3, 250, 1);", TODAY.minusDays(1));
+        template.update("insert into calorie_report_change (calorie_report_change_id, user_id, logged_date, log_entry_type_id, "
+                + "calories, entry_count) values (0, 1, ?, 3, 250, 1);", TODAY.minusDays(1));
+        job(TODAY).run();
+
+        CalorieReport week = reportFor(1);
+        assertEquals(850, week.getTotalCalories());
+        assertEquals(2, week.getLoggedDays());
+        assertEquals(0, queued());
+    }
+
+    @Test
+    void shouldMatchARebuildAfterUpdatesAndDeletes() {
+        create(1, TODAY.minusDays(40), 300);
+        LogEntry moved = create(1, TODAY.minusDays(3), 600);
+        LogEntry deleted = create(1, TODAY, 900);
+        job(TODAY.minusDays(1)).run();
+
+        UserContext.setUserId(1);
+        moved.setLoggedOn(TODAY.minusDays(10).atTime(8, 0));
+        moved.setType(LogEntryType.BREAKFAST);
+        moved.setCalories(450);
+        entryRepository.update(moved);
+        entryRepository.delete(deleted.getId());
+        UserContext.clear();
+        job(TODAY).run();
+
+        List<CalorieReport> applied = reportsFor(1);
+        template.update("delete from calorie_report;");
+        reportRepository.applyChanges(1, TODAY);
+
+        assertEquals(describe(reportsFor(1)), describe(applied));
+        assertEquals(450, find(applied, 30, LogEntryType.BREAKFAST).getTotalCalories());
+        assertEquals(0, find(applied, 7, null).getLoggedDays());
+    }
+
+    @Test
+    void shouldRebuildReportsAfterRebuildingDailyTotals() {
+        create(1, TODAY, 500);
+        create(2, TODAY.minusDays(8), 800);
+        job(TODAY).run();
+        // totals and reports both off, the way a bad migration or a hand edit might leave them
+        template.update("update daily_calorie_total set total_calories = 1;");
+        template.update("update calorie_report set total_calories = -1;");
+
+        entryRepository.rebuildDailyTotals();
+        assertNull(reportFor(1));
+        assertEquals(2, queued());
+
+        job(TODAY).run();
+        assertEquals(500, reportFor(1).getTotalCalories());
+        assertEquals(0, reportFor(2).getTotalCalories());
+        assertEquals(800, reportFor(2).getPreviousTotalCalories());
+        assertEquals(0, queued());
+    }
+
+    @Test
+    void shouldMoveReportsForwardWhenRead() {
+        create(2, TODAY, 800);
+        job(TODAY).run();
+
+        UserContext.setUserId(2);
+        CalorieReport week = find(reportRepository.moveReportsForward(TODAY.plusDays(7)), 7, null);
+
+        assertEquals(TODAY.plusDays(7), week.getAsOf());
+        assertEquals(0, week.getTotalCalories());
+        assertEquals(800, week.getPreviousTotalCalories());
+        assertEquals(TODAY.plusDays(7), reportFor(2).getAsOf());
+    }
+
+    @Test
+    void shouldLeaveQueuedChangesToTheJobWhenMovingForward() {
+        create(2, TODAY, 800);
+        job(TODAY).run();
+        create(2, TODAY.plusDays(1), 100);
+
+        UserContext.setUserId(2);
+        CalorieReport week = find(reportRepository.moveReportsForward(TODAY.plusDays(7)), 7, null);
+        assertEquals(0, week.getTotalCalories());
+        assertEquals(1, queued());
+
+        job(TODAY.plusDays(7)).run();
+        assertEquals(100, reportFor(2).getTotalCalories());
+        assertEquals(800, reportFor(2).getPreviousTotalCalories());
+    }
+
+    private CalorieReportJob job(LocalDate today) {
+        return new CalorieReportJob(reportRepository,
+                Clock.fixed(today.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    private LogEntry create(int userId, LocalDate loggedOn, int calories) {
+        UserContext.setUserId(userId);
+        try {
+            return entryRepository.create(new LogEntry(0, loggedOn.atTime(12, 0), LogEntryType.LUNCH, "Soup", calories));
+        } finally {
+            UserContext.clear();
+        }
+    }
+
+    private int queued() {
+        return template.queryForObject("select count(*) from calorie_report_change;", Integer.class);
+    }
+
+    // the 7-day report for every type
+    private CalorieReport reportFor(int userId) {
+        return find(reportsFor(userId), 7, null);
+    }
+
+    private List<CalorieReport> reportsFor(int userId) {
+        UserContext.setUserId(userId);
+        try {
+            return reportRepository.findReports();
+        } finally {
+            UserContext.clear();
+        }
+    }
+
+    private static String describe(List<CalorieReport> reports) {
+        StringBuilder description = new StringBuilder();
+        for (CalorieReport report : reports) {
+            description.append(report.getPeriodDays()).append('/').append(report.getType()).append('@').append(report.getAsOf())
+                    .append(": ").append(report.getTotalCalories()).append(" in ").append(report.getLoggedDays())
+                    .append(", ").append(report.getPreviousTotalCalories()).append(" in ").append(report.getPreviousLoggedDays())
+                    .append('\n');
+        }
+        return description.toString();
+    }
+
+    private static CalorieReport find(List<CalorieReport> reports, int periodDays, LogEntryType type) {
+        return reports.stream()
+                .filter(report -> report.getPeriodDays() == periodDays && report.getType() == type)
+                .findFirst()
+                .orElse(null);
+    }
+}
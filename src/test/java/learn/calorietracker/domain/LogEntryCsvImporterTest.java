@@ -0,0 +1,93 @@
+package learn.calorietracker.domain;
+
+import learn.calorietracker.data.LogEntryRepository;
+import learn.calorietracker.models.LogEntry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = "log-entry.import.chunk-size=2")
+class LogEntryCsvImporterTest {
+
+    @MockBean
+    private LogEntryRepository repository;
+
+    @Autowired
+    private LogEntryCsvImporter importer;
+
+    @Test
+    void shouldImportInChunks() throws IOException {
+        //arrange
+        String csv = "id,loggedOn,type,description,calories\n"
+                + "1,2020-01-01 9:00 AM,BREAKFAST,Scrambled eggs,210\n"
+                + "2,2020-01-01 12:00 PM,LUNCH,Tuna fish salad,500\n"
+                + "3,2020-01-01 6:00 PM,DINNER,Steak,1000\n"
+                + "4,2020-02-01,BREAKFAST,Toast,100\n"
+                + "5,2020-02-01 21:30,SNACK,Toast,100\n";
+        when(repository.createAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        //act
+        LogEntryImportReport report = importer.importCsv(new StringReader(csv));
+
+        //assert
+        assertEquals(5, report.getRowsRead());
+        assertEquals(5, report.getRowsImported());
+        assertEquals(0, report.getRowsRejected());
+        verify(repository, times(3)).createAll(any());
+    }
+
+    @Test
+    void shouldNormalizeFields() throws IOException {
+        //arrange
+        String csv = "1,2020-01-01 6:00 PM,dinner,\"Steak, potatoes\",1000\n";
+        when(repository.createAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        //act
+        importer.importCsv(new StringReader(csv));
+
+        //assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<LogEntry>> captor = ArgumentCaptor.forClass(List.class);
+        verify(repository).createAll(captor.capture());
+        LogEntry entry = captor.getValue().get(0);
+        assertEquals(0, entry.getId());
+        assertEquals(LocalDateTime.of(2020, 1, 1, 18, 0), entry.getLoggedOn());
+        assertEquals("Steak, potatoes", entry.getDescription());
+    }
+
+    @Test
+    void shouldRejectBadLines() throws IOException {
+        //arrange
+        String csv = "id,loggedOn,type,description,calories\n"
+                + "1,2020-01-01 9:00 AM,BREAKFAST,Scrambled eggs,210\n"
+                + "2,asdf,BREAKFAST,asdf,100\n"
+                + "3,2020-01-01,BRUNCH,Waffles,600\n"
+                + "4,2020-01-01,DINNER,Steak,lots\n"
+                + "5,2020-01-01,DINNER,Everything,5000\n"
+                + "not a log entry\n";
+        when(repository.createAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        //act
+        LogEntryImportReport report = importer.importCsv(new StringReader(csv));
+
+        //assert
+        assertEquals(6, report.getRowsRead());
+        assertEquals(1, report.getRowsImported());
+        assertEquals(5, report.getRowsRejected());
+        assertTrue(report.getRejectedLines().contains("line 3: invalid logged date: asdf"));
+        assertTrue(report.getRejectedLines().contains("line 4: invalid type: BRUNCH"));
+        assertTrue(report.getRejectedLines().contains("line 5: invalid calories: lots"));
+        assertTrue(report.getRejectedLines().contains("line 6: calories is too high"));
+    }
+}
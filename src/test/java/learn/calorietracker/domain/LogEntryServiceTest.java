@@ -1,15 +1,28 @@
 package learn.calorietracker.domain;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import learn.calorietracker.data.CalorieReportRepository;
 import learn.calorietracker.data.LogEntryRepository;
+import learn.calorietracker.data.UserContext;
+import learn.calorietracker.models.CalorieReport;
+import learn.calorietracker.models.DailyCalorieSummary;
 import learn.calorietracker.models.LogEntry;
+import learn.calorietracker.models.LogEntryPage;
 import learn.calorietracker.models.LogEntryType;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.test.StepVerifier;
 
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -21,9 +34,15 @@ class LogEntryServiceTest {
     @MockBean
     private LogEntryRepository repository;
 
+    @MockBean
+    private CalorieReportRepository reportRepository;
+
     @Autowired
     private LogEntryService service;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Test
     void shouldFindAll() {
         // arrange
@@ -40,11 +59,216 @@ class LogEntryServiceTest {
         assertEquals(1, results.size());
     }
 
+    @Test
+    void shouldEmitEveryPageAsFlux() {
+        LocalDate day = LocalDate.of(2020, 9, 23);
+        List<LogEntry> firstPage = makeEntries(1, LogEntryService.FLUX_PAGE_SIZE, day);
+        List<LogEntry> lastPage = makeEntries(LogEntryService.FLUX_PAGE_SIZE + 1, 1, day);
+        when(repository.findPage(0, LogEntryService.FLUX_PAGE_SIZE, day, day, LogEntryType.SNACK)).thenReturn(firstPage);
+        when(repository.findPage(LogEntryService.FLUX_PAGE_SIZE, LogEntryService.FLUX_PAGE_SIZE, day, day, LogEntryType.SNACK))
+                .thenReturn(lastPage);
+
+        StepVerifier.create(service.findAllAsFlux(day, day, LogEntryType.SNACK))
+                .expectNextSequence(firstPage)
+                .expectNextSequence(lastPage)
+                .verifyComplete();
+
+        verify(repository, times(2)).findPage(anyInt(), anyInt(), any(), any(), any());
+    }
+
+    @Test
+    void shouldOnlyReadPagesOnDemand() {
+        LocalDate day = LocalDate.of(2020, 9, 23);
+        when(repository.findPage(anyInt(), anyInt(), any(), any(), isNull()))
+                .thenReturn(makeEntries(1, LogEntryService.FLUX_PAGE_SIZE, day));
+
+        StepVerifier.create(service.findAllAsFlux(null, null, null), 1)
+                .expectNextCount(1)
+                .thenCancel()
+                .verify();
+
+        verify(repository, times(1)).findPage(anyInt(), anyInt(), any(), any(), isNull());
+    }
+
+    @Test
+    void shouldKeepPaceWithASlowSubscriberAndStopPagingOnCancel() {
+        LocalDate day = LocalDate.of(2020, 9, 23);
+        int pageSize = LogEntryService.FLUX_PAGE_SIZE;
+        // an endless table: every page is full
+        when(repository.findPage(anyInt(), anyInt(), any(), any(), isNull()))
+                .thenAnswer(invocation -> makeEntries((int) invocation.getArgument(0) + 1, pageSize, day));
+
+        StepVerifier.create(service.findAllAsFlux(null, null, null), 1)
+                .expectNextCount(1)
+                // however long the subscriber takes over the first entry, the next page isn't read ahead
+                .thenAwait(Duration.ofMillis(200))
+                .then(() -> verify(repository, times(1)).findPage(anyInt(), anyInt(), any(), any(), isNull()))
+                .thenRequest(pageSize)
+                .expectNextCount(pageSize)
+                .thenAwait(Duration.ofMillis(200))
+                .then(() -> verify(repository).findPage(eq(pageSize), anyInt(), any(), any(), isNull()))
+                .thenCancel()
+                .verify();
+
+        // nothing is read once the subscriber has gone
+        verify(repository, after(200).times(2)).findPage(anyInt(), anyInt(), any(), any(), isNull());
+    }
+
+    @Test
+    void shouldMoveReportsFromAnEarlierDayForward() {
+        LocalDate today = LocalDate.now();
+        CalorieReport moved = new CalorieReport(7, null, today);
+        when(reportRepository.findReports()).thenReturn(List.of(new CalorieReport(7, null, today.minusDays(3))));
+        when(reportRepository.moveReportsForward(today)).thenReturn(List.of(moved));
+
+        assertEquals(List.of(moved), service.findReports());
+    }
+
+    @Test
+    void shouldNotMoveReportsThatAreCurrent() {
+        List<CalorieReport> reports = List.of(new CalorieReport(7, null, LocalDate.now()));
+        when(reportRepository.findReports()).thenReturn(reports);
+
+        assertEquals(reports, service.findReports());
+        verify(reportRepository, never()).moveReportsForward(any());
+    }
+
+    @Test
+    void shouldReadFluxPagesForTheCallingUser() {
+        LocalDate day = LocalDate.of(2020, 9, 23);
+        List<Integer> userIds = new ArrayList<>();
+        when(repository.findPage(anyInt(), anyInt(), any(), any(), isNull())).thenAnswer(invocation -> {
+            userIds.add(UserContext.getUserId());
+            return List.of();
+        });
+
+        UserContext.setUserId(8);
+        try {
+            StepVerifier.create(service.findAllAsFlux(day, day, null)).verifyComplete();
+        } finally {
+            UserContext.clear();
+        }
+
+        // the page was read on a scheduler thread, not the one that set the user
+        assertEquals(List.of(8), userIds);
+    }
+
+    @Test
+    void shouldFindByDateRange() {
+        // arrange
+        LocalDate day = LocalDate.of(2020, 9, 23);
+        List<LogEntry> entriesOut = List.of(new LogEntry(1, day.atTime(9, 0), LogEntryType.BREAKFAST, "Coffee", 10));
+
+        when(repository.findByDateRange(day, day)).thenReturn(entriesOut);
+
+        // act
+        List<LogEntry> results = service.findByDateRange(day, day, null);
+
+        // assert
+        assertEquals(entriesOut, results);
+    }
+
+    @Test
+    void shouldFindByDateRangeAndType() {
+        // arrange
+        LocalDate day = LocalDate.of(2020, 9, 23);
+
+        // act
+        service.findByDateRange(day, null, LogEntryType.SNACK);
+
+        // assert
+        verify(repository).findByDateRangeAndType(day, LocalDate.of(9999, 12, 31), LogEntryType.SNACK);
+    }
+
+    @Test
+    void shouldFindPageWithNextCursor() {
+        // arrange
+        List<LogEntry> entriesOut = List.of(
+                new LogEntry(3, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(4, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.LUNCH, "Salad", 20),
+                new LogEntry(5, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.DINNER, "Tacos", 30)
+        );
+
+        when(repository.findPage(2, 3)).thenReturn(entriesOut);
+
+        // act
+        LogEntryPage page = service.findPage(2, 2);
+
+        // assert
+        assertEquals(2, page.getEntries().size());
+        assertEquals(4, page.getNextCursor());
+    }
+
+    @Test
+    void shouldFindLastPageWithoutNextCursor() {
+        // arrange
+        List<LogEntry> entriesOut = List.of(
+                new LogEntry(5, LocalDateTime.of(2020, 1, 1, 0, 0), LogEntryType.DINNER, "Tacos", 30)
+        );
+
+        when(repository.findPage(4, 3)).thenReturn(entriesOut);
+
+        // act
+        LogEntryPage page = service.findPage(4, 2);
+
+        // assert
+        assertEquals(1, page.getEntries().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void shouldStreamAllWhenRangeIsOpen() {
+        //act
+        service.streamByDateRange(null, null, entry -> { });
+
+        //assert
+        verify(repository).streamAll(any());
+        verify(repository, never()).streamByDateRange(any(), any(), any());
+    }
+
+    @Test
+    void shouldStreamFromStartOfRange() {
+        //arrange
+        LocalDate from = LocalDate.of(2020, 9, 17);
+
+        //act
+        service.streamByDateRange(from, null, entry -> { });
+
+        //assert
+        verify(repository).streamByDateRange(eq(from), eq(LocalDate.of(9999, 12, 31)), any());
+    }
+
+    @Test
+    void shouldFindDailySummaries() {
+        // arrange
+        LocalDate from = LocalDate.of(2020, 9, 17);
+        LocalDate to = LocalDate.of(2020, 9, 23);
+        List<DailyCalorieSummary> summariesOut = List.of(new DailyCalorieSummary(to));
+
+        when(repository.findDailySummaries(from, to)).thenReturn(summariesOut);
+
+        // act
+        List<DailyCalorieSummary> results = service.findDailySummaries(from, to);
+
+        // assert
+        assertEquals(1, results.size());
+    }
+
+    @Test
+    void shouldNotFindDailySummariesForBackwardsRange() {
+        // act
+        List<DailyCalorieSummary> results = service.findDailySummaries(LocalDate.of(2020, 9, 24), LocalDate.of(2020, 9, 23));
+
+        // assert
+        assertTrue(results.isEmpty());
+        verify(repository, never()).findDailySummaries(any(), any());
+    }
+
     @Test
     void shouldAdd() {
         //arrange
         LogEntry entryIn = new LogEntry();
-        entryIn.setLoggedOn("2020-10-01");
+        entryIn.setLoggedOn(LocalDateTime.of(2020, 10, 1, 0, 0));
         entryIn.setDescription("something");
         entryIn.setType(LogEntryType.SNACK);
         entryIn.setCalories(1);
@@ -89,7 +313,7 @@ class LogEntryServiceTest {
     void shouldNotAddNullDescription() {
         //arrange
         LogEntry entryIn = new LogEntry();
-        entryIn.setLoggedOn("2020-10-01");
+        entryIn.setLoggedOn(LocalDateTime.of(2020, 10, 1, 0, 0));
         entryIn.setType(LogEntryType.SNACK);
         entryIn.setCalories(1);
 
@@ -104,7 +328,7 @@ class LogEntryServiceTest {
     void shouldNotAddTooLongDescription() {
         //arrange
         LogEntry entryIn = new LogEntry();
-        entryIn.setLoggedOn("2020-10-01");
+        entryIn.setLoggedOn(LocalDateTime.of(2020, 10, 1, 0, 0));
         entryIn.setDescription("a".repeat(101)); //max length 100
         entryIn.setType(LogEntryType.SNACK);
         entryIn.setCalories(1);
@@ -135,7 +359,7 @@ class LogEntryServiceTest {
     void shouldNotAddNegativeCalories() {
         //arrange
         LogEntry entryIn = new LogEntry();
-        entryIn.setLoggedOn("2020-10-01");
+        entryIn.setLoggedOn(LocalDateTime.of(2020, 10, 1, 0, 0));
         entryIn.setDescription("something"); //max length 100
         entryIn.setType(LogEntryType.SNACK);
         entryIn.setCalories(-1);
@@ -151,7 +375,7 @@ class LogEntryServiceTest {
     void shouldNotAddTooManyCalories() {
         //arrange
         LogEntry entryIn = new LogEntry();
-        entryIn.setLoggedOn("2020-10-01");
+        entryIn.setLoggedOn(LocalDateTime.of(2020, 10, 1, 0, 0));
         entryIn.setDescription("something"); //max length 100
         entryIn.setType(LogEntryType.SNACK);
         entryIn.setCalories(3001);
@@ -163,12 +387,83 @@ class LogEntryServiceTest {
         assertTrue(result.getMessages().contains("calories is too high"));
     }
 
+    @Test
+    void shouldCountValidationFailures() {
+        //arrange
+        LogEntry entryIn = new LogEntry(0, LocalDateTime.of(2020, 10, 1, 0, 0), LogEntryType.SNACK, "", 3001);
+        double before = meterRegistry.counter("log_entry.validation.failures", "message", "description is required").count();
+
+        //act
+        service.create(entryIn);
+
+        //assert
+        assertEquals(before + 1, meterRegistry.counter("log_entry.validation.failures", "message", "description is required").count());
+    }
+
+    @Test
+    void shouldRecordRowsReturned() {
+        //arrange
+        when(repository.findByType(LogEntryType.LUNCH)).thenReturn(List.of(new LogEntry(), new LogEntry()));
+        double before = meterRegistry.summary("log_entry.rows.returned", "operation", "findByType").totalAmount();
+
+        //act
+        service.findByType(LogEntryType.LUNCH);
+
+        //assert
+        assertEquals(before + 2, meterRegistry.summary("log_entry.rows.returned", "operation", "findByType").totalAmount());
+    }
+
+    @Test
+    void shouldAddAll() {
+        //arrange
+        List<LogEntry> entriesIn = List.of(
+                new LogEntry(0, LocalDateTime.of(2020, 10, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(0, LocalDateTime.of(2020, 10, 1, 0, 0), LogEntryType.LUNCH, "Salad", 20)
+        );
+        List<LogEntry> entriesOut = List.of(
+                new LogEntry(1, LocalDateTime.of(2020, 10, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(2, LocalDateTime.of(2020, 10, 1, 0, 0), LogEntryType.LUNCH, "Salad", 20)
+        );
+
+        when(repository.createAll(entriesIn)).thenReturn(entriesOut);
+
+        //act
+        List<LogEntryResult> results = service.createAll(entriesIn);
+
+        //assert
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccessful());
+        assertEquals(1, results.get(0).getPayload().getId());
+        assertTrue(results.get(1).isSuccessful());
+        assertEquals(2, results.get(1).getPayload().getId());
+    }
+
+    @Test
+    void shouldNotAddAnyIfOneIsInvalid() {
+        //arrange
+        List<LogEntry> entriesIn = List.of(
+                new LogEntry(0, LocalDateTime.of(2020, 10, 1, 0, 0), LogEntryType.BREAKFAST, "Coffee", 10),
+                new LogEntry(0, LocalDateTime.of(2020, 10, 1, 0, 0), LogEntryType.LUNCH, "Salad", -20)
+        );
+
+        //act
+        List<LogEntryResult> results = service.createAll(entriesIn);
+
+        //assert
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isSuccessful());
+        assertTrue(results.get(0).getMessages().contains("entry was not saved because other entries in the batch are invalid"));
+        assertFalse(results.get(1).isSuccessful());
+        assertTrue(results.get(1).getMessages().contains("calories must be a positive number"));
+        verify(repository, never()).createAll(any());
+    }
+
     @Test
     void shouldUpdate() {
         //arrange
         LogEntry entryIn = new LogEntry();
         entryIn.setId(1);
-        entryIn.setLoggedOn("2020-10-01");
+        entryIn.setLoggedOn(LocalDateTime.of(2020, 10, 1, 0, 0));
         entryIn.setDescription("something");
         entryIn.setType(LogEntryType.SNACK);
         entryIn.setCalories(1);
@@ -189,7 +484,7 @@ class LogEntryServiceTest {
         //arrange
         LogEntry entryIn = new LogEntry();
         entryIn.setId(1);
-        entryIn.setLoggedOn("2020-10-01");
+        entryIn.setLoggedOn(LocalDateTime.of(2020, 10, 1, 0, 0));
         entryIn.setDescription("something");
         entryIn.setType(LogEntryType.SNACK);
         entryIn.setCalories(1);
@@ -206,6 +501,20 @@ class LogEntryServiceTest {
         assertTrue(result.getMessages().contains("unable to update"));
     }
 
+    @Test
+    void shouldReportConflictWhenVersionIsStale() {
+        LogEntry entryIn = new LogEntry(1, LocalDateTime.of(2020, 10, 1, 0, 0), LogEntryType.SNACK, "something", 1);
+        entryIn.setVersion(2);
+
+        when(repository.update(entryIn)).thenThrow(new OptimisticLockingFailureException("changed"));
+
+        LogEntryResult result = service.update(entryIn);
+
+        assertFalse(result.isSuccessful());
+        assertEquals(ResultType.CONFLICT, result.getType());
+        assertNull(result.getPayload());
+    }
+
     @Test
     void shouldNotUpdateBadId() {
         //arrange
@@ -252,4 +561,26 @@ class LogEntryServiceTest {
         //assert
         assertFalse(result);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldParseLegacyLoggedOnFormats() {
+        assertEquals(LocalDateTime.of(2020, 1, 1, 9, 0), LogEntryService.parseLoggedOn("2020-01-01 9:00 AM"));
+        assertEquals(LocalDateTime.of(2020, 1, 1, 18, 0), LogEntryService.parseLoggedOn("2020-01-01 6:00 PM"));
+        assertEquals(LocalDateTime.of(2020, 1, 1, 18, 0), LogEntryService.parseLoggedOn("2020-01-01 18:00"));
+        assertEquals(LocalDateTime.of(2020, 1, 1, 18, 0, 30), LogEntryService.parseLoggedOn("2020-01-01 18:00:30"));
+        assertEquals(LocalDateTime.of(2020, 1, 1, 18, 0), LogEntryService.parseLoggedOn("2020-01-01T18:00:00"));
+        assertEquals(LocalDateTime.of(2020, 2, 1, 0, 0), LogEntryService.parseLoggedOn("2020-02-01"));
+    }
+
+    @Test
+    void shouldNotParseUnknownLoggedOnFormat() {
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> LogEntryService.parseLoggedOn("asdf"));
+        assertEquals("invalid logged date: asdf", ex.getMessage());
+    }
+
+    private static List<LogEntry> makeEntries(int firstId, int count, LocalDate day) {
+        return IntStream.range(firstId, firstId + count)
+                .mapToObj(id -> new LogEntry(id, day.atTime(10, 0), LogEntryType.SNACK, "Apple", 50))
+                .collect(Collectors.toList());
+    }
+}
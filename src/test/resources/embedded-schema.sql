@@ -0,0 +1,74 @@
+-- H2 (MySQL mode) version of the tables in database/schema-data.sql, for tests against embedded databases
+
+create table log_entry_type (
+    log_entry_type_id int primary key auto_increment,
+    type varchar(100) not null unique
+);
+
+create table log_entry (
+    log_entry_id int primary key auto_increment,
+    user_id int not null,
+    logged_on datetime not null,
+    log_entry_type_id int not null,
+    description varchar(100) not null,
+    calories int not null,
+    version int not null default 1,
+    constraint fk_log_entry_log_entry_type_id
+        foreign key (log_entry_type_id)
+        references log_entry_type(log_entry_type_id)
+);
+
+create index idx_log_entry_user_id_logged_on on log_entry (user_id, logged_on);
+
+create table daily_calorie_total (
+    user_id int not null,
+    logged_date date not null,
+    log_entry_type_id int not null,
+    total_calories int not null,
+    entry_count int not null,
+    constraint pk_daily_calorie_total
+        primary key (user_id, logged_date, log_entry_type_id)
+);
+
+create table log_entry_sequence (
+    next_id int not null
+);
+
+create table log_entry_collection_version (
+    user_id int primary key,
+    version bigint not null
+);
+
+create table calorie_report (
+    user_id int not null,
+    period_days int not null,
+    log_entry_type_id int not null,
+    as_of date not null,
+    total_calories int not null,
+    logged_days int not null,
+    previous_total_calories int not null,
+    previous_logged_days int not null,
+    constraint pk_calorie_report
+        primary key (user_id, period_days, log_entry_type_id)
+);
+
+create table calorie_report_change (
+    calorie_report_change_id bigint primary key auto_increment,
+    user_id int not null,
+    logged_date date not null,
+    log_entry_type_id int not null,
+    calories int not null,
+    entry_count int not null
+);
+
+create index idx_calorie_report_change_user_id on calorie_report_change (user_id);
+
+insert into log_entry_type (log_entry_type_id, type)
+    values
+    (1, 'Breakfast'),
+    (2, 'Lunch'),
+    (3, 'Dinner'),
+    (4, 'Snack'),
+    (5, 'Second Breakfast');
+
+insert into log_entry_sequence (next_id) values (1);